@@ -0,0 +1,193 @@
+import com.mycourse.elearningplatform.service.NhostStorageService;
+import com.sun.net.httpserver.HttpServer;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Heap check for uploads to storage: runs N concurrent uploads of S MB each through
+ * NhostStorageService.uploadFile(MultipartFile, ...) against a local stub storage server that drains
+ * the request body and answers with a file id. The multipart files are backed by sparse temp files and
+ * their getBytes() throws, so any full in-memory copy of an upload fails the run; the peak heap in use
+ * is sampled while the uploads run. Start with a heap far below N x S (see upload-heap-benchmark.sh).
+ *
+ * Usage: UploadHeapBenchmark [uploads=50] [sizeMb=200]
+ */
+public class UploadHeapBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int uploads = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+        long sizeBytes = (args.length > 1 ? Long.parseLong(args[1]) : 200) * 1024 * 1024;
+
+        AtomicLong received = new AtomicLong();
+        HttpServer stub = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        stub.createContext("/v1/files", exchange -> {
+            try (InputStream body = exchange.getRequestBody()) {
+                received.addAndGet(body.transferTo(OutputStream.nullOutputStream()));
+            }
+            byte[] response = ("{\"id\":\"" + UUID.randomUUID() + "\"}").getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, response.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(response);
+            }
+        });
+        ExecutorService stubThreads = Executors.newFixedThreadPool(uploads);
+        stub.setExecutor(stubThreads);
+        stub.start();
+        int port = stub.getAddress().getPort();
+
+        // Same request factory as the application's RestTemplate, only pointed at the stub
+        SimpleClientHttpRequestFactory toStub = new SimpleClientHttpRequestFactory() {
+            @Override
+            protected HttpURLConnection openConnection(URL url, Proxy proxy) throws IOException {
+                return super.openConnection(new URL("http", "127.0.0.1", port, url.getFile()), proxy);
+            }
+        };
+        NhostStorageService storage = new NhostStorageService(new RestTemplate(toStub), 16, 5000, 30000);
+        set(storage, "nhostSubdomain", "bench");
+        set(storage, "nhostRegion", "local");
+        set(storage, "nhostAdminSecret", "bench-secret");
+
+        List<Path> files = new ArrayList<>();
+        for (int i = 0; i < uploads; i++) {
+            Path file = Files.createTempFile("upload-bench-", ".bin");
+            try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+                raf.setLength(sizeBytes);
+            }
+            files.add(file);
+        }
+
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        long baseline = runtime.totalMemory() - runtime.freeMemory();
+        AtomicLong peak = new AtomicLong(baseline);
+        Thread sampler = new Thread(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                peak.accumulateAndGet(runtime.totalMemory() - runtime.freeMemory(), Math::max);
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        });
+        sampler.setDaemon(true);
+        sampler.start();
+
+        ExecutorService clients = Executors.newFixedThreadPool(uploads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> results = new ArrayList<>();
+        long startedAt = System.nanoTime();
+        for (int i = 0; i < uploads; i++) {
+            Path file = files.get(i);
+            String name = "bench-" + i + ".bin";
+            results.add(clients.submit(() -> {
+                start.await();
+                return storage.uploadFile(new DiskMultipartFile(file, name), "default", name);
+            }));
+        }
+        start.countDown();
+        int failed = 0;
+        for (Future<?> result : results) {
+            try {
+                result.get();
+            } catch (Exception e) {
+                failed++;
+                System.err.println("Upload failed: " + e.getCause());
+            }
+        }
+        long elapsedMs = (System.nanoTime() - startedAt) / 1_000_000;
+        sampler.interrupt();
+        clients.shutdown();
+        stub.stop(0);
+        stubThreads.shutdown();
+        storage.shutdown();
+        for (Path file : files) Files.deleteIfExists(file);
+
+        long mb = 1024 * 1024;
+        System.out.println();
+        System.out.printf("uploads: %d x %d MB, failed: %d, %d ms%n", uploads, sizeBytes / mb, failed, elapsedMs);
+        System.out.printf("bytes received by stub: %d MB (multipart framing included)%n", received.get() / mb);
+        System.out.printf("max heap: %d MB, baseline used: %d MB, peak used: %d MB%n",
+                runtime.maxMemory() / mb, baseline / mb, peak.get() / mb);
+        if (failed > 0 || received.get() < uploads * sizeBytes) {
+            System.exit(1);
+        }
+    }
+
+    private static void set(Object target, String field, Object value) throws ReflectiveOperationException {
+        Field f = target.getClass().getDeclaredField(field);
+        f.setAccessible(true);
+        f.set(target, value);
+    }
+
+    // A multipart part spooled to disk, as the container hands it over with file-size-threshold=0
+    private record DiskMultipartFile(Path path, String name) implements MultipartFile {
+        @Override
+        public String getName() {
+            return "file";
+        }
+
+        @Override
+        public String getOriginalFilename() {
+            return name;
+        }
+
+        @Override
+        public String getContentType() {
+            return "application/octet-stream";
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return getSize() == 0;
+        }
+
+        @Override
+        public long getSize() {
+            try {
+                return Files.size(path);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public byte[] getBytes() {
+            throw new UnsupportedOperationException("upload read into memory");
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            return Files.newInputStream(path);
+        }
+
+        @Override
+        public void transferTo(File dest) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
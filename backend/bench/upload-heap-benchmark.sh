@@ -0,0 +1,9 @@
+#!/bin/sh
+# Heap check for streamed uploads: 50 concurrent 200 MB uploads (10 GB in total) through
+# NhostStorageService against a local stub storage server, in a 256 MB heap.
+# Usage: bench/upload-heap-benchmark.sh [uploads] [sizeMb] [heap], run from backend/
+set -e
+cd "$(dirname "$0")/.."
+./mvnw -q compile dependency:build-classpath -Dmdep.outputFile=target/bench.classpath
+java -Xmx"${3:-256m}" -cp "target/classes:$(cat target/bench.classpath)" \
+    bench/UploadHeapBenchmark.java "${1:-50}" "${2:-200}"
@@ -4,10 +4,12 @@ import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.ApplicationRunner;
 import org.springframework.context.annotation.Bean;
+import org.springframework.scheduling.annotation.EnableScheduling;
 import com.mycourse.elearningplatform.repository.RoleRepository;
 import com.mycourse.elearningplatform.model.Role;
 
 @SpringBootApplication
+@EnableScheduling
 public class ELearningPlatformApplication {
 
 	public static void main(String[] args) {
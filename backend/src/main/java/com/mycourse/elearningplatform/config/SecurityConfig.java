@@ -2,6 +2,7 @@ package com.mycourse.elearningplatform.config;
 
 import com.mycourse.elearningplatform.security.jwt.JwtAuthFilter;
 import com.mycourse.elearningplatform.security.UserDetailsServiceImpl;
+import jakarta.servlet.DispatcherType;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -58,6 +59,8 @@ public class SecurityConfig {
                 .authorizeHttpRequests(auth -> auth
                         // Public endpoints - NO authentication required
                         .requestMatchers(HttpMethod.OPTIONS, "/**").permitAll() // Allow all OPTIONS requests
+                        // Async dispatches of already-authorized streams (SSE) carry no JWT of their own
+                        .dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()
                         .requestMatchers("/").permitAll()
                         .requestMatchers("/error").permitAll()
                         .requestMatchers("/api/auth/**").permitAll()
@@ -69,6 +72,7 @@ public class SecurityConfig {
                         .requestMatchers("/api/enrollments/**").authenticated()
                         .requestMatchers("/api/upload/**").authenticated()
                         .requestMatchers("/api/quizzes/**").authenticated()
+                        .requestMatchers("/api/live-quizzes/**").authenticated()
                         .requestMatchers("/api/progress/**").authenticated()
                         
                         // Role-based endpoints
@@ -101,10 +105,12 @@ public class SecurityConfig {
         List<String> origins = Arrays.asList(allowedOrigins.split(","));
         configuration.setAllowedOrigins(origins);
         
-        configuration.setAllowedMethods(Arrays.asList("GET", "POST", "PUT", "DELETE", "OPTIONS", "PATCH"));
+        configuration.setAllowedMethods(Arrays.asList("GET", "HEAD", "POST", "PUT", "DELETE", "OPTIONS", "PATCH"));
         configuration.setAllowedHeaders(Arrays.asList("*"));
         configuration.setAllowCredentials(true);
-        configuration.setExposedHeaders(Arrays.asList("Authorization", "Content-Type"));
+        // Location and the Upload-* headers drive resumable uploads from the browser
+        configuration.setExposedHeaders(Arrays.asList("Authorization", "Content-Type", "Location",
+                "Tus-Resumable", "Tus-Max-Size", "Upload-Offset", "Upload-Length"));
         configuration.setMaxAge(3600L); // Cache preflight for 1 hour
 
         UrlBasedCorsConfigurationSource source = new UrlBasedCorsConfigurationSource();
@@ -2,17 +2,18 @@ package com.mycourse.elearningplatform.controller;
 
 import com.mycourse.elearningplatform.model.Course;
 import com.mycourse.elearningplatform.model.User;
+import com.mycourse.elearningplatform.security.CurrentUser;
 import com.mycourse.elearningplatform.service.CourseService;
-import com.mycourse.elearningplatform.repository.UserRepository;
+import com.mycourse.elearningplatform.service.MediaManifestService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
-import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
 import com.mycourse.elearningplatform.model.Resource;
 import com.mycourse.elearningplatform.repository.ResourceRepository;
+import com.mycourse.elearningplatform.repository.EnrollmentRepository;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.web.server.ResponseStatusException;
@@ -30,10 +31,11 @@ public class CourseController {
 
     // Dependency injection for services and repositories
     @Autowired private CourseService courseService;
-    @Autowired private UserRepository userRepository;
     @Autowired private ResourceRepository resourceRepository;
     @Autowired private com.mycourse.elearningplatform.service.NhostStorageService nhostStorageService;
     @Autowired private CourseRatingRepository courseRatingRepository;
+    @Autowired private EnrollmentRepository enrollmentRepository;
+    @Autowired private MediaManifestService mediaManifestService;
 
     // --- GET ALL COURSES ---
     @GetMapping
@@ -117,19 +119,17 @@ public class CourseController {
     // --- CREATE COURSE ---
     @PreAuthorize("hasRole('TEACHER')")
     @PostMapping
-    public ResponseEntity<Course> createCourse(@RequestBody Course course, @AuthenticationPrincipal com.mycourse.elearningplatform.security.UserDetailsImpl principal) {
-        User instructor = userRepository.findByEmail(principal.getUsername()).orElseThrow();
-        course.setInstructor(instructor); // set the logged-in user as instructor
+    public ResponseEntity<Course> createCourse(@RequestBody Course course, CurrentUser currentUser) {
+        course.setInstructor(currentUser.getUser()); // set the logged-in user as instructor
         return ResponseEntity.ok(courseService.createCourse(course));
     }
 
     // --- UPDATE COURSE ---
     @PreAuthorize("hasRole('TEACHER')")
     @PutMapping("/{id}")
-    public ResponseEntity<?> updateCourse(@PathVariable Long id, @RequestBody Course updated, @AuthenticationPrincipal com.mycourse.elearningplatform.security.UserDetailsImpl principal) {
+    public ResponseEntity<?> updateCourse(@PathVariable Long id, @RequestBody Course updated, CurrentUser currentUser) {
         try {
-            User instructor = userRepository.findByEmail(principal.getUsername()).orElseThrow();
-            Course result = courseService.updateCourse(id, updated, instructor);
+            Course result = courseService.updateCourse(id, updated, currentUser.getId());
             return ResponseEntity.ok(result);
         } catch (RuntimeException e) {
             if (e.getMessage().contains("Forbidden")) return ResponseEntity.status(403).body(e.getMessage());
@@ -141,10 +141,9 @@ public class CourseController {
     // --- DELETE COURSE ---
     @PreAuthorize("hasRole('TEACHER')")
     @DeleteMapping("/{id}")
-    public ResponseEntity<?> deleteCourse(@PathVariable Long id, @AuthenticationPrincipal com.mycourse.elearningplatform.security.UserDetailsImpl principal) {
+    public ResponseEntity<?> deleteCourse(@PathVariable Long id, CurrentUser currentUser) {
         try {
-            User instructor = userRepository.findByEmail(principal.getUsername()).orElseThrow();
-            courseService.deleteCourse(id, instructor);
+            courseService.deleteCourse(id, currentUser.getId());
             return ResponseEntity.ok(Map.of("success", true));
         } catch (RuntimeException e) {
             if (e.getMessage().contains("Forbidden")) return ResponseEntity.status(403).body(Map.of("error", e.getMessage()));
@@ -156,14 +155,13 @@ public class CourseController {
     // --- Upload resource to course ---
     @PreAuthorize("hasRole('TEACHER')")
     @PostMapping("/{courseId}/resources")
-    public ResponseEntity<?> uploadResourceToCourse(@PathVariable Long courseId, @RequestBody Map<String, String> body, @AuthenticationPrincipal com.mycourse.elearningplatform.security.UserDetailsImpl principal) {
+    public ResponseEntity<?> uploadResourceToCourse(@PathVariable Long courseId, @RequestBody Map<String, String> body, CurrentUser currentUser) {
         String filePath = body.get("filePath");
         if (filePath == null || filePath.isBlank()) return ResponseEntity.badRequest().body(Map.of("error", "Missing filePath"));
 
         Course course = courseService.getCourseById(courseId).orElseThrow();
-        User authenticatedUser = userRepository.findByEmail(principal.getUsername()).orElse(null);
 
-        if (!course.getInstructor().getId().equals(authenticatedUser.getId())) {
+        if (!course.getInstructor().getId().equals(currentUser.getId())) {
             return ResponseEntity.status(403).body(Map.of("error", "Access denied: Not your course"));
         }
 
@@ -184,12 +182,11 @@ public class CourseController {
     // --- Delete a resource ---
     @PreAuthorize("hasRole('TEACHER')")
     @DeleteMapping("/resources/{resourceId}")
-    public ResponseEntity<?> deleteResource(@PathVariable Long resourceId, @AuthenticationPrincipal com.mycourse.elearningplatform.security.UserDetailsImpl principal) {
+    public ResponseEntity<?> deleteResource(@PathVariable Long resourceId, CurrentUser currentUser) {
         Resource resource = resourceRepository.findById(resourceId).orElse(null);
         if (resource == null) return ResponseEntity.notFound().build();
 
-        User authenticatedUser = userRepository.findByEmail(principal.getUsername()).orElse(null);
-        if (!resource.getCourse().getInstructor().getId().equals(authenticatedUser.getId())) {
+        if (!resource.getCourse().getInstructor().getId().equals(currentUser.getId())) {
             return ResponseEntity.status(403).body(Map.of("error", "Access denied: Not your resource"));
         }
 
@@ -208,13 +205,31 @@ public class CourseController {
         }
     }
 
+    // --- Signed URL cache hit rate and upstream latency ---
+    @PreAuthorize("hasRole('TEACHER')")
+    @GetMapping("/media/signed-url/stats")
+    public ResponseEntity<Map<String, Object>> getSignedUrlStats() {
+        return ResponseEntity.ok(nhostStorageService.getSignedUrlCacheStats());
+    }
+
+    // --- All media of a course with signed URLs, in one request (enrolled students and the instructor) ---
+    @GetMapping("/{id}/media/manifest")
+    public ResponseEntity<?> getMediaManifest(@PathVariable Long id, @RequestParam(defaultValue = "3600") int expiresIn, CurrentUser currentUser) {
+        Course course = courseService.getCourseById(id).orElse(null);
+        if (course == null) return ResponseEntity.status(404).body(Map.of("error", "Course not found"));
+        boolean instructor = course.getInstructor() != null && course.getInstructor().getId().equals(currentUser.getId());
+        if (!instructor && !enrollmentRepository.existsByUserIdAndCourseId(currentUser.getId(), id)) {
+            return ResponseEntity.status(403).body(Map.of("error", "Not enrolled in this course"));
+        }
+        return ResponseEntity.ok(mediaManifestService.manifest(id, Math.max(60, Math.min(expiresIn, 24 * 3600))));
+    }
+
     // --- Set discount for course ---
     @PreAuthorize("hasRole('TEACHER')")
     @PutMapping("/{id}/discount")
-    public ResponseEntity<?> setDiscount(@PathVariable Long id, @RequestBody Map<String, Object> body, @AuthenticationPrincipal com.mycourse.elearningplatform.security.UserDetailsImpl principal) {
+    public ResponseEntity<?> setDiscount(@PathVariable Long id, @RequestBody Map<String, Object> body, CurrentUser currentUser) {
         Course course = courseService.getCourseById(id).orElseThrow();
-        User instructor = userRepository.findByEmail(principal.getUsername()).orElseThrow();
-        if (!course.getInstructor().getId().equals(instructor.getId())) return ResponseEntity.status(403).body(Map.of("error", "Access denied"));
+        if (!course.getInstructor().getId().equals(currentUser.getId())) return ResponseEntity.status(403).body(Map.of("error", "Access denied"));
 
         BigDecimal discountPrice = body.get("discountPrice") != null ? new BigDecimal(body.get("discountPrice").toString()) : null;
         boolean discountActive = Boolean.TRUE.equals(body.get("discountActive"));
@@ -229,10 +244,9 @@ public class CourseController {
     // --- Remove discount ---
     @PreAuthorize("hasRole('TEACHER')")
     @DeleteMapping("/{id}/discount")
-    public ResponseEntity<?> removeDiscount(@PathVariable Long id, @AuthenticationPrincipal com.mycourse.elearningplatform.security.UserDetailsImpl principal) {
+    public ResponseEntity<?> removeDiscount(@PathVariable Long id, CurrentUser currentUser) {
         Course course = courseService.getCourseById(id).orElseThrow();
-        User instructor = userRepository.findByEmail(principal.getUsername()).orElseThrow();
-        if (!course.getInstructor().getId().equals(instructor.getId())) return ResponseEntity.status(403).body(Map.of("error", "Access denied"));
+        if (!course.getInstructor().getId().equals(currentUser.getId())) return ResponseEntity.status(403).body(Map.of("error", "Access denied"));
 
         course.setDiscountPrice(null);
         course.setDiscountActive(false);
@@ -243,9 +257,9 @@ public class CourseController {
     // --- Rate course ---
     @PreAuthorize("hasRole('STUDENT')")
     @PostMapping("/{id}/rate")
-    public ResponseEntity<?> rateCourse(@PathVariable Long id, @RequestBody Map<String, Object> body, @AuthenticationPrincipal com.mycourse.elearningplatform.security.UserDetailsImpl principal) {
+    public ResponseEntity<?> rateCourse(@PathVariable Long id, @RequestBody Map<String, Object> body, CurrentUser currentUser) {
         Course course = courseService.getCourseById(id).orElseThrow();
-        User student = userRepository.findByEmail(principal.getUsername()).orElseThrow();
+        User student = currentUser.getUser();
 
         int rating = (int) body.getOrDefault("rating", 0);
         String comment = (String) body.getOrDefault("comment", "");
@@ -5,19 +5,33 @@ import com.fasterxml.jackson.databind.SerializationFeature;
 import com.mycourse.elearningplatform.dto.EnrollmentDTO;
 import com.mycourse.elearningplatform.model.Enrollment;
 import com.mycourse.elearningplatform.model.Course;
-import com.mycourse.elearningplatform.model.User;
 import com.mycourse.elearningplatform.repository.EnrollmentRepository;
 import com.mycourse.elearningplatform.repository.CourseRepository;
-import com.mycourse.elearningplatform.repository.UserRepository;
+import com.mycourse.elearningplatform.security.CurrentUser;
+import com.mycourse.elearningplatform.service.ActivityEventLog;
+import com.mycourse.elearningplatform.service.CourseEventHub;
+import com.mycourse.elearningplatform.service.CourseFunnelService;
+import com.mycourse.elearningplatform.service.EnrollmentService;
+import com.mycourse.elearningplatform.service.LeaderboardService;
+import com.mycourse.elearningplatform.service.ProgressWriteBuffer;
+import com.mycourse.elearningplatform.service.RosterExportService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
-import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.stream.Collectors;
+import java.util.zip.GZIPOutputStream;
 
 @RestController
 @RequestMapping("/api/enrollments")
@@ -27,87 +41,98 @@ public class EnrollmentController {
     @Autowired
     private CourseRepository courseRepository;
     @Autowired
-    private UserRepository userRepository;
+    private RosterExportService rosterExportService;
+    @Autowired
+    private ProgressWriteBuffer progressWriteBuffer;
+    @Autowired
+    private CourseEventHub courseEventHub;
+    @Autowired
+    private ActivityEventLog activityEventLog;
+    @Autowired
+    private CourseFunnelService courseFunnelService;
+    @Autowired
+    private LeaderboardService leaderboardService;
+    @Autowired
+    private EnrollmentService enrollmentService;
 
     // Student: Enroll in a course
     @PreAuthorize("hasRole('STUDENT')")
     @PostMapping("/course/{courseId}")
-    public ResponseEntity<?> enroll(@PathVariable Long courseId, @AuthenticationPrincipal com.mycourse.elearningplatform.security.UserDetailsImpl principal) {
-        User student = userRepository.findByEmail(principal.getUsername()).orElseThrow();
-        Course course = courseRepository.findById(courseId).orElseThrow();
-        if (enrollmentRepository.existsByUserAndCourse(student, course)) {
+    public ResponseEntity<?> enroll(@PathVariable Long courseId, CurrentUser currentUser) {
+        Optional<Enrollment> enrolled = enrollmentService.enroll(currentUser.getReference(), courseId);
+        if (enrolled.isEmpty()) {
             return ResponseEntity.badRequest().body(Map.of("error", "Already enrolled"));
         }
-        Enrollment enrollment = new Enrollment(student, course);
-        enrollmentRepository.save(enrollment);
+        Enrollment enrollment = enrolled.get();
+        // The DTO loads the student's user row, so only build it when an instructor is watching
+        courseEventHub.publish(courseId, "enrolled", () -> new EnrollmentDTO(enrollment));
+        activityEventLog.record(ActivityEventLog.ENROLLED, currentUser.getId(), courseId);
         return ResponseEntity.ok(Map.of("success", true, "message", "Enrolled successfully"));
     }
 
     // Student: Unenroll from a course
     @PreAuthorize("hasRole('STUDENT')")
     @DeleteMapping("/course/{courseId}")
-    public ResponseEntity<?> unenroll(@PathVariable Long courseId, @AuthenticationPrincipal com.mycourse.elearningplatform.security.UserDetailsImpl principal) {
-        User student = userRepository.findByEmail(principal.getUsername()).orElseThrow();
-        Course course = courseRepository.findById(courseId).orElseThrow();
-        Enrollment enrollment = enrollmentRepository.findByUserAndCourse(student, course).orElse(null);
-        if (enrollment == null) {
+    public ResponseEntity<?> unenroll(@PathVariable Long courseId, CurrentUser currentUser) {
+        Optional<Enrollment> enrollment = enrollmentService.unenroll(currentUser.getId(), courseId);
+        if (enrollment.isEmpty()) {
             return ResponseEntity.notFound().build();
         }
-        enrollmentRepository.delete(enrollment);
+        leaderboardService.remove(courseId, currentUser.getId());
+        courseEventHub.publish(courseId, "unenrolled", Map.of("enrollmentId", enrollment.get().getId(), "userId", currentUser.getId()));
+        activityEventLog.record(ActivityEventLog.UNENROLLED, currentUser.getId(), courseId);
         return ResponseEntity.ok().build();
     }
 
     // List enrollments for current user
     @GetMapping("/me")
-    public List<EnrollmentDTO> myEnrollments(@AuthenticationPrincipal com.mycourse.elearningplatform.security.UserDetailsImpl principal) {
-        User user = userRepository.findByEmail(principal.getUsername()).orElseThrow();
-        List<Enrollment> enrollments = enrollmentRepository.findByUser(user);
+    public List<EnrollmentDTO> myEnrollments(CurrentUser currentUser) {
+        List<Enrollment> enrollments = enrollmentRepository.findByUserId(currentUser.getId());
         return enrollments.stream()
                 .map(EnrollmentDTO::new)
+                .map(progressWriteBuffer::overlay)
                 .collect(Collectors.toList());
     }
     
     // List courses for current user
     @GetMapping("/my-courses")
-    public List<EnrollmentDTO> myCourses(@AuthenticationPrincipal com.mycourse.elearningplatform.security.UserDetailsImpl principal) {
-        User user = userRepository.findByEmail(principal.getUsername()).orElseThrow();
-        List<Enrollment> enrollments = enrollmentRepository.findByUser(user);
+    public List<EnrollmentDTO> myCourses(CurrentUser currentUser) {
+        List<Enrollment> enrollments = enrollmentRepository.findByUserId(currentUser.getId());
         return enrollments.stream()
                 .map(EnrollmentDTO::new)
+                .map(progressWriteBuffer::overlay)
                 .collect(Collectors.toList());
     }
     
     // Student: Get detailed enrollments with progress
     @GetMapping("/student")
-    public List<EnrollmentDTO> getStudentEnrollments(@AuthenticationPrincipal com.mycourse.elearningplatform.security.UserDetailsImpl principal) {
-        User user = userRepository.findByEmail(principal.getUsername()).orElseThrow();
-        List<Enrollment> enrollments = enrollmentRepository.findByUser(user);
+    public List<EnrollmentDTO> getStudentEnrollments(CurrentUser currentUser) {
+        List<Enrollment> enrollments = enrollmentRepository.findByUserId(currentUser.getId());
         return enrollments.stream()
                 .map(EnrollmentDTO::new)
+                .map(progressWriteBuffer::overlay)
                 .collect(Collectors.toList());
     }
     
     // Check if user is enrolled in a course
     @GetMapping("/check/{courseId}")
-    public ResponseEntity<?> checkEnrollment(@PathVariable Long courseId, @AuthenticationPrincipal com.mycourse.elearningplatform.security.UserDetailsImpl principal) {
-        User user = userRepository.findByEmail(principal.getUsername()).orElseThrow();
-        Course course = courseRepository.findById(courseId).orElseThrow();
-        boolean enrolled = enrollmentRepository.existsByUserAndCourse(user, course);
+    public ResponseEntity<?> checkEnrollment(@PathVariable Long courseId, CurrentUser currentUser) {
+        boolean enrolled = enrollmentRepository.existsByUserIdAndCourseId(currentUser.getId(), courseId);
         return ResponseEntity.ok(java.util.Map.of("enrolled", enrolled));
     }
 
     // Teacher: List enrollments for a course
     @PreAuthorize("hasRole('TEACHER')")
     @GetMapping("/course/{courseId}")
-    public ResponseEntity<List<EnrollmentDTO>> enrollmentsByCourse(@PathVariable Long courseId, @AuthenticationPrincipal com.mycourse.elearningplatform.security.UserDetailsImpl principal) {
+    public ResponseEntity<List<EnrollmentDTO>> enrollmentsByCourse(@PathVariable Long courseId, CurrentUser currentUser) {
         Course course = courseRepository.findById(courseId).orElseThrow();
-        User authenticatedUser = userRepository.findByEmail(principal.getUsername()).orElse(null);
-        if (authenticatedUser == null || !course.getInstructor().getId().equals(authenticatedUser.getId())) {
+        if (!course.getInstructor().getId().equals(currentUser.getId())) {
             return ResponseEntity.status(403).body(null);
         }
         List<Enrollment> enrollments = enrollmentRepository.findByCourse(course);
         List<EnrollmentDTO> enrollmentDTOs = enrollments.stream()
                 .map(EnrollmentDTO::new)
+                .map(progressWriteBuffer::overlay)
                 .collect(Collectors.toList());
         return ResponseEntity.ok(enrollmentDTOs);
     }
@@ -115,18 +140,12 @@ public class EnrollmentController {
     // Teacher: List all enrolled students for teacher's courses
     @PreAuthorize("hasRole('TEACHER')")
     @GetMapping("/teacher/enrolled-students")
-    public ResponseEntity<List<EnrollmentDTO>> getEnrolledStudentsForTeacher(@AuthenticationPrincipal com.mycourse.elearningplatform.security.UserDetailsImpl principal) {
-        User teacher = userRepository.findByEmail(principal.getUsername()).orElseThrow();
-        List<Course> teacherCourses = courseRepository.findByInstructor(teacher);
-        List<Enrollment> allEnrollments = new java.util.ArrayList<>();
-        
-        for (Course course : teacherCourses) {
-            List<Enrollment> courseEnrollments = enrollmentRepository.findByCourse(course);
-            allEnrollments.addAll(courseEnrollments);
-        }
+    public ResponseEntity<List<EnrollmentDTO>> getEnrolledStudentsForTeacher(CurrentUser currentUser) {
+        List<Enrollment> allEnrollments = enrollmentRepository.findByCourse_Instructor_Id(currentUser.getId());
         
         List<EnrollmentDTO> enrollmentDTOs = allEnrollments.stream()
                 .map(EnrollmentDTO::new)
+                .map(progressWriteBuffer::overlay)
                 .collect(Collectors.toList());
         
         return ResponseEntity.ok(enrollmentDTOs);
@@ -135,33 +154,106 @@ public class EnrollmentController {
     // Teacher: Get enrolled students for a specific course with detailed info
     @PreAuthorize("hasRole('TEACHER')")
     @GetMapping("/teacher/course/{courseId}/enrolled-students")
-    public ResponseEntity<List<EnrollmentDTO>> getEnrolledStudentsForCourse(@PathVariable Long courseId, @AuthenticationPrincipal com.mycourse.elearningplatform.security.UserDetailsImpl principal) {
+    public ResponseEntity<List<EnrollmentDTO>> getEnrolledStudentsForCourse(@PathVariable Long courseId, CurrentUser currentUser) {
         Course course = courseRepository.findById(courseId).orElseThrow();
-        User teacher = userRepository.findByEmail(principal.getUsername()).orElseThrow();
         
-        if (!course.getInstructor().getId().equals(teacher.getId())) {
+        if (!course.getInstructor().getId().equals(currentUser.getId())) {
             return ResponseEntity.status(403).body(null);
         }
         
         List<Enrollment> enrollments = enrollmentRepository.findByCourse(course);
         List<EnrollmentDTO> enrollmentDTOs = enrollments.stream()
                 .map(EnrollmentDTO::new)
+                .map(progressWriteBuffer::overlay)
                 .collect(Collectors.toList());
         
         return ResponseEntity.ok(enrollmentDTOs);
     }
 
+    // Teacher: Live enrollment/progress/quiz-score events for one course, or all of the teacher's courses
+    @PreAuthorize("hasRole('TEACHER')")
+    @GetMapping(value = "/teacher/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamCourseEvents(@RequestParam(required = false) Long courseId, CurrentUser currentUser) {
+        List<Long> courseIds;
+        if (courseId != null) {
+            if (!courseRepository.existsByIdAndInstructorId(courseId, currentUser.getId())) {
+                return ResponseEntity.status(403).build();
+            }
+            courseIds = List.of(courseId);
+        } else {
+            courseIds = courseRepository.findByInstructorId(currentUser.getId()).stream()
+                    .map(Course::getId)
+                    .collect(Collectors.toList());
+        }
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CACHE_CONTROL, "no-store")
+                .header("X-Accel-Buffering", "no")
+                .body(courseEventHub.subscribe(courseIds));
+    }
+
+    // Teacher: Distinct active learners per day over the last N days (max 366)
+    @PreAuthorize("hasRole('TEACHER')")
+    @GetMapping("/teacher/course/{courseId}/activity/daily")
+    public ResponseEntity<?> dailyActiveLearners(@PathVariable Long courseId,
+                                                 @RequestParam(defaultValue = "30") int days,
+                                                 CurrentUser currentUser) {
+        if (!courseRepository.existsByIdAndInstructorId(courseId, currentUser.getId())) {
+            return ResponseEntity.status(403).body(Map.of("error", "Access denied: Not your course"));
+        }
+        int window = Math.max(1, Math.min(days, 366));
+        return ResponseEntity.ok(activityEventLog.dailyActiveLearners(courseId, window));
+    }
+
+    // Teacher: Completion funnel (enrolled -> started -> 25/50/75% -> certified), overall and by enrollment week
+    @PreAuthorize("hasRole('TEACHER')")
+    @GetMapping("/teacher/course/{courseId}/funnel")
+    public ResponseEntity<?> courseFunnel(@PathVariable Long courseId, CurrentUser currentUser) {
+        if (!courseRepository.existsByIdAndInstructorId(courseId, currentUser.getId())) {
+            return ResponseEntity.status(403).body(Map.of("error", "Access denied: Not your course"));
+        }
+        return ResponseEntity.ok(courseFunnelService.getFunnel(courseId));
+    }
+
+    // Teacher: Download the course roster as CSV, streamed (gzip when the client accepts it)
+    @PreAuthorize("hasRole('TEACHER')")
+    @GetMapping("/teacher/course/{courseId}/roster.csv")
+    public void exportRoster(@PathVariable Long courseId, CurrentUser currentUser,
+                             HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (!courseRepository.existsByIdAndInstructorId(courseId, currentUser.getId())) {
+            response.sendError(403, "Access denied: Not your course");
+            return;
+        }
+
+        response.setContentType("text/csv;charset=UTF-8");
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"course-" + courseId + "-roster.csv\"");
+        response.setHeader(HttpHeaders.CACHE_CONTROL, "no-store");
+
+        String acceptEncoding = request.getHeader(HttpHeaders.ACCEPT_ENCODING);
+        boolean gzip = acceptEncoding != null && acceptEncoding.contains("gzip");
+        if (gzip) {
+            response.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+            response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        }
+
+        OutputStream out = gzip ? new GZIPOutputStream(response.getOutputStream(), 8192, true) : response.getOutputStream();
+        rosterExportService.writeRosterCsv(courseId, out);
+        if (out instanceof GZIPOutputStream gzipOut) {
+            gzipOut.finish();
+        }
+        out.flush();
+    }
+
     // Teacher: List enrollments for a user (only their own)
     @PreAuthorize("hasRole('TEACHER')")
     @GetMapping("/user/{userId}")
-    public ResponseEntity<List<EnrollmentDTO>> enrollmentsByUser(@PathVariable Long userId, @AuthenticationPrincipal com.mycourse.elearningplatform.security.UserDetailsImpl principal) {
-        User authenticatedUser = userRepository.findByEmail(principal.getUsername()).orElse(null);
-        if (authenticatedUser == null || !authenticatedUser.getId().equals(userId)) {
+    public ResponseEntity<List<EnrollmentDTO>> enrollmentsByUser(@PathVariable Long userId, CurrentUser currentUser) {
+        if (!currentUser.getId().equals(userId)) {
             return ResponseEntity.status(403).body(null);
         }
-        List<Enrollment> enrollments = enrollmentRepository.findByUser(authenticatedUser);
+        List<Enrollment> enrollments = enrollmentRepository.findByUserId(userId);
         List<EnrollmentDTO> enrollmentDTOs = enrollments.stream()
                 .map(EnrollmentDTO::new)
+                .map(progressWriteBuffer::overlay)
                 .collect(Collectors.toList());
         return ResponseEntity.ok(enrollmentDTOs);
     }
@@ -169,10 +261,8 @@ public class EnrollmentController {
     // Mark enrollment as paid (after payment)
     @PreAuthorize("hasRole('STUDENT')")
     @PostMapping("/course/{courseId}/pay")
-    public ResponseEntity<?> markAsPaid(@PathVariable Long courseId, @AuthenticationPrincipal com.mycourse.elearningplatform.security.UserDetailsImpl principal) {
-        User student = userRepository.findByEmail(principal.getUsername()).orElseThrow();
-        Course course = courseRepository.findById(courseId).orElseThrow();
-        Enrollment enrollment = enrollmentRepository.findByUserAndCourse(student, course).orElse(null);
+    public ResponseEntity<?> markAsPaid(@PathVariable Long courseId, CurrentUser currentUser) {
+        Enrollment enrollment = enrollmentRepository.findByUserIdAndCourseId(currentUser.getId(), courseId).orElse(null);
         if (enrollment == null) {
             return ResponseEntity.notFound().build();
         }
@@ -184,17 +274,16 @@ public class EnrollmentController {
     // Save lecture progress (per user, per course)
     @PreAuthorize("hasRole('STUDENT')")
     @PostMapping("/course/{courseId}/progress")
-    public ResponseEntity<?> saveProgress(@PathVariable Long courseId, @RequestBody Map<String, Object> body, @AuthenticationPrincipal com.mycourse.elearningplatform.security.UserDetailsImpl principal) {
-        User student = userRepository.findByEmail(principal.getUsername()).orElseThrow();
-        Course course = courseRepository.findById(courseId).orElseThrow();
-        Enrollment enrollment = enrollmentRepository.findByUserAndCourse(student, course).orElse(null);
-        if (enrollment == null) {
-            return ResponseEntity.notFound().build();
-        }
-        Integer progress = (Integer) body.getOrDefault("progress", 0);
-        enrollment.setProgress(progress);
-        enrollment.updateLastActivityDate();
-        enrollmentRepository.save(enrollment);
-        return ResponseEntity.ok(enrollment);
+    public ResponseEntity<?> saveProgress(@PathVariable Long courseId, @RequestBody Map<String, Object> body, CurrentUser currentUser) {
+        Object progressObj = body.getOrDefault("progress", 0);
+        int progress = progressObj instanceof Number number ? number.intValue() : 0;
+        // Buffered and written in batches; see ProgressWriteBuffer
+        return progressWriteBuffer.record(currentUser.getId(), courseId, progress)
+                .<ResponseEntity<?>>map(p -> ResponseEntity.ok(Map.of(
+                        "id", p.enrollmentId(),
+                        "courseId", p.courseId(),
+                        "progress", p.progress(),
+                        "lastActivityDate", p.lastActivity())))
+                .orElse(ResponseEntity.notFound().build());
     }
 } 
\ No newline at end of file
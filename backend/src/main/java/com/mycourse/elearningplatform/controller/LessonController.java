@@ -1,22 +1,37 @@
 package com.mycourse.elearningplatform.controller;
 
 import com.mycourse.elearningplatform.dto.LessonDto;
+import com.mycourse.elearningplatform.repository.CourseRepository;
+import com.mycourse.elearningplatform.security.CurrentUser;
 import com.mycourse.elearningplatform.service.LessonService;
+import com.mycourse.elearningplatform.service.TranscriptSearchService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
 
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/api/courses/{courseId}/lessons")
 public class LessonController {
     @Autowired
     private LessonService lessonService;
+    @Autowired
+    private CourseRepository courseRepository;
+    @Autowired
+    private TranscriptSearchService transcriptSearchService;
 
     @PreAuthorize("hasRole('TEACHER')")
     @PostMapping
@@ -32,6 +47,90 @@ public class LessonController {
         return ResponseEntity.ok(lessons);
     }
 
+    // Teacher: Reorder all lessons of the course ({"lessonIds": [3, 1, 2]})
+    @PreAuthorize("hasRole('TEACHER')")
+    @PutMapping("/order")
+    public ResponseEntity<?> reorderLessons(@PathVariable Long courseId, @RequestBody Map<String, List<Long>> body, CurrentUser currentUser) {
+        if (!courseRepository.existsByIdAndInstructorId(courseId, currentUser.getId())) {
+            return ResponseEntity.status(403).body(Map.of("error", "Access denied: Not your course"));
+        }
+        List<Long> lessonIds = body.get("lessonIds");
+        if (lessonIds == null) {
+            return ResponseEntity.badRequest().body(Map.of("error", "lessonIds is required"));
+        }
+        try {
+            return ResponseEntity.ok(lessonService.reorder(courseId, lessonIds));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    // Teacher: Upload the lesson's WebVTT captions (multipart "file"); replaces any previous transcript
+    @PreAuthorize("hasRole('TEACHER')")
+    @PutMapping("/{lessonId}/transcript")
+    public ResponseEntity<?> uploadTranscript(@PathVariable Long courseId, @PathVariable Long lessonId,
+                                              @RequestParam("file") MultipartFile file, CurrentUser currentUser) {
+        if (!courseRepository.existsByIdAndInstructorId(courseId, currentUser.getId())) {
+            return ResponseEntity.status(403).body(Map.of("error", "Access denied: Not your course"));
+        }
+        if (!isLessonOfCourse(courseId, lessonId)) {
+            return ResponseEntity.status(404).body(Map.of("error", "Lesson not found"));
+        }
+        if (file.getSize() > TranscriptSearchService.MAX_TRANSCRIPT_CHARS) {
+            return ResponseEntity.status(413).body(Map.of("error", "Transcript is too large"));
+        }
+        try {
+            String vtt = new String(file.getBytes(), StandardCharsets.UTF_8);
+            int cues = transcriptSearchService.saveTranscript(courseId, lessonId, vtt);
+            return ResponseEntity.ok(Map.of("lessonId", lessonId, "cues", cues));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (Exception e) {
+            System.err.println("[ERROR] Transcript upload failed for lesson " + lessonId + ": " + e.getMessage());
+            return ResponseEntity.status(500).body(Map.of("error", "Transcript upload failed"));
+        }
+    }
+
+    // Captions for the player's text track
+    @PreAuthorize("hasRole('STUDENT') or hasRole('TEACHER')")
+    @GetMapping(value = "/{lessonId}/transcript", produces = "text/vtt")
+    public ResponseEntity<String> getTranscript(@PathVariable Long courseId, @PathVariable Long lessonId) {
+        if (!isLessonOfCourse(courseId, lessonId)) {
+            return ResponseEntity.notFound().build();
+        }
+        return transcriptSearchService.getTranscript(lessonId)
+                .map(vtt -> ResponseEntity.ok().contentType(MediaType.parseMediaType("text/vtt;charset=UTF-8")).body(vtt))
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    // Search the course's transcripts; each hit names the lesson and the second to seek to
+    @PreAuthorize("hasRole('STUDENT') or hasRole('TEACHER')")
+    @GetMapping("/search")
+    public ResponseEntity<?> searchTranscripts(@PathVariable Long courseId, @RequestParam("q") String query,
+                                               @RequestParam(defaultValue = "20") int limit) {
+        if (query.isBlank()) {
+            return ResponseEntity.badRequest().body(Map.of("error", "q is required"));
+        }
+        List<TranscriptSearchService.Hit> hits = transcriptSearchService.search(courseId, query, Math.max(1, Math.min(limit, 100)));
+        Map<Long, LessonDto> lessons = lessonService.getLessonsByCourse(courseId).stream()
+                .collect(Collectors.toMap(LessonDto::getId, Function.identity()));
+        List<Map<String, Object>> results = new ArrayList<>(hits.size());
+        for (TranscriptSearchService.Hit hit : hits) {
+            LessonDto lesson = lessons.get(hit.lessonId());
+            if (lesson == null) continue;
+            Map<String, Object> result = new HashMap<>();
+            result.put("lessonId", hit.lessonId());
+            result.put("lessonTitle", lesson.getTitle());
+            result.put("position", lesson.getPosition());
+            result.put("startSeconds", hit.startMs() / 1000.0);
+            result.put("endSeconds", hit.endMs() / 1000.0);
+            result.put("text", hit.text());
+            result.put("score", hit.score());
+            results.add(result);
+        }
+        return ResponseEntity.ok(results);
+    }
+
     @PreAuthorize("hasRole('TEACHER')")
     @DeleteMapping("/{lessonId}")
     public ResponseEntity<?> deleteLesson(@PathVariable Long courseId, @PathVariable Long lessonId) {
@@ -48,4 +147,8 @@ public class LessonController {
         lessonService.deleteLessonById(lessonId);
         return ResponseEntity.ok().build();
     }
-} 
\ No newline at end of file
+
+    private boolean isLessonOfCourse(Long courseId, Long lessonId) {
+        return lessonService.getLessonsByCourse(courseId).stream().anyMatch(lesson -> lesson.getId().equals(lessonId));
+    }
+}
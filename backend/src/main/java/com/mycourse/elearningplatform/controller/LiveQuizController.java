@@ -0,0 +1,153 @@
+package com.mycourse.elearningplatform.controller;
+
+import com.mycourse.elearningplatform.repository.CourseRepository;
+import com.mycourse.elearningplatform.repository.EnrollmentRepository;
+import com.mycourse.elearningplatform.repository.QuizRepository;
+import com.mycourse.elearningplatform.security.CurrentUser;
+import com.mycourse.elearningplatform.service.LiveQuizService;
+import com.mycourse.elearningplatform.service.QuizGradingService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.Map;
+import java.util.Optional;
+
+@RestController
+@RequestMapping("/api/live-quizzes")
+public class LiveQuizController {
+    @Autowired
+    private LiveQuizService liveQuizService;
+    @Autowired
+    private QuizGradingService quizGradingService;
+    @Autowired
+    private CourseRepository courseRepository;
+    @Autowired
+    private EnrollmentRepository enrollmentRepository;
+    @Autowired
+    private QuizRepository quizRepository;
+
+    // Teacher: Open a live session on one of their quizzes
+    @PreAuthorize("hasRole('TEACHER')")
+    @PostMapping("/quiz/{quizId}/sessions")
+    public ResponseEntity<?> createSession(@PathVariable Long quizId, CurrentUser currentUser) {
+        if (!quizRepository.existsById(quizId)) {
+            return ResponseEntity.status(404).body(Map.of("error", "Quiz not found"));
+        }
+        QuizGradingService.CompiledQuiz quiz = quizGradingService.compiled(quizId);
+        if (!courseRepository.existsByIdAndInstructorId(quiz.getCourseId(), currentUser.getId())) {
+            return ResponseEntity.status(403).body(Map.of("error", "Access denied: Not your quiz"));
+        }
+        try {
+            return ResponseEntity.ok(liveQuizService.create(currentUser.getId(), quizId));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    @GetMapping("/sessions/{sessionId}")
+    public ResponseEntity<?> getSession(@PathVariable Long sessionId, CurrentUser currentUser) {
+        Optional<LiveQuizService.SessionView> session = liveQuizService.find(sessionId);
+        if (session.isEmpty()) {
+            return ResponseEntity.status(404).body(Map.of("error", "Live session not found"));
+        }
+        if (!isHost(session.get(), currentUser) && !isParticipant(session.get(), currentUser)) {
+            return ResponseEntity.status(403).body(Map.of("error", "Not enrolled in this course"));
+        }
+        return ResponseEntity.ok(session.get());
+    }
+
+    // Questions, reveals, leaderboards and progress; the host's stream also serves as the projector view
+    @GetMapping(value = "/sessions/{sessionId}/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> stream(@PathVariable Long sessionId, CurrentUser currentUser) {
+        Optional<LiveQuizService.SessionView> session = liveQuizService.find(sessionId);
+        if (session.isEmpty()) {
+            return ResponseEntity.status(404).build();
+        }
+        SseEmitter emitter;
+        if (isHost(session.get(), currentUser)) {
+            emitter = liveQuizService.watch(sessionId);
+        } else if (isParticipant(session.get(), currentUser)) {
+            String name = currentUser.findUser()
+                    .map(user -> user.getFirstName() + " " + user.getLastName())
+                    .orElse("Student " + currentUser.getId());
+            emitter = liveQuizService.join(sessionId, currentUser.getId(), name);
+        } else {
+            return ResponseEntity.status(403).build();
+        }
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CACHE_CONTROL, "no-store")
+                .header("X-Accel-Buffering", "no")
+                .body(emitter);
+    }
+
+    // Teacher: Open the next question
+    @PostMapping("/sessions/{sessionId}/next")
+    public ResponseEntity<?> nextQuestion(@PathVariable Long sessionId, CurrentUser currentUser) {
+        ResponseEntity<?> denied = checkHost(sessionId, currentUser);
+        if (denied != null) return denied;
+        if (!liveQuizService.next(sessionId)) {
+            return ResponseEntity.status(409).body(Map.of("error", "No questions left"));
+        }
+        return ResponseEntity.ok(liveQuizService.find(sessionId).orElseThrow());
+    }
+
+    // Teacher: Close the open question and show the answer and leaderboard
+    @PostMapping("/sessions/{sessionId}/reveal")
+    public ResponseEntity<?> reveal(@PathVariable Long sessionId, CurrentUser currentUser) {
+        ResponseEntity<?> denied = checkHost(sessionId, currentUser);
+        if (denied != null) return denied;
+        if (!liveQuizService.reveal(sessionId)) {
+            return ResponseEntity.status(409).body(Map.of("error", "No question is open"));
+        }
+        return ResponseEntity.ok(liveQuizService.find(sessionId).orElseThrow());
+    }
+
+    // Teacher: End the session and save the final standings
+    @PostMapping("/sessions/{sessionId}/end")
+    public ResponseEntity<?> endSession(@PathVariable Long sessionId, CurrentUser currentUser) {
+        ResponseEntity<?> denied = checkHost(sessionId, currentUser);
+        if (denied != null) return denied;
+        return ResponseEntity.ok(Map.of("sessionId", sessionId, "standings", liveQuizService.end(sessionId)));
+    }
+
+    // Student: Answer the open question ({"questionId": 1, "answer": ...}, same answer format as quiz attempts)
+    @PostMapping("/sessions/{sessionId}/answers")
+    public ResponseEntity<?> answer(@PathVariable Long sessionId, @RequestBody Map<String, Object> body, CurrentUser currentUser) {
+        if (liveQuizService.find(sessionId).isEmpty()) {
+            return ResponseEntity.status(404).body(Map.of("error", "Live session not found"));
+        }
+        if (!(body.get("questionId") instanceof Number questionId)) {
+            return ResponseEntity.badRequest().body(Map.of("error", "questionId is required"));
+        }
+        return switch (liveQuizService.answer(sessionId, currentUser.getId(), questionId.longValue(), body.get("answer"))) {
+            case ACCEPTED -> ResponseEntity.accepted().build();
+            case NOT_JOINED -> ResponseEntity.status(403).body(Map.of("error", "Join the session first"));
+            case QUESTION_CLOSED -> ResponseEntity.status(409).body(Map.of("error", "Question is closed"));
+            case ALREADY_ANSWERED -> ResponseEntity.status(409).body(Map.of("error", "Already answered"));
+        };
+    }
+
+    private ResponseEntity<?> checkHost(Long sessionId, CurrentUser currentUser) {
+        Optional<LiveQuizService.SessionView> session = liveQuizService.find(sessionId);
+        if (session.isEmpty()) {
+            return ResponseEntity.status(404).body(Map.of("error", "Live session not found"));
+        }
+        if (!isHost(session.get(), currentUser)) {
+            return ResponseEntity.status(403).body(Map.of("error", "Access denied: Not your session"));
+        }
+        return null;
+    }
+
+    private boolean isHost(LiveQuizService.SessionView session, CurrentUser currentUser) {
+        return session.hostId() == currentUser.getId();
+    }
+
+    private boolean isParticipant(LiveQuizService.SessionView session, CurrentUser currentUser) {
+        return enrollmentRepository.existsByUserIdAndCourseId(currentUser.getId(), session.courseId());
+    }
+}
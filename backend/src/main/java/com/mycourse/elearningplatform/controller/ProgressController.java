@@ -1,16 +1,18 @@
 package com.mycourse.elearningplatform.controller;
 
 import com.mycourse.elearningplatform.model.Enrollment;
-import com.mycourse.elearningplatform.model.User;
 import com.mycourse.elearningplatform.repository.EnrollmentRepository;
-import com.mycourse.elearningplatform.repository.UserRepository;
+import com.mycourse.elearningplatform.security.CurrentUser;
+import com.mycourse.elearningplatform.service.LessonCompletionService;
+import com.mycourse.elearningplatform.service.PlaybackCheckpointService;
+import com.mycourse.elearningplatform.service.ProgressWriteBuffer;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.stream.Collectors;
 
 @RestController
@@ -19,26 +21,29 @@ public class ProgressController {
     
     @Autowired
     private EnrollmentRepository enrollmentRepository;
-    
+
+    @Autowired
+    private ProgressWriteBuffer progressWriteBuffer;
+
+    @Autowired
+    private LessonCompletionService lessonCompletionService;
+
     @Autowired
-    private UserRepository userRepository;
+    private PlaybackCheckpointService playbackCheckpointService;
     
     // Get progress for current user
     @GetMapping("/my-progress")
-    public ResponseEntity<?> getMyProgress(@AuthenticationPrincipal com.mycourse.elearningplatform.security.UserDetailsImpl principal) {
-        if (principal == null) {
-            return ResponseEntity.status(401).body(Map.of("error", "Unauthorized"));
-        }
-        User user = userRepository.findByEmail(principal.getUsername()).orElseThrow();
-        List<Enrollment> enrollments = enrollmentRepository.findByUser(user);
+    public ResponseEntity<?> getMyProgress(CurrentUser currentUser) {
+        List<Enrollment> enrollments = enrollmentRepository.findByUserId(currentUser.getId());
         List<Map<String, Object>> progressData = enrollments.stream()
             .map(enrollment -> {
                 Map<String, Object> map = new java.util.HashMap<>();
                 map.put("enrollmentId", enrollment.getId());
                 map.put("courseId", enrollment.getCourse().getId());
                 map.put("courseTitle", enrollment.getCourse().getTitle());
-                map.put("completionPercentage", enrollment.getProgress() != null ? enrollment.getProgress() : 0);
-                map.put("lastActivityDate", enrollment.getLastActivityDate() != null ? enrollment.getLastActivityDate().toString() : null);
+                java.time.LocalDateTime lastActivity = progressWriteBuffer.lastActivityOf(enrollment);
+                map.put("completionPercentage", progressWriteBuffer.progressOf(enrollment));
+                map.put("lastActivityDate", lastActivity != null ? lastActivity.toString() : null);
                 return map;
             })
             .collect(Collectors.toList());
@@ -50,13 +55,7 @@ public class ProgressController {
     public ResponseEntity<?> updateProgress(
             @PathVariable Long courseId,
             @RequestBody Map<String, Object> progressData,
-            @AuthenticationPrincipal com.mycourse.elearningplatform.security.UserDetailsImpl principal) {
-        if (principal == null) {
-            return ResponseEntity.status(401).body(Map.of("error", "Unauthorized"));
-        }
-        User user = userRepository.findByEmail(principal.getUsername()).orElseThrow();
-        Enrollment enrollment = enrollmentRepository.findByUserIdAndCourseId(user.getId(), courseId)
-            .orElseThrow(() -> new RuntimeException("Enrollment not found"));
+            CurrentUser currentUser) {
         Object progressObj = progressData.get("progress");
         Integer progress = null;
         if (progressObj instanceof Number) {
@@ -66,18 +65,69 @@ public class ProgressController {
                 progress = Integer.parseInt((String) progressObj);
             } catch (NumberFormatException ignored) {}
         }
-        if (progress != null) {
-            enrollment.setProgress(progress);
-            // Ensure updateLastActivityDate exists in Enrollment
-            if (enrollment.getClass().getDeclaredMethods() != null) {
-                try { enrollment.updateLastActivityDate(); } catch (Exception ignored) {}
-            }
-            enrollmentRepository.save(enrollment);
+        if (progress == null) {
+            Enrollment enrollment = enrollmentRepository.findByUserIdAndCourseId(currentUser.getId(), courseId)
+                .orElseThrow(() -> new RuntimeException("Enrollment not found"));
+            return ResponseEntity.ok(Map.of(
+                "enrollmentId", enrollment.getId(),
+                "courseId", enrollment.getCourse().getId(),
+                "progress", progressWriteBuffer.progressOf(enrollment)
+            ));
         }
+        // Buffered and written in batches; see ProgressWriteBuffer
+        ProgressWriteBuffer.PendingProgress pending = progressWriteBuffer.record(currentUser.getId(), courseId, progress)
+            .orElseThrow(() -> new RuntimeException("Enrollment not found"));
         return ResponseEntity.ok(Map.of(
-            "enrollmentId", enrollment.getId(),
-            "courseId", enrollment.getCourse().getId(),
-            "progress", enrollment.getProgress()
+            "enrollmentId", pending.enrollmentId(),
+            "courseId", pending.courseId(),
+            "progress", pending.progress()
         ));
     }
-}
\ No newline at end of file
+
+    // Mark a lesson as completed; course progress is derived from the completed lessons
+    @PostMapping("/course/{courseId}/lessons/{lessonId}/complete")
+    public ResponseEntity<?> completeLesson(@PathVariable Long courseId, @PathVariable Long lessonId, CurrentUser currentUser) {
+        try {
+            return lessonCompletionService.markComplete(currentUser.getId(), courseId, lessonId)
+                .<ResponseEntity<?>>map(ResponseEntity::ok)
+                .orElse(ResponseEntity.status(404).body(Map.of("error", "Enrollment not found")));
+        } catch (NoSuchElementException e) {
+            return ResponseEntity.status(404).body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    // Per-lesson completion map and the lesson to resume at
+    @GetMapping("/course/{courseId}/lessons")
+    public ResponseEntity<?> getLessonCompletion(@PathVariable Long courseId, CurrentUser currentUser) {
+        return lessonCompletionService.getCompletion(currentUser.getId(), courseId)
+            .<ResponseEntity<?>>map(ResponseEntity::ok)
+            .orElse(ResponseEntity.status(404).body(Map.of("error", "Enrollment not found")));
+    }
+
+    // Playback heartbeat: {lessonId (omit for the course video), position, duration} in seconds
+    @PutMapping("/course/{courseId}/playback")
+    public ResponseEntity<?> savePlaybackPosition(
+            @PathVariable Long courseId,
+            @RequestBody Map<String, Object> checkpoint,
+            CurrentUser currentUser) {
+        if (!(checkpoint.get("position") instanceof Number position) || !Double.isFinite(position.doubleValue())) {
+            return ResponseEntity.badRequest().body(Map.of("error", "position is required"));
+        }
+        Long lessonId = checkpoint.get("lessonId") instanceof Number n ? n.longValue() : null;
+        Double duration = checkpoint.get("duration") instanceof Number n ? n.doubleValue() : null;
+        // Buffered and written in batches; see PlaybackCheckpointService
+        if (!playbackCheckpointService.record(currentUser.getId(), courseId, lessonId, position.doubleValue(), duration)) {
+            return ResponseEntity.status(404).body(Map.of("error", "Enrollment or lesson not found"));
+        }
+        return ResponseEntity.noContent().build();
+    }
+
+    // Resume positions for all videos of a course
+    @GetMapping("/course/{courseId}/playback")
+    public ResponseEntity<?> getPlaybackPositions(@PathVariable Long courseId, CurrentUser currentUser) {
+        List<Map<String, Object>> positions = playbackCheckpointService.getPositions(currentUser.getId(), courseId).stream()
+            .map(PlaybackCheckpointService.Checkpoint::toMap)
+            .collect(Collectors.toList());
+        return ResponseEntity.ok(Map.of("courseId", courseId, "positions", positions));
+    }
+}
@@ -1,15 +1,38 @@
 package com.mycourse.elearningplatform.controller;
 
+import com.mycourse.elearningplatform.dto.PageResponse;
+import com.mycourse.elearningplatform.dto.QuizSummary;
 import com.mycourse.elearningplatform.model.Quiz;
 import com.mycourse.elearningplatform.model.Course;
+import com.mycourse.elearningplatform.model.QuizAttempt;
+import com.mycourse.elearningplatform.model.QuizQuestion;
+import com.mycourse.elearningplatform.model.User;
+import com.mycourse.elearningplatform.repository.EnrollmentRepository;
+import com.mycourse.elearningplatform.repository.QuizAttemptRepository;
+import com.mycourse.elearningplatform.repository.QuizQuestionRepository;
 import com.mycourse.elearningplatform.repository.QuizRepository;
 import com.mycourse.elearningplatform.repository.CourseRepository;
+import com.mycourse.elearningplatform.repository.UserRepository;
+import com.mycourse.elearningplatform.security.CurrentUser;
+import com.mycourse.elearningplatform.service.ItemStatisticsService;
+import com.mycourse.elearningplatform.service.LeaderboardService;
+import com.mycourse.elearningplatform.service.QuizAttemptService;
+import com.mycourse.elearningplatform.service.QuizGradingService;
+import com.mycourse.elearningplatform.service.QuizService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/api/quizzes")
@@ -18,11 +41,34 @@ public class QuizController {
     private QuizRepository quizRepository;
     @Autowired
     private CourseRepository courseRepository;
+    @Autowired
+    private QuizAttemptRepository quizAttemptRepository;
+    @Autowired
+    private QuizGradingService quizGradingService;
+    @Autowired
+    private QuizAttemptService quizAttemptService;
+    @Autowired
+    private QuizService quizService;
+    @Autowired
+    private QuizQuestionRepository quizQuestionRepository;
+    @Autowired
+    private LeaderboardService leaderboardService;
+    @Autowired
+    private ItemStatisticsService itemStatisticsService;
+    @Autowired
+    private EnrollmentRepository enrollmentRepository;
+    @Autowired
+    private UserRepository userRepository;
 
-    // Public: List all quizzes
+    // List quizzes, one page at a time, optionally for one course
     @GetMapping
-    public List<Quiz> getAllQuizzes() {
-        return quizRepository.findAll();
+    public PageResponse<QuizSummary> getAllQuizzes(@RequestParam(required = false) Long courseId,
+                                                   @RequestParam(defaultValue = "0") int page,
+                                                   @RequestParam(defaultValue = "20") int size) {
+        Pageable pageable = pageRequest(page, size);
+        return new PageResponse<>(courseId != null
+                ? quizRepository.findSummariesByCourseId(courseId, pageable)
+                : quizRepository.findAllSummaries(pageable));
     }
 
     // Public: Get quiz by ID
@@ -36,36 +82,231 @@ public class QuizController {
     // Teacher: Create quiz and assign to course
     @PreAuthorize("hasRole('TEACHER')")
     @PostMapping
-    public ResponseEntity<Quiz> createQuiz(@RequestBody Quiz quiz, @RequestParam Long courseId) {
-        Course course = courseRepository.findById(courseId).orElseThrow();
+    public ResponseEntity<?> createQuiz(@RequestBody Quiz quiz, @RequestParam Long courseId, CurrentUser currentUser) {
+        Course course = courseRepository.findById(courseId).orElse(null);
+        if (course == null) {
+            return ResponseEntity.status(404).body(Map.of("error", "Course not found"));
+        }
+        if (!course.getInstructor().getId().equals(currentUser.getId())) {
+            return ResponseEntity.status(403).body(Map.of("error", "Access denied: Not your course"));
+        }
         quiz.setCourse(course);
+        quiz.setVersion(0);
         return ResponseEntity.ok(quizRepository.save(quiz));
     }
 
     // Teacher: Update quiz
     @PreAuthorize("hasRole('TEACHER')")
     @PutMapping("/{id}")
-    public ResponseEntity<Quiz> updateQuiz(@PathVariable Long id, @RequestBody Quiz updated) {
-        return quizRepository.findById(id).map(quiz -> {
-            quiz.setTitle(updated.getTitle());
-            quiz.setDescription(updated.getDescription());
-            quiz.setTotalPoints(updated.getTotalPoints());
-            return ResponseEntity.ok(quizRepository.save(quiz));
+    public ResponseEntity<?> updateQuiz(@PathVariable Long id, @RequestBody Quiz updated, CurrentUser currentUser) {
+        return quizRepository.findById(id).<ResponseEntity<?>>map(quiz -> {
+            if (!ownsQuiz(quiz, currentUser)) {
+                return ResponseEntity.status(403).body(Map.of("error", "Access denied: Not your quiz"));
+            }
+            return ResponseEntity.ok(quizService.updateQuiz(id, updated));
         }).orElse(ResponseEntity.notFound().build());
     }
 
     // Teacher: Delete quiz
     @PreAuthorize("hasRole('TEACHER')")
     @DeleteMapping("/{id}")
-    public ResponseEntity<?> deleteQuiz(@PathVariable Long id) {
-        quizRepository.deleteById(id);
+    public ResponseEntity<?> deleteQuiz(@PathVariable Long id, CurrentUser currentUser) {
+        Quiz quiz = quizRepository.findById(id).orElse(null);
+        if (quiz == null) {
+            return ResponseEntity.status(404).body(Map.of("error", "Quiz not found"));
+        }
+        if (!ownsQuiz(quiz, currentUser)) {
+            return ResponseEntity.status(403).body(Map.of("error", "Access denied: Not your quiz"));
+        }
+        // Attempts, enrollment quiz averages and the leaderboard change with the quiz
+        if (!quizAttemptService.deleteQuiz(id)) {
+            return ResponseEntity.status(404).body(Map.of("error", "Quiz not found"));
+        }
         return ResponseEntity.ok().build();
     }
 
-    // Public: List quizzes by course
+    // Public: List quizzes by course, one page at a time
     @GetMapping("/course/{courseId}")
-    public List<Quiz> getQuizzesByCourse(@PathVariable Long courseId) {
-        Course course = courseRepository.findById(courseId).orElseThrow();
-        return quizRepository.findByCourse(course);
+    public PageResponse<QuizSummary> getQuizzesByCourse(@PathVariable Long courseId,
+                                                        @RequestParam(defaultValue = "0") int page,
+                                                        @RequestParam(defaultValue = "20") int size) {
+        return new PageResponse<>(quizRepository.findSummariesByCourseId(courseId, pageRequest(page, size)));
+    }
+
+    // Teacher: Questions with answer keys (own quizzes only)
+    @PreAuthorize("hasRole('TEACHER')")
+    @GetMapping("/{id}/questions")
+    public ResponseEntity<?> getQuestions(@PathVariable Long id, CurrentUser currentUser) {
+        Quiz quiz = quizRepository.findById(id).orElseThrow(() -> new RuntimeException("Quiz not found"));
+        if (!ownsQuiz(quiz, currentUser)) {
+            return ResponseEntity.status(403).body(Map.of("error", "Access denied: Not your quiz"));
+        }
+        return ResponseEntity.ok(quizQuestionRepository.findByQuizIdOrderByPositionAscIdAsc(id));
+    }
+
+    // Teacher: Replace the question set; totalPoints is recomputed from the questions
+    @PreAuthorize("hasRole('TEACHER')")
+    @PutMapping("/{id}/questions")
+    public ResponseEntity<?> replaceQuestions(@PathVariable Long id, @RequestBody List<QuizQuestion> questions, CurrentUser currentUser) {
+        Quiz quiz = quizRepository.findById(id).orElseThrow(() -> new RuntimeException("Quiz not found"));
+        if (!ownsQuiz(quiz, currentUser)) {
+            return ResponseEntity.status(403).body(Map.of("error", "Access denied: Not your quiz"));
+        }
+        try {
+            quizGradingService.validate(questions);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+        return ResponseEntity.ok(quizService.replaceQuestions(id, questions));
+    }
+
+    // Teacher: Item analysis per question (difficulty, discrimination, option selection rates, time spent)
+    @PreAuthorize("hasRole('TEACHER')")
+    @GetMapping("/{id}/analytics")
+    public ResponseEntity<?> getItemAnalysis(@PathVariable Long id, CurrentUser currentUser) {
+        QuizGradingService.CompiledQuiz quiz = quizGradingService.compiled(id);
+        if (!courseRepository.existsByIdAndInstructorId(quiz.getCourseId(), currentUser.getId())) {
+            return ResponseEntity.status(403).body(Map.of("error", "Access denied: Not your quiz"));
+        }
+        return ResponseEntity.ok(Map.of(
+                "quizId", id,
+                "questions", itemStatisticsService.getQuizStatistics(quiz)));
+    }
+
+    // Student: This student's variant of the quiz (order, options and drawn questions), without answer keys
+    @GetMapping("/{id}/delivery")
+    public ResponseEntity<?> getDelivery(@PathVariable Long id, CurrentUser currentUser) {
+        QuizGradingService.CompiledQuiz quiz = quizGradingService.compiled(id);
+        return ResponseEntity.ok(quizGradingService.delivery(quiz, currentUser.getId()));
+    }
+
+    // Student: Submit answers ({"answers": {"<questionId>": answer}, "timeSpent": {"<questionId>": seconds}}); graded in the background
+    @PostMapping("/{id}/attempts")
+    public ResponseEntity<?> submitAttempt(@PathVariable Long id, @RequestBody Map<String, Object> body, CurrentUser currentUser) {
+        if (quizGradingService.compiled(id).getTimeLimitSeconds() > 0) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Timed quiz: start an attempt first"));
+        }
+        return quizAttemptService.enqueue(currentUser.getId(), id, mapField(body, "answers"), mapField(body, "timeSpent"))
+                .<ResponseEntity<?>>map(this::accepted)
+                .orElse(ResponseEntity.status(403).body(Map.of("error", "Not enrolled in this course")));
+    }
+
+    // Student: Start a timed attempt (or resume the open one); the server closes it at the deadline
+    @PostMapping("/{id}/attempts/start")
+    public ResponseEntity<?> startAttempt(@PathVariable Long id, CurrentUser currentUser) {
+        if (quizGradingService.compiled(id).getTimeLimitSeconds() <= 0) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Quiz is not timed"));
+        }
+        return quizAttemptService.start(currentUser.getId(), id)
+                .<ResponseEntity<?>>map(attempt -> ResponseEntity.ok(Map.of(
+                        "attemptId", attempt.id(),
+                        "status", QuizAttempt.IN_PROGRESS,
+                        "startedAt", attempt.startedAt(),
+                        "deadline", attempt.deadline(),
+                        "secondsRemaining", Math.max(0, Duration.between(LocalDateTime.now(), attempt.deadline()).getSeconds()))))
+                .orElse(ResponseEntity.status(403).body(Map.of("error", "Not enrolled in this course")));
     }
-} 
\ No newline at end of file
+
+    // Student: Save draft answers of an open timed attempt; they are submitted automatically at the deadline
+    @PutMapping("/attempts/{attemptId}/answers")
+    public ResponseEntity<?> saveDraft(@PathVariable Long attemptId, @RequestBody Map<String, Object> body, CurrentUser currentUser) {
+        if (!quizAttemptService.saveDraft(currentUser.getId(), attemptId, mapField(body, "answers"), mapField(body, "timeSpent"))) {
+            return ResponseEntity.status(409).body(Map.of("error", "Attempt is not open"));
+        }
+        return ResponseEntity.noContent().build();
+    }
+
+    // Student: Submit an open timed attempt; graded in the background
+    @PostMapping("/attempts/{attemptId}/submit")
+    public ResponseEntity<?> submitTimedAttempt(@PathVariable Long attemptId, @RequestBody Map<String, Object> body, CurrentUser currentUser) {
+        if (!quizAttemptService.submitTimed(currentUser.getId(), attemptId, mapField(body, "answers"), mapField(body, "timeSpent"))) {
+            return ResponseEntity.status(409).body(Map.of("error", "Attempt is not open"));
+        }
+        return accepted(attemptId);
+    }
+
+    // Student: Poll one attempt until it is GRADED
+    @GetMapping("/attempts/{attemptId}")
+    public ResponseEntity<?> getAttempt(@PathVariable Long attemptId, CurrentUser currentUser) {
+        QuizAttempt attempt = quizAttemptRepository.findById(attemptId).orElse(null);
+        if (attempt == null || !currentUser.getId().equals(attempt.getUserId())) {
+            return ResponseEntity.status(404).body(Map.of("error", "Attempt not found"));
+        }
+        return ResponseEntity.ok(attempt);
+    }
+
+    // Student: Own attempts for a quiz, newest first
+    @GetMapping("/{id}/attempts/me")
+    public ResponseEntity<?> getMyAttempts(@PathVariable Long id, CurrentUser currentUser) {
+        return ResponseEntity.ok(quizAttemptRepository.findByQuizIdAndUserIdOrderBySubmittedAtDesc(id, currentUser.getId()));
+    }
+
+    // Course quiz leaderboard: top N students by average quiz score (enrolled students and the instructor)
+    @GetMapping("/leaderboard/course/{courseId}")
+    public ResponseEntity<?> getLeaderboard(@PathVariable Long courseId,
+                                            @RequestParam(defaultValue = "10") int limit,
+                                            CurrentUser currentUser) {
+        if (!canViewLeaderboard(courseId, currentUser)) {
+            return ResponseEntity.status(403).body(Map.of("error", "Not enrolled in this course"));
+        }
+        List<LeaderboardService.Standing> top = leaderboardService.top(courseId, Math.max(1, Math.min(limit, 100)));
+        Map<Long, User> users = userRepository.findAllById(top.stream().map(LeaderboardService.Standing::userId).toList())
+                .stream()
+                .collect(Collectors.toMap(User::getId, Function.identity()));
+        List<Map<String, Object>> entries = top.stream()
+                .map(standing -> {
+                    User user = users.get(standing.userId());
+                    Map<String, Object> entry = new HashMap<>();
+                    entry.put("rank", standing.rank());
+                    entry.put("userId", standing.userId());
+                    entry.put("firstName", user != null ? user.getFirstName() : null);
+                    entry.put("lastName", user != null ? user.getLastName() : null);
+                    entry.put("averageQuizScore", standing.score());
+                    return entry;
+                })
+                .collect(Collectors.toList());
+        return ResponseEntity.ok(Map.of(
+                "courseId", courseId,
+                "participants", top.isEmpty() ? 0 : top.get(0).participants(),
+                "entries", entries));
+    }
+
+    // Current student's place on the course leaderboard
+    @GetMapping("/leaderboard/course/{courseId}/me")
+    public ResponseEntity<?> getMyRank(@PathVariable Long courseId, CurrentUser currentUser) {
+        return leaderboardService.standing(courseId, currentUser.getId())
+                .<ResponseEntity<?>>map(standing -> ResponseEntity.ok(Map.of(
+                        "courseId", courseId,
+                        "rank", standing.rank(),
+                        "participants", standing.participants(),
+                        "averageQuizScore", standing.score())))
+                .orElse(ResponseEntity.status(404).body(Map.of("error", "No graded quiz attempts in this course")));
+    }
+
+    private boolean ownsQuiz(Quiz quiz, CurrentUser currentUser) {
+        return courseRepository.existsByIdAndInstructorId(quiz.getCourse().getId(), currentUser.getId());
+    }
+
+    private boolean canViewLeaderboard(Long courseId, CurrentUser currentUser) {
+        return enrollmentRepository.existsByUserIdAndCourseId(currentUser.getId(), courseId)
+                || courseRepository.existsByIdAndInstructorId(courseId, currentUser.getId());
+    }
+
+    private ResponseEntity<?> accepted(Long attemptId) {
+        return ResponseEntity.accepted().body(Map.of(
+                "attemptId", attemptId,
+                "status", QuizAttempt.PENDING,
+                "statusUrl", "/api/quizzes/attempts/" + attemptId));
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> mapField(Map<String, Object> body, String field) {
+        return body.get(field) instanceof Map<?, ?> map ? (Map<String, Object>) map : Map.of();
+    }
+
+    // Page size is capped so one request cannot pull every quiz on the platform
+    private Pageable pageRequest(int page, int size) {
+        return PageRequest.of(Math.max(0, page), Math.max(1, Math.min(size, 100)));
+    }
+
+}
@@ -1,18 +1,26 @@
 package com.mycourse.elearningplatform.controller;
 
+import com.mycourse.elearningplatform.dto.PageResponse;
+import com.mycourse.elearningplatform.dto.ResourceSummary;
 import com.mycourse.elearningplatform.model.Course;
 import com.mycourse.elearningplatform.model.Resource;
-import com.mycourse.elearningplatform.model.User;
 import com.mycourse.elearningplatform.repository.CourseRepository;
+import com.mycourse.elearningplatform.repository.EnrollmentRepository;
 import com.mycourse.elearningplatform.repository.ResourceRepository;
-import com.mycourse.elearningplatform.repository.UserRepository;
+import com.mycourse.elearningplatform.security.CurrentUser;
 import com.mycourse.elearningplatform.service.CourseService;
+import com.mycourse.elearningplatform.service.ResourceBundleService;
+import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
-import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
+import java.time.LocalDate;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -27,12 +35,15 @@ public class ResourceController {
     @Autowired
     private CourseRepository courseRepository;
     
-    @Autowired
-    private UserRepository userRepository;
-    
     @Autowired
     private CourseService courseService;
 
+    @Autowired
+    private EnrollmentRepository enrollmentRepository;
+
+    @Autowired
+    private ResourceBundleService resourceBundleService;
+
     // Get all resources for a specific course (accessible by enrolled students and course instructor)
     @GetMapping("/course/{courseId}")
     public ResponseEntity<?> getResourcesByCourse(@PathVariable Long courseId) {
@@ -50,6 +61,7 @@ public class ResourceController {
             map.put("fileId", extractFileIdFromNhostUrl(resource.getFileUrl()));
             map.put("fileType", resource.getFileType());
             map.put("fileSize", resource.getFileSize());
+            map.put("contentHash", resource.getContentHash());
             map.put("createdAt", resource.getCreatedAt());
             map.put("updatedAt", resource.getUpdatedAt());
             return map;
@@ -57,6 +69,35 @@ public class ResourceController {
         return ResponseEntity.ok(resourceData);
     }
 
+    // Download all resources of a course as one ZIP, streamed (enrolled students and the course instructor)
+    @GetMapping("/course/{courseId}/bundle.zip")
+    public void downloadBundle(@PathVariable Long courseId, CurrentUser currentUser, HttpServletResponse response) throws IOException {
+        Optional<Course> courseOpt = courseRepository.findById(courseId);
+        if (courseOpt.isEmpty()) {
+            response.sendError(404, "Course not found");
+            return;
+        }
+        Course course = courseOpt.get();
+        if (!courseRepository.existsByIdAndInstructorId(courseId, currentUser.getId())
+                && !enrollmentRepository.existsByUserIdAndCourseId(currentUser.getId(), courseId)) {
+            response.sendError(403, "Not enrolled in this course");
+            return;
+        }
+        if (!resourceBundleService.tryAcquire()) {
+            response.setHeader(HttpHeaders.RETRY_AFTER, "30");
+            response.sendError(503, "Too many bundle downloads in progress");
+            return;
+        }
+        try {
+            response.setContentType("application/zip");
+            response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"course-" + courseId + "-resources.zip\"");
+            response.setHeader(HttpHeaders.CACHE_CONTROL, "no-store");
+            resourceBundleService.writeBundle(course, response.getOutputStream());
+        } finally {
+            resourceBundleService.release();
+        }
+    }
+
     // Get a specific resource by ID
     @GetMapping("/{resourceId}")
     public ResponseEntity<?> getResource(@PathVariable Long resourceId) {
@@ -71,6 +112,7 @@ public class ResourceController {
         map.put("fileId", extractFileIdFromNhostUrl(resource.getFileUrl()));
         map.put("fileType", resource.getFileType());
         map.put("fileSize", resource.getFileSize());
+        map.put("contentHash", resource.getContentHash());
         map.put("createdAt", resource.getCreatedAt());
         map.put("updatedAt", resource.getUpdatedAt());
         return ResponseEntity.ok(map);
@@ -82,7 +124,7 @@ public class ResourceController {
     public ResponseEntity<?> createResource(
             @PathVariable Long courseId,
             @RequestBody Map<String, Object> resourceData,
-            @AuthenticationPrincipal org.springframework.security.core.userdetails.User principal) {
+            CurrentUser currentUser) {
         
         try {
             Optional<Course> courseOpt = courseRepository.findById(courseId);
@@ -91,10 +133,9 @@ public class ResourceController {
             }
             
             Course course = courseOpt.get();
-            User authenticatedUser = userRepository.findByEmail(principal.getUsername()).orElse(null);
             
             // Check if the authenticated user is the instructor of this course
-            if (authenticatedUser == null || !course.getInstructor().getId().equals(authenticatedUser.getId())) {
+            if (!course.getInstructor().getId().equals(currentUser.getId())) {
                 return ResponseEntity.status(403).body(Map.of("error", "Access denied: You can only add resources to your own courses"));
             }
             
@@ -106,14 +147,7 @@ public class ResourceController {
                 return ResponseEntity.badRequest().body(Map.of("error", "fileName and fileUrl are required"));
             }
             
-            Resource resource = new Resource();
-            resource.setCourse(course);
-            resource.setFileName(fileName);
-            resource.setFileUrl(fileUrl);
-            resource.setFileType(fileType != null ? fileType : "unknown");
-            resource.setFileSize(0L); // Default file size
-            
-            Resource savedResource = resourceRepository.save(resource);
+            Resource savedResource = courseService.saveCourseResource(course, fileName, fileUrl, fileType != null ? fileType : "unknown");
             return ResponseEntity.ok(savedResource);
             
         } catch (Exception e) {
@@ -127,7 +161,7 @@ public class ResourceController {
     public ResponseEntity<?> updateResource(
             @PathVariable Long resourceId,
             @RequestBody Map<String, Object> resourceData,
-            @AuthenticationPrincipal org.springframework.security.core.userdetails.User principal) {
+            CurrentUser currentUser) {
         
         try {
             Optional<Resource> resourceOpt = resourceRepository.findById(resourceId);
@@ -136,10 +170,9 @@ public class ResourceController {
             }
             
             Resource resource = resourceOpt.get();
-            User authenticatedUser = userRepository.findByEmail(principal.getUsername()).orElse(null);
             
             // Check if the authenticated user is the instructor of this course
-            if (authenticatedUser == null || !resource.getCourse().getInstructor().getId().equals(authenticatedUser.getId())) {
+            if (!resource.getCourse().getInstructor().getId().equals(currentUser.getId())) {
                 return ResponseEntity.status(403).body(Map.of("error", "Access denied: You can only update resources from your own courses"));
             }
             
@@ -149,6 +182,7 @@ public class ResourceController {
             }
             if (resourceData.containsKey("fileUrl")) {
                 resource.setFileUrl((String) resourceData.get("fileUrl"));
+                courseService.describeStoredFile(resource);
             }
             if (resourceData.containsKey("fileType")) {
                 resource.setFileType((String) resourceData.get("fileType"));
@@ -167,7 +201,7 @@ public class ResourceController {
     @DeleteMapping("/{resourceId}")
     public ResponseEntity<?> deleteResource(
             @PathVariable Long resourceId,
-            @AuthenticationPrincipal org.springframework.security.core.userdetails.User principal) {
+            CurrentUser currentUser) {
         
         try {
             Optional<Resource> resourceOpt = resourceRepository.findById(resourceId);
@@ -176,10 +210,9 @@ public class ResourceController {
             }
             
             Resource resource = resourceOpt.get();
-            User authenticatedUser = userRepository.findByEmail(principal.getUsername()).orElse(null);
             
             // Check if the authenticated user is the instructor of this course
-            if (authenticatedUser == null || !resource.getCourse().getInstructor().getId().equals(authenticatedUser.getId())) {
+            if (!resource.getCourse().getInstructor().getId().equals(currentUser.getId())) {
                 return ResponseEntity.status(403).body(Map.of("error", "Access denied: You can only delete resources from your own courses"));
             }
             
@@ -191,23 +224,26 @@ public class ResourceController {
         }
     }
 
-    // Get all resources by instructor (for teacher dashboard)
+    // Resources across the instructor's courses, newest first, one page at a time (for teacher dashboard).
+    // Optional filters: courseId, type (file type), from/to (upload dates, inclusive)
     @PreAuthorize("hasRole('TEACHER')")
     @GetMapping("/instructor/my-resources")
-    public ResponseEntity<?> getMyResources(@AuthenticationPrincipal org.springframework.security.core.userdetails.User principal) {
+    public ResponseEntity<?> getMyResources(@RequestParam(required = false) Long courseId,
+                                            @RequestParam(required = false) String type,
+                                            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+                                            @RequestParam(defaultValue = "0") int page,
+                                            @RequestParam(defaultValue = "20") int size,
+                                            CurrentUser currentUser) {
         try {
-            User authenticatedUser = userRepository.findByEmail(principal.getUsername()).orElse(null);
-            if (authenticatedUser == null) {
-                return ResponseEntity.status(403).body(Map.of("error", "User not found"));
-            }
-            
-            List<Course> myCourses = courseRepository.findByInstructor(authenticatedUser);
-            List<Resource> allMyResources = myCourses.stream()
-                    .flatMap(course -> resourceRepository.findByCourse(course).stream())
-                    .toList();
-            
-            return ResponseEntity.ok(allMyResources);
-            
+            PageResponse<ResourceSummary> resources = new PageResponse<>(resourceRepository.findSummariesByInstructorId(
+                    currentUser.getId(),
+                    courseId,
+                    type != null && !type.isBlank() ? type : null,
+                    from != null ? from.atStartOfDay() : null,
+                    to != null ? to.plusDays(1).atStartOfDay() : null,
+                    PageRequest.of(Math.max(0, page), Math.max(1, Math.min(size, 100)))));
+            return ResponseEntity.ok(resources);
         } catch (Exception e) {
             return ResponseEntity.status(500).body(Map.of("error", "Failed to fetch resources: " + e.getMessage()));
         }
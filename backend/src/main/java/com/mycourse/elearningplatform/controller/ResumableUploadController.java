@@ -0,0 +1,142 @@
+package com.mycourse.elearningplatform.controller;
+
+import com.mycourse.elearningplatform.security.CurrentUser;
+import com.mycourse.elearningplatform.service.ResumableUploadService;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.util.StringUtils;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Resumable uploads for large files (tus 1.0 style). Create with POST and an Upload-Length header,
+ * send bytes with PATCH and an Upload-Offset header (chunks may go out of order and in parallel),
+ * and ask HEAD for the contiguous offset to resume from. GET returns every received range and, once
+ * stored, the file id and URL, the same as POST /api/upload.
+ */
+@RestController
+@RequestMapping("/api/upload/resumable")
+@PreAuthorize("hasRole('TEACHER')")
+public class ResumableUploadController {
+    private static final String TUS_RESUMABLE = "Tus-Resumable";
+    private static final String TUS_VERSION = "1.0.0";
+    private static final String UPLOAD_LENGTH = "Upload-Length";
+    private static final String UPLOAD_OFFSET = "Upload-Offset";
+
+    @Autowired
+    private ResumableUploadService resumableUploadService;
+
+    // Upload-Metadata is "key base64value" pairs separated by commas (filename, filetype)
+    @PostMapping
+    public ResponseEntity<?> create(@RequestHeader(UPLOAD_LENGTH) long length,
+                                    @RequestHeader(value = "Upload-Metadata", required = false) String metadata,
+                                    CurrentUser currentUser) {
+        Map<String, String> meta = parseMetadata(metadata);
+        String fileName = StringUtils.cleanPath(meta.getOrDefault("filename", "upload"));
+        try {
+            ResumableUploadService.UploadView upload = resumableUploadService.create(
+                    currentUser.getId(), length, fileName, meta.get("filetype"));
+            return ResponseEntity.created(URI.create("/api/upload/resumable/" + upload.id()))
+                    .header(TUS_RESUMABLE, TUS_VERSION)
+                    .header("Tus-Max-Size", String.valueOf(resumableUploadService.getMaxBytes()))
+                    .header(UPLOAD_OFFSET, "0")
+                    .body(resumableUploadService.describe(upload));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).header(TUS_RESUMABLE, TUS_VERSION)
+                    .body(Map.of("error", e.getMessage()));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.INSUFFICIENT_STORAGE).header(TUS_RESUMABLE, TUS_VERSION)
+                    .body(Map.of("error", e.getMessage()));
+        } catch (IOException e) {
+            System.err.println("[ERROR] Creating resumable upload failed: " + e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(Map.of("error", "Could not create upload"));
+        }
+    }
+
+    // Resume point: bytes received without a gap from the start
+    @RequestMapping(value = "/{id}", method = RequestMethod.HEAD)
+    public ResponseEntity<Void> head(@PathVariable String id, CurrentUser currentUser) {
+        Optional<ResumableUploadService.UploadView> upload = owned(id, currentUser);
+        if (upload.isEmpty()) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).header(TUS_RESUMABLE, TUS_VERSION).build();
+        }
+        return ResponseEntity.ok()
+                .header(TUS_RESUMABLE, TUS_VERSION)
+                .header(UPLOAD_OFFSET, String.valueOf(upload.get().offset()))
+                .header(UPLOAD_LENGTH, String.valueOf(upload.get().length()))
+                .header(HttpHeaders.CACHE_CONTROL, "no-store")
+                .build();
+    }
+
+    @GetMapping("/{id}")
+    public ResponseEntity<?> status(@PathVariable String id, CurrentUser currentUser) {
+        Optional<ResumableUploadService.UploadView> upload = owned(id, currentUser);
+        if (upload.isEmpty()) {
+            return ResponseEntity.status(404).body(Map.of("error", "Upload not found"));
+        }
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CACHE_CONTROL, "no-store")
+                .body(resumableUploadService.describe(upload.get()));
+    }
+
+    // Body: raw bytes (application/offset+octet-stream) to write at Upload-Offset
+    @PatchMapping("/{id}")
+    public ResponseEntity<?> patch(@PathVariable String id, @RequestHeader(UPLOAD_OFFSET) long offset,
+                                   HttpServletRequest request, CurrentUser currentUser) throws IOException {
+        if (owned(id, currentUser).isEmpty()) {
+            return ResponseEntity.status(404).header(TUS_RESUMABLE, TUS_VERSION).body(Map.of("error", "Upload not found"));
+        }
+        ResumableUploadService.ChunkResult result = resumableUploadService.writeChunk(id, offset, request.getInputStream());
+        Optional<ResumableUploadService.UploadView> upload = resumableUploadService.find(id);
+        String newOffset = String.valueOf(upload.map(ResumableUploadService.UploadView::offset).orElse(0L));
+        return switch (result) {
+            case ACCEPTED -> ResponseEntity.noContent().header(TUS_RESUMABLE, TUS_VERSION).header(UPLOAD_OFFSET, newOffset).build();
+            case NOT_FOUND -> ResponseEntity.status(404).header(TUS_RESUMABLE, TUS_VERSION).body(Map.of("error", "Upload not found"));
+            case NOT_RECEIVING -> ResponseEntity.status(409).header(TUS_RESUMABLE, TUS_VERSION).body(Map.of("error", "Upload is already complete"));
+            case OUT_OF_RANGE -> ResponseEntity.status(409).header(TUS_RESUMABLE, TUS_VERSION).body(Map.of("error", "Upload-Offset is outside the upload"));
+            case TOO_LONG -> ResponseEntity.badRequest().header(TUS_RESUMABLE, TUS_VERSION).header(UPLOAD_OFFSET, newOffset)
+                    .body(Map.of("error", "Chunk runs past Upload-Length"));
+        };
+    }
+
+    @DeleteMapping("/{id}")
+    public ResponseEntity<?> cancel(@PathVariable String id, CurrentUser currentUser) {
+        if (owned(id, currentUser).isEmpty()) {
+            return ResponseEntity.status(404).body(Map.of("error", "Upload not found"));
+        }
+        if (!resumableUploadService.cancel(id)) {
+            return ResponseEntity.status(409).body(Map.of("error", "Upload is being stored"));
+        }
+        return ResponseEntity.noContent().header(TUS_RESUMABLE, TUS_VERSION).build();
+    }
+
+    private Optional<ResumableUploadService.UploadView> owned(String id, CurrentUser currentUser) {
+        return resumableUploadService.find(id).filter(upload -> upload.ownerId() == currentUser.getId());
+    }
+
+    private Map<String, String> parseMetadata(String metadata) {
+        Map<String, String> values = new HashMap<>();
+        if (metadata == null || metadata.isBlank()) return values;
+        for (String pair : metadata.split(",")) {
+            String[] parts = pair.trim().split(" ", 2);
+            if (parts[0].isEmpty()) continue;
+            try {
+                values.put(parts[0], parts.length > 1 ? new String(Base64.getDecoder().decode(parts[1].trim()), StandardCharsets.UTF_8) : "");
+            } catch (IllegalArgumentException e) {
+                // Not base64; ignore the pair
+            }
+        }
+        return values;
+    }
+}
@@ -1,6 +1,7 @@
 package com.mycourse.elearningplatform.controller;
 
 import com.mycourse.elearningplatform.service.NhostStorageService;
+import com.mycourse.elearningplatform.service.StoredFileService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -20,6 +21,10 @@ public class UploadController {
     @Autowired
     private NhostStorageService nhostStorageService;
 
+    // Hashes uploads and reuses stored files with the same content
+    @Autowired
+    private StoredFileService storedFileService;
+
     // Upload endpoint - Only accessible by users with 'TEACHER' role
     @PreAuthorize("hasRole('TEACHER')")
     @PostMapping
@@ -48,32 +53,28 @@ public class UploadController {
             // Generate a new unique filename
             String filename = UUID.randomUUID().toString() + fileExtension;
 
-            // Upload to Nhost (default bucket). Pass existingFileId for replacement.
-            Map<String, Object> uploadResult = nhostStorageService.uploadFile(file, "default", filename, existingFileId);
-
-            System.out.println("Upload result: " + uploadResult);
-
-            // Check if upload was successful and ID is returned
-            if (uploadResult != null && uploadResult.containsKey("id")) {
-                String fileId = (String) uploadResult.get("id");
-                String fileUrl = (String) uploadResult.get("url");
-                if (fileUrl == null) {
-                    fileUrl = nhostStorageService.getFileUrl(fileId);
-                }
-
-                System.out.println("File uploaded successfully - ID: " + fileId + ", URL: " + fileUrl);
-
-                return ResponseEntity.ok(Map.of(
-                        "url", fileUrl,
-                        "fileId", fileId,
-                        "filename", filename,
-                        "storage", uploadResult.containsKey("storage") ? uploadResult.get("storage") : "nhost"
-                ));
-            } else {
-                System.err.println("Upload failed - response: " + uploadResult);
-                throw new RuntimeException("Upload failed - no file ID returned");
+            // Upload to Nhost (default bucket), or reuse the stored file with the same content
+            StoredFileService.StoredFile stored = storedFileService.store(file, filename);
+            String fileId = stored.fileId();
+            String fileUrl = nhostStorageService.getFileUrl(fileId);
+
+            // The replaced file is released, not deleted: it may be shared with other courses
+            if (existingFileId != null && !existingFileId.isEmpty() && !existingFileId.equals(fileId)) {
+                storedFileService.release(existingFileId);
             }
 
+            System.out.println("File " + (stored.deduplicated() ? "deduplicated" : "uploaded") + " - ID: " + fileId + ", URL: " + fileUrl);
+
+            return ResponseEntity.ok(Map.of(
+                    "url", fileUrl,
+                    "fileId", fileId,
+                    "filename", filename,
+                    "size", stored.fileSize(),
+                    "contentHash", stored.contentHash(),
+                    "deduplicated", stored.deduplicated(),
+                    "storage", "nhost"
+            ));
+
         } catch (Exception e) {
             // Catch any upload error
             e.printStackTrace();
@@ -88,14 +89,9 @@ public class UploadController {
     @DeleteMapping("/{fileId}")
     public ResponseEntity<?> deleteFile(@PathVariable String fileId) {
         try {
-            // Call service to delete file
-            boolean deleted = nhostStorageService.deleteFile(fileId);
-            if (deleted) {
-                return ResponseEntity.ok(Map.of("message", "File deleted successfully"));
-            } else {
-                return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                        .body(Map.of("error", "Failed to delete file"));
-            }
+            // Stored files can be shared; the storage GC deletes it once nothing references it
+            storedFileService.release(fileId);
+            return ResponseEntity.ok(Map.of("message", "File deleted successfully"));
 
         } catch (Exception e) {
             // Handle any deletion error
@@ -5,10 +5,12 @@ import com.mycourse.elearningplatform.repository.CourseRepository;
 import com.mycourse.elearningplatform.repository.LessonRepository;
 import com.mycourse.elearningplatform.repository.RoleRepository;
 import com.mycourse.elearningplatform.repository.UserRepository;
+import com.mycourse.elearningplatform.security.CurrentUser;
+import com.mycourse.elearningplatform.security.CurrentUserArgumentResolver;
+import com.mycourse.elearningplatform.service.ProgressWriteBuffer;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
-import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.HashMap;
@@ -32,27 +34,29 @@ public class UserController {
     @Autowired private EnrollmentRepository enrollmentRepository;
     @Autowired private ResourceRepository resourceRepository;
     @Autowired private QuizRepository quizRepository;
+    @Autowired private CurrentUserArgumentResolver currentUserArgumentResolver;
+    @Autowired private ProgressWriteBuffer progressWriteBuffer;
 
     // ✅ Get current authenticated user's profile
     @GetMapping("/me")
-    public ResponseEntity<User> getProfile(@AuthenticationPrincipal com.mycourse.elearningplatform.security.UserDetailsImpl principal) {
-        return userRepository.findByEmail(principal.getUsername())
+    public ResponseEntity<User> getProfile(CurrentUser currentUser) {
+        return currentUser.findUser()
                 .map(ResponseEntity::ok)
                 .orElse(ResponseEntity.notFound().build());
     }
 
     // ✅ Enhanced profile fetch (includes more details)
     @GetMapping("/profile")
-    public ResponseEntity<User> getDetailedProfile(@AuthenticationPrincipal com.mycourse.elearningplatform.security.UserDetailsImpl principal) {
-        return userRepository.findByEmail(principal.getUsername())
+    public ResponseEntity<User> getDetailedProfile(CurrentUser currentUser) {
+        return currentUser.findUser()
                 .map(ResponseEntity::ok)
                 .orElse(ResponseEntity.notFound().build());
     }
 
     // ✅ Basic profile update (name only)
     @PutMapping("/me")
-    public ResponseEntity<User> updateProfile(@AuthenticationPrincipal com.mycourse.elearningplatform.security.UserDetailsImpl principal, @RequestBody User updated) {
-        return userRepository.findByEmail(principal.getUsername()).map(user -> {
+    public ResponseEntity<User> updateProfile(CurrentUser currentUser, @RequestBody User updated) {
+        return currentUser.findUser().map(user -> {
             user.setFirstName(updated.getFirstName());
             user.setLastName(updated.getLastName());
             userRepository.save(user);
@@ -62,8 +66,8 @@ public class UserController {
 
     // ✅ Full profile update with more fields
     @PutMapping("/profile")
-    public ResponseEntity<User> updateDetailedProfile(@AuthenticationPrincipal com.mycourse.elearningplatform.security.UserDetailsImpl principal, @RequestBody User updated) {
-        return userRepository.findByEmail(principal.getUsername()).map(user -> {
+    public ResponseEntity<User> updateDetailedProfile(CurrentUser currentUser, @RequestBody User updated) {
+        return currentUser.findUser().map(user -> {
             user.setFirstName(updated.getFirstName());
             user.setLastName(updated.getLastName());
             user.setPhone(updated.getPhone());
@@ -78,66 +82,62 @@ public class UserController {
 
     // 🎯 Get user achievements based on progress
     @GetMapping("/achievements")
-    public ResponseEntity<List<Map<String, Object>>> getAchievements(@AuthenticationPrincipal com.mycourse.elearningplatform.security.UserDetailsImpl principal) {
-        return userRepository.findByEmail(principal.getUsername()).map(user -> {
-            List<Map<String, Object>> achievements = new ArrayList<>();
-            List<com.mycourse.elearningplatform.model.Enrollment> enrollments = enrollmentRepository.findByUser(user);
-
-            // Count completed courses
-            long completedCourses = enrollments.stream()
-                    .filter(e -> e.getProgress() != null && e.getProgress() == 100)
-                    .count();
-
-            if (completedCourses >= 1) {
-                achievements.add(Map.of("id", "first-course", "title", "First Course Completed", "description", "Completed your first course", "icon", "🎓"));
-            }
-            if (completedCourses >= 5) {
-                achievements.add(Map.of("id", "five-courses", "title", "Course Master", "description", "Completed 5 courses", "icon", "🏆"));
-            }
-
-            // Total hours of learning from course durations
-            long totalHours = enrollments.stream()
-                    .mapToLong(e -> Optional.ofNullable(e.getCourse()).map(c -> Optional.ofNullable(c.getDuration()).orElse(0)).orElse(0))
-                    .sum();
-
-            if (totalHours >= 10) {
-                achievements.add(Map.of("id", "ten-hours", "title", "Dedicated Learner", "description", "Spent 10+ hours learning", "icon", "⏰"));
-            }
-
-            // High quiz performance
-            long highScores = enrollments.stream()
-                    .filter(e -> e.getAverageQuizScore() != null && e.getAverageQuizScore() >= 90)
-                    .count();
-
-            if (highScores >= 1) {
-                achievements.add(Map.of("id", "quiz-master", "title", "Quiz Master", "description", "Achieved 90%+ on a quiz", "icon", "🧠"));
-            }
-
-            return ResponseEntity.ok(achievements);
-        }).orElse(ResponseEntity.notFound().build());
+    public ResponseEntity<List<Map<String, Object>>> getAchievements(CurrentUser currentUser) {
+        List<Map<String, Object>> achievements = new ArrayList<>();
+        List<com.mycourse.elearningplatform.model.Enrollment> enrollments = enrollmentRepository.findByUserId(currentUser.getId());
+
+        // Count completed courses
+        long completedCourses = enrollments.stream()
+                .filter(e -> progressWriteBuffer.progressOf(e) == 100)
+                .count();
+
+        if (completedCourses >= 1) {
+            achievements.add(Map.of("id", "first-course", "title", "First Course Completed", "description", "Completed your first course", "icon", "🎓"));
+        }
+        if (completedCourses >= 5) {
+            achievements.add(Map.of("id", "five-courses", "title", "Course Master", "description", "Completed 5 courses", "icon", "🏆"));
+        }
+
+        // Total hours of learning from course durations
+        long totalHours = enrollments.stream()
+                .mapToLong(e -> Optional.ofNullable(e.getCourse()).map(c -> Optional.ofNullable(c.getDuration()).orElse(0)).orElse(0))
+                .sum();
+
+        if (totalHours >= 10) {
+            achievements.add(Map.of("id", "ten-hours", "title", "Dedicated Learner", "description", "Spent 10+ hours learning", "icon", "⏰"));
+        }
+
+        // High quiz performance
+        long highScores = enrollments.stream()
+                .filter(e -> e.getAverageQuizScore() != null && e.getAverageQuizScore() >= 90)
+                .count();
+
+        if (highScores >= 1) {
+            achievements.add(Map.of("id", "quiz-master", "title", "Quiz Master", "description", "Achieved 90%+ on a quiz", "icon", "🧠"));
+        }
+
+        return ResponseEntity.ok(achievements);
     }
 
     // 🎓 Return certificates for completed courses
     @GetMapping("/certificates")
-    public ResponseEntity<List<Map<String, Object>>> getCertificates(@AuthenticationPrincipal com.mycourse.elearningplatform.security.UserDetailsImpl principal) {
-        return userRepository.findByEmail(principal.getUsername()).map(user -> {
-            List<Map<String, Object>> certificates = new ArrayList<>();
-            List<com.mycourse.elearningplatform.model.Enrollment> enrollments = enrollmentRepository.findByUser(user);
-
-            enrollments.stream()
-                    .filter(e -> e.getProgress() != null && e.getProgress() == 100)
-                    .forEach(enrollment -> {
-                        Map<String, Object> cert = new HashMap<>();
-                        cert.put("id", "cert-" + enrollment.getCourse().getId());
-                        cert.put("title", enrollment.getCourse().getTitle() + " Certificate");
-                        cert.put("courseId", enrollment.getCourse().getId());
-                        cert.put("issueDate", enrollment.getEnrolledAt());
-                        cert.put("url", "/certificates/" + enrollment.getCourse().getId());
-                        certificates.add(cert);
-                    });
-
-            return ResponseEntity.ok(certificates);
-        }).orElse(ResponseEntity.notFound().build());
+    public ResponseEntity<List<Map<String, Object>>> getCertificates(CurrentUser currentUser) {
+        List<Map<String, Object>> certificates = new ArrayList<>();
+        List<com.mycourse.elearningplatform.model.Enrollment> enrollments = enrollmentRepository.findByUserId(currentUser.getId());
+
+        enrollments.stream()
+                .filter(e -> progressWriteBuffer.progressOf(e) == 100)
+                .forEach(enrollment -> {
+                    Map<String, Object> cert = new HashMap<>();
+                    cert.put("id", "cert-" + enrollment.getCourse().getId());
+                    cert.put("title", enrollment.getCourse().getTitle() + " Certificate");
+                    cert.put("courseId", enrollment.getCourse().getId());
+                    cert.put("issueDate", enrollment.getEnrolledAt());
+                    cert.put("url", "/certificates/" + enrollment.getCourse().getId());
+                    certificates.add(cert);
+                });
+
+        return ResponseEntity.ok(certificates);
     }
 
     // 📊 Public statistics for all users
@@ -154,15 +154,12 @@ public class UserController {
     // 📈 Teacher dashboard: requires TEACHER role and correct ID
     @PreAuthorize("hasRole('TEACHER')")
     @GetMapping("/teacher-dashboard/{id}")
-    public ResponseEntity<Map<String, Object>> getTeacherDashboard(@PathVariable Long id, @AuthenticationPrincipal com.mycourse.elearningplatform.security.UserDetailsImpl principal) {
-        if (principal == null || !principal.getId().equals(id)) {
+    public ResponseEntity<Map<String, Object>> getTeacherDashboard(@PathVariable Long id, CurrentUser currentUser) {
+        if (!currentUser.getId().equals(id)) {
             return ResponseEntity.status(403).body(Map.of("error", "Access denied: You can only view your own dashboard"));
         }
 
-        User teacher = userRepository.findById(principal.getId()).orElse(null);
-        if (teacher == null) return ResponseEntity.notFound().build();
-
-        List<com.mycourse.elearningplatform.model.Course> courses = courseRepository.findByInstructor(teacher);
+        List<com.mycourse.elearningplatform.model.Course> courses = courseRepository.findByInstructorId(id);
         Set<Long> studentIds = new HashSet<>();
         int numLessons = 0, numResources = 0;
 
@@ -182,14 +179,12 @@ public class UserController {
 
     // 🧪 Simple endpoint to debug current user's roles
     @GetMapping("/debug/roles")
-    public ResponseEntity<Map<String, Object>> debugUserRoles(@AuthenticationPrincipal com.mycourse.elearningplatform.security.UserDetailsImpl principal) {
-        if (principal == null) return ResponseEntity.status(401).body(Map.of("error", "Authentication required"));
-
-        User user = userRepository.findByEmail(principal.getUsername()).orElse(null);
+    public ResponseEntity<Map<String, Object>> debugUserRoles(CurrentUser currentUser) {
+        User user = currentUser.findUser().orElse(null);
         if (user == null) return ResponseEntity.status(404).body(Map.of("error", "User not found"));
 
         List<String> dbRoles = user.getRoles().stream().map(r -> r.getName()).toList();
-        List<String> jwtRoles = principal.getAuthorities().stream().map(a -> a.getAuthority()).toList();
+        List<String> jwtRoles = currentUser.getRoles().stream().map(role -> "ROLE_" + role).toList();
 
         return ResponseEntity.ok(Map.of(
                 "userId", user.getId(),
@@ -201,4 +196,11 @@ public class UserController {
                 "hasTeacherRole", dbRoles.contains("TEACHER")
         ));
     }
-}
+
+    // 🧪 How many authenticated requests were served without loading the User entity
+    @PreAuthorize("hasRole('TEACHER')")
+    @GetMapping("/debug/principal-lookups")
+    public ResponseEntity<Map<String, Long>> debugPrincipalLookups() {
+        return ResponseEntity.ok(currentUserArgumentResolver.getStats());
+    }
+}
\ No newline at end of file
@@ -7,16 +7,18 @@ public class LessonDto {
     private String contentUrl;
     private String createdAt;
     private String fileId;
+    private Integer position;
 
     public LessonDto() {}
 
-    public LessonDto(Long id, String title, String description, String contentUrl, String createdAt, String fileId) {
+    public LessonDto(Long id, String title, String description, String contentUrl, String createdAt, String fileId, Integer position) {
         this.id = id;
         this.title = title;
         this.description = description;
         this.contentUrl = contentUrl;
         this.createdAt = createdAt;
         this.fileId = fileId;
+        this.position = position;
     }
 
     // Getters and setters
@@ -32,4 +34,6 @@ public class LessonDto {
     public void setCreatedAt(String createdAt) { this.createdAt = createdAt; }
     public String getFileId() { return fileId; }
     public void setFileId(String fileId) { this.fileId = fileId; }
+    public Integer getPosition() { return position; }
+    public void setPosition(Integer position) { this.position = position; }
 } 
\ No newline at end of file
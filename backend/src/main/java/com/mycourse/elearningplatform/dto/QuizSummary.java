@@ -0,0 +1,29 @@
+package com.mycourse.elearningplatform.dto;
+
+/**
+ * List view of a quiz: scalar columns only, so listings never load the course/instructor graph.
+ */
+public class QuizSummary {
+    private final Long id;
+    private final String title;
+    private final String description;
+    private final Integer totalPoints;
+    private final Long courseId;
+    private final Long questionCount;
+
+    public QuizSummary(Long id, String title, String description, Integer totalPoints, Long courseId, Long questionCount) {
+        this.id = id;
+        this.title = title;
+        this.description = description;
+        this.totalPoints = totalPoints;
+        this.courseId = courseId;
+        this.questionCount = questionCount;
+    }
+
+    public Long getId() { return id; }
+    public String getTitle() { return title; }
+    public String getDescription() { return description; }
+    public Integer getTotalPoints() { return totalPoints; }
+    public Long getCourseId() { return courseId; }
+    public Long getQuestionCount() { return questionCount; }
+}
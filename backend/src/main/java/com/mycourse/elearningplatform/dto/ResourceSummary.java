@@ -0,0 +1,52 @@
+package com.mycourse.elearningplatform.dto;
+
+import java.time.LocalDateTime;
+
+/**
+ * List view of a resource with its course id and title, read in the listing query itself so rows
+ * never lazy-load the course during serialization.
+ */
+public class ResourceSummary {
+    private final Long id;
+    private final String fileName;
+    private final String fileId;
+    private final String fileType;
+    private final Long fileSize;
+    private final String contentHash;
+    private final LocalDateTime createdAt;
+    private final LocalDateTime updatedAt;
+    private final Long courseId;
+    private final String courseTitle;
+
+    public ResourceSummary(Long id, String fileName, String fileUrl, String fileType, Long fileSize, String contentHash,
+                           LocalDateTime createdAt, LocalDateTime updatedAt, Long courseId, String courseTitle) {
+        this.id = id;
+        this.fileName = fileName;
+        this.fileId = fileIdOf(fileUrl);
+        this.fileType = fileType;
+        this.fileSize = fileSize;
+        this.contentHash = contentHash;
+        this.createdAt = createdAt;
+        this.updatedAt = updatedAt;
+        this.courseId = courseId;
+        this.courseTitle = courseTitle;
+    }
+
+    public Long getId() { return id; }
+    public String getFileName() { return fileName; }
+    public String getFileId() { return fileId; }
+    public String getFileType() { return fileType; }
+    public Long getFileSize() { return fileSize; }
+    public String getContentHash() { return contentHash; }
+    public LocalDateTime getCreatedAt() { return createdAt; }
+    public LocalDateTime getUpdatedAt() { return updatedAt; }
+    public Long getCourseId() { return courseId; }
+    public String getCourseTitle() { return courseTitle; }
+
+    private static String fileIdOf(String url) {
+        if (url == null || url.isEmpty()) return null;
+        int idx = url.indexOf("/v1/files/");
+        if (idx == -1) return null;
+        return url.substring(idx + 10).split("[/?]")[0];
+    }
+}
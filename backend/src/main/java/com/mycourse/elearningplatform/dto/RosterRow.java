@@ -0,0 +1,46 @@
+package com.mycourse.elearningplatform.dto;
+
+import java.time.LocalDateTime;
+
+/**
+ * Flat, read-only projection of one enrollment for the roster export.
+ * Columns follow the field names of {@link EnrollmentDTO} so the CSV matches the JSON API.
+ */
+public class RosterRow {
+    private final Long enrollmentId;
+    private final Long userId;
+    private final String firstName;
+    private final String lastName;
+    private final String email;
+    private final LocalDateTime enrolledAt;
+    private final Integer progress;
+    private final LocalDateTime lastActivityDate;
+    private final Integer averageQuizScore;
+    private final boolean paid;
+
+    public RosterRow(Long enrollmentId, Long userId, String firstName, String lastName, String email,
+                     LocalDateTime enrolledAt, Integer progress, LocalDateTime lastActivityDate,
+                     Integer averageQuizScore, boolean paid) {
+        this.enrollmentId = enrollmentId;
+        this.userId = userId;
+        this.firstName = firstName;
+        this.lastName = lastName;
+        this.email = email;
+        this.enrolledAt = enrolledAt;
+        this.progress = progress;
+        this.lastActivityDate = lastActivityDate;
+        this.averageQuizScore = averageQuizScore;
+        this.paid = paid;
+    }
+
+    public Long getEnrollmentId() { return enrollmentId; }
+    public Long getUserId() { return userId; }
+    public String getFirstName() { return firstName; }
+    public String getLastName() { return lastName; }
+    public String getEmail() { return email; }
+    public LocalDateTime getEnrolledAt() { return enrolledAt; }
+    public Integer getProgress() { return progress; }
+    public LocalDateTime getLastActivityDate() { return lastActivityDate; }
+    public Integer getAverageQuizScore() { return averageQuizScore; }
+    public boolean isPaid() { return paid; }
+}
@@ -1,5 +1,6 @@
 package com.mycourse.elearningplatform.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import jakarta.persistence.*;
 import lombok.Getter;
@@ -11,7 +12,7 @@ import jakarta.persistence.OneToMany;
 import jakarta.persistence.CascadeType;
 
 @Entity
-@Table(name = "courses")
+@Table(name = "courses", indexes = @Index(name = "idx_courses_instructor_id", columnList = "instructor_id"))
 @Getter @Setter
 public class Course {
     @Id
@@ -38,6 +39,11 @@ public class Course {
     @Column(columnDefinition = "TEXT")
     private String targetAudience;
 
+    // Next free Lesson.ordinal; only ever raised by LessonService, never written through the entity
+    @JsonIgnore
+    @Column(name = "next_lesson_ordinal", insertable = false, updatable = false)
+    private Integer nextLessonOrdinal;
+
     @ManyToOne
     @JoinColumn(name = "instructor_id")
     @JsonIgnoreProperties({"courses", "enrollments", "password", "email", "enabled", "accountNonExpired", "accountNonLocked", "credentialsNonExpired"})
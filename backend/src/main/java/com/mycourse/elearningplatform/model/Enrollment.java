@@ -1,15 +1,19 @@
 package com.mycourse.elearningplatform.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import jakarta.persistence.*;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
+import org.hibernate.annotations.DynamicUpdate;
 
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "enrollments")
+// Only write changed columns: progress and completed_lessons are updated with SQL elsewhere and must not be overwritten
+@DynamicUpdate
+@Table(name = "enrollments", indexes = @Index(name = "idx_enrollments_course_id", columnList = "course_id"))
 @Getter
 @Setter
 @NoArgsConstructor
@@ -35,12 +39,27 @@ public class Enrollment {
     
     private LocalDateTime lastActivityDate = LocalDateTime.now();
     
-    // Average quiz score for this enrollment
+    // Average quiz score for this enrollment, kept as a running sum/count of attempt percentages
     private Integer averageQuizScore;
 
+    @JsonIgnore
+    private Long quizScoreSum;
+
+    @JsonIgnore
+    private Integer quizAttemptCount;
+
+    // Bumped on every change to the quiz aggregates, so leaderboard updates can be ordered
+    @JsonIgnore
+    private Long quizScoreVersion;
+
     // Payment status
     private boolean paid = false;
 
+    // One bit per Lesson.ordinal, set when the lesson is completed (see LessonCompletionService)
+    @JsonIgnore
+    @Column(name = "completed_lessons")
+    private byte[] completedLessons;
+
     public Enrollment(User user, Course course) {
         this.user = user;
         this.course = course;
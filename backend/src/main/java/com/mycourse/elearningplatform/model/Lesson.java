@@ -4,6 +4,7 @@ import jakarta.persistence.*;
 import java.time.LocalDateTime;
 
 @Entity
+@Table(uniqueConstraints = @UniqueConstraint(name = "uk_lesson_course_ordinal", columnNames = {"course_id", "ordinal"}))
 public class Lesson {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -14,6 +15,12 @@ public class Lesson {
     private String contentUrl;
     private LocalDateTime createdAt;
 
+    // Stable per-course index assigned at creation; bit position in Enrollment.completedLessons
+    private Integer ordinal;
+
+    // Display order within the course, changed by reordering; null for lessons created before ordering existed
+    private Integer position;
+
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "course_id")
     private Course course;
@@ -33,6 +40,10 @@ public class Lesson {
     public void setContentUrl(String contentUrl) { this.contentUrl = contentUrl; }
     public LocalDateTime getCreatedAt() { return createdAt; }
     public void setCreatedAt(LocalDateTime createdAt) { this.createdAt = createdAt; }
+    public Integer getOrdinal() { return ordinal; }
+    public void setOrdinal(Integer ordinal) { this.ordinal = ordinal; }
+    public Integer getPosition() { return position; }
+    public void setPosition(Integer position) { this.position = position; }
     public Course getCourse() { return course; }
     public void setCourse(Course course) { this.course = course; }
 } 
\ No newline at end of file
@@ -0,0 +1,43 @@
+package com.mycourse.elearningplatform.model;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+/**
+ * Last known video position of a user in a lesson. Written in batches by PlaybackCheckpointService;
+ * lessonId 0 stands for the course's own intro video (Course.videoUrl).
+ */
+@Entity
+@Table(name = "playback_positions", uniqueConstraints =
+        @UniqueConstraint(name = "uk_playback_user_course_lesson", columnNames = {"user_id", "course_id", "lesson_id"}))
+@Getter
+@Setter
+@NoArgsConstructor
+public class PlaybackPosition {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Column(name = "course_id", nullable = false)
+    private Long courseId;
+
+    @Column(name = "lesson_id", nullable = false)
+    private Long lessonId;
+
+    @Column(name = "position_seconds", nullable = false)
+    private double positionSeconds;
+
+    @Column(name = "duration_seconds")
+    private Double durationSeconds;
+
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+}
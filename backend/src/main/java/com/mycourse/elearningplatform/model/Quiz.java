@@ -1,12 +1,16 @@
 package com.mycourse.elearningplatform.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
 
+import java.util.ArrayList;
+import java.util.List;
+
 @Entity
-@Table(name = "quizzes")
+@Table(name = "quizzes", indexes = @Index(name = "idx_quizzes_course_id", columnList = "course_id"))
 @Getter
 @Setter
 @NoArgsConstructor
@@ -27,6 +31,23 @@ public class Quiz {
 
     private Integer totalPoints;
 
+    // Bumped whenever the quiz or its questions change; part of the per-student variant seed
+    private Integer version = 0;
+
+    private Boolean shuffleQuestions;
+    private Boolean shuffleOptions;
+
+    // Questions drawn per student from the question set; null means all of them
+    private Integer drawCount;
+
+    // Time allowed per attempt; null means untimed. Timed quizzes are started first and closed by the server
+    private Integer timeLimitSeconds;
+
+    @JsonIgnore
+    @OneToMany(mappedBy = "quiz", cascade = CascadeType.ALL, orphanRemoval = true)
+    @OrderBy("position ASC, id ASC")
+    private List<QuizQuestion> questions = new ArrayList<>();
+
     public Quiz(String title, String description, Course course, Integer totalPoints) {
         this.title = title;
         this.description = description;
@@ -0,0 +1,84 @@
+package com.mycourse.elearningplatform.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonRawValue;
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "quiz_attempts", indexes = {
+        @Index(name = "idx_quiz_attempts_quiz_user", columnList = "quiz_id, user_id"),
+        @Index(name = "idx_quiz_attempts_status", columnList = "status, id")
+})
+@Getter
+@Setter
+@NoArgsConstructor
+public class QuizAttempt {
+    // Timed attempt that has been started and not yet submitted
+    public static final String IN_PROGRESS = "IN_PROGRESS";
+    public static final String PENDING = "PENDING";
+    public static final String GRADED = "GRADED";
+    public static final String FAILED = "FAILED";
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @JsonIgnore
+    @ManyToOne(optional = false, fetch = FetchType.LAZY)
+    @JoinColumn(name = "quiz_id")
+    private Quiz quiz;
+
+    @JsonIgnore
+    @ManyToOne(optional = false, fetch = FetchType.LAZY)
+    @JoinColumn(name = "user_id")
+    private User user;
+
+    @Column(nullable = false, length = 20)
+    private String status;
+
+    // Submitted answers as JSON, keyed by question id
+    @JsonIgnore
+    @Column(columnDefinition = "TEXT")
+    private String answers;
+
+    // Seconds spent per question as JSON, keyed by question id, as reported by the client
+    @JsonIgnore
+    @Column(name = "time_spent", columnDefinition = "TEXT")
+    private String timeSpent;
+
+    private Integer score;
+    private Integer maxScore;
+    private Integer percentage;
+
+    // Per-question correctness as JSON ({"questionId": true|false}), written by the grader
+    @JsonRawValue
+    @Column(columnDefinition = "TEXT")
+    private String results;
+
+    private LocalDateTime submittedAt = LocalDateTime.now();
+    // Timed attempts only: when the attempt was started and when the server closes it
+    private LocalDateTime startedAt;
+    private LocalDateTime deadline;
+    private LocalDateTime gradedAt;
+
+    // Grading runs that failed for a reason that may pass (database, cache); the grader waits until
+    // retryAfter before claiming the attempt again and marks it FAILED after a few tries
+    @JsonIgnore
+    private Integer gradingTries;
+    @JsonIgnore
+    private LocalDateTime retryAfter;
+
+    public Long getQuizId() {
+        return quiz != null ? quiz.getId() : null;
+    }
+
+    @JsonIgnore
+    public Long getUserId() {
+        return user != null ? user.getId() : null;
+    }
+}
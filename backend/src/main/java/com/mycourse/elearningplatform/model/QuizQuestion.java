@@ -0,0 +1,58 @@
+package com.mycourse.elearningplatform.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Entity
+@Table(name = "quiz_questions", indexes = @Index(name = "idx_quiz_questions_quiz_id", columnList = "quiz_id"))
+@Getter
+@Setter
+@NoArgsConstructor
+public class QuizQuestion {
+    public static final String SINGLE_CHOICE = "SINGLE_CHOICE";
+    public static final String MULTIPLE_CHOICE = "MULTIPLE_CHOICE";
+    public static final String NUMERIC = "NUMERIC";
+    public static final String SHORT_TEXT = "SHORT_TEXT";
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @JsonIgnore
+    @ManyToOne(optional = false, fetch = FetchType.LAZY)
+    @JoinColumn(name = "quiz_id")
+    private Quiz quiz;
+
+    private Integer position;
+
+    // One of SINGLE_CHOICE, MULTIPLE_CHOICE, NUMERIC, SHORT_TEXT
+    @Column(nullable = false, length = 20)
+    private String type;
+
+    @Column(nullable = false, columnDefinition = "TEXT")
+    private String prompt;
+
+    // Choice questions only
+    @ElementCollection
+    @CollectionTable(name = "quiz_question_options", joinColumns = @JoinColumn(name = "question_id"))
+    @OrderColumn(name = "option_index")
+    @Column(name = "option_text", columnDefinition = "TEXT")
+    private List<String> options = new ArrayList<>();
+
+    // Option indexes for choice questions, the value for NUMERIC, accepted answers for SHORT_TEXT
+    @ElementCollection
+    @CollectionTable(name = "quiz_question_answers", joinColumns = @JoinColumn(name = "question_id"))
+    @Column(name = "answer", columnDefinition = "TEXT")
+    private List<String> correctAnswers = new ArrayList<>();
+
+    // Allowed absolute difference for NUMERIC answers
+    private Double tolerance;
+
+    private Integer points = 1;
+}
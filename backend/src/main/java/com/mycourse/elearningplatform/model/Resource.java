@@ -7,6 +7,7 @@ import lombok.Setter;
 import java.time.LocalDateTime;
 
 @Entity
+@Table(indexes = @Index(name = "idx_resource_course_created", columnList = "course_id, created_at"))
 @Getter
 @Setter
 @NoArgsConstructor
@@ -19,6 +20,10 @@ public class Resource {
     private String fileUrl;
     private String fileType;
     private Long fileSize;
+
+    // SHA-256 of the content, for files uploaded through /api/upload
+    @Column(name = "content_hash", length = 64)
+    private String contentHash;
     
     @Column(name = "created_at")
     private LocalDateTime createdAt;
@@ -8,4 +8,6 @@ import java.util.List;
 
 public interface CourseRepository extends JpaRepository<Course, Long> {
     List<Course> findByInstructor(User instructor);
+    List<Course> findByInstructorId(Long instructorId);
+    boolean existsByIdAndInstructorId(Long id, Long instructorId);
 }
\ No newline at end of file
@@ -1,19 +1,40 @@
 package com.mycourse.elearningplatform.repository;
 
+import com.mycourse.elearningplatform.dto.RosterRow;
 import com.mycourse.elearningplatform.model.Enrollment;
 import com.mycourse.elearningplatform.model.Course;
 import com.mycourse.elearningplatform.model.User;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
 public interface EnrollmentRepository extends JpaRepository<Enrollment, Long> {
     List<Enrollment> findByUser(User user);
     List<Enrollment> findByCourse(Course course);
+    List<Enrollment> findByUserId(Long userId);
+    List<Enrollment> findByCourseId(Long courseId);
+    List<Enrollment> findByCourse_Instructor_Id(Long instructorId);
     Optional<Enrollment> findByUserAndCourse(User user, Course course);
     Optional<Enrollment> findByUserIdAndCourseId(Long userId, Long courseId);
     boolean existsByUserAndCourse(User user, Course course);
+    boolean existsByUserIdAndCourseId(Long userId, Long courseId);
+
+    @Query("SELECT e.id FROM Enrollment e WHERE e.user.id = :userId AND e.course.id = :courseId")
+    Optional<Long> findIdByUserIdAndCourseId(@Param("userId") Long userId, @Param("courseId") Long courseId);
+
+    // Forward-only cursor over a course roster; must be consumed inside a transaction and closed
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"))
+    @Query("SELECT new com.mycourse.elearningplatform.dto.RosterRow(e.id, u.id, u.firstName, u.lastName, u.email, " +
+           "e.enrolledAt, e.progress, e.lastActivityDate, e.averageQuizScore, e.paid) " +
+           "FROM Enrollment e JOIN e.user u WHERE e.course.id = :courseId ORDER BY e.id")
+    Stream<RosterRow> streamRosterByCourseId(@Param("courseId") Long courseId);
 } 
\ No newline at end of file
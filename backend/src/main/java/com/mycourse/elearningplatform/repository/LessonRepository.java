@@ -3,6 +3,8 @@ package com.mycourse.elearningplatform.repository;
 import com.mycourse.elearningplatform.model.Lesson;
 import com.mycourse.elearningplatform.model.Course;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
@@ -10,4 +12,19 @@ import java.util.List;
 @Repository
 public interface LessonRepository extends JpaRepository<Lesson, Long> {
     List<Lesson> findByCourse(Course course);
+    List<Lesson> findByCourseIdOrderByOrdinalAscIdAsc(Long courseId);
+    boolean existsByIdAndCourseId(Long id, Long courseId);
+
+    // Display order; lessons that were never positioned follow in creation order
+    @Query("SELECT l FROM Lesson l WHERE l.course.id = :courseId ORDER BY l.position ASC NULLS LAST, l.ordinal ASC NULLS LAST, l.id ASC")
+    List<Lesson> findByCourseIdInDisplayOrder(@Param("courseId") Long courseId);
+
+    @Query("SELECT l.id FROM Lesson l WHERE l.course.id = :courseId ORDER BY l.position ASC NULLS LAST, l.ordinal ASC NULLS LAST, l.id ASC")
+    List<Long> findIdsByCourseIdInDisplayOrder(@Param("courseId") Long courseId);
+
+    @Query("SELECT COALESCE(MAX(l.position), -1) FROM Lesson l WHERE l.course.id = :courseId")
+    int findMaxPositionByCourseId(@Param("courseId") Long courseId);
+
+    @Query("SELECT COUNT(l) > 0 FROM Lesson l WHERE l.course.id = :courseId AND l.position IS NULL")
+    boolean existsUnpositionedByCourseId(@Param("courseId") Long courseId);
 } 
\ No newline at end of file
@@ -0,0 +1,12 @@
+package com.mycourse.elearningplatform.repository;
+
+import com.mycourse.elearningplatform.model.PlaybackPosition;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface PlaybackPositionRepository extends JpaRepository<PlaybackPosition, Long> {
+    List<PlaybackPosition> findByUserIdAndCourseId(Long userId, Long courseId);
+}
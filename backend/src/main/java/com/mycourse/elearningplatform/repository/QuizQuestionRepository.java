@@ -0,0 +1,12 @@
+package com.mycourse.elearningplatform.repository;
+
+import com.mycourse.elearningplatform.model.QuizQuestion;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface QuizQuestionRepository extends JpaRepository<QuizQuestion, Long> {
+    List<QuizQuestion> findByQuizIdOrderByPositionAscIdAsc(Long quizId);
+}
@@ -1,8 +1,13 @@
 package com.mycourse.elearningplatform.repository;
 
+import com.mycourse.elearningplatform.dto.QuizSummary;
 import com.mycourse.elearningplatform.model.Quiz;
 import com.mycourse.elearningplatform.model.Course;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
@@ -10,4 +15,17 @@ import java.util.List;
 @Repository
 public interface QuizRepository extends JpaRepository<Quiz, Long> {
     List<Quiz> findByCourse(Course course);
-} 
\ No newline at end of file
+
+    // q.course.id reads the foreign key column, so neither query joins courses
+    @Query(value = "SELECT new com.mycourse.elearningplatform.dto.QuizSummary(q.id, q.title, q.description, q.totalPoints, q.course.id, " +
+            "(SELECT COUNT(qq) FROM QuizQuestion qq WHERE qq.quiz = q)) " +
+            "FROM Quiz q WHERE q.course.id = :courseId ORDER BY q.id",
+            countQuery = "SELECT COUNT(q) FROM Quiz q WHERE q.course.id = :courseId")
+    Page<QuizSummary> findSummariesByCourseId(@Param("courseId") Long courseId, Pageable pageable);
+
+    @Query(value = "SELECT new com.mycourse.elearningplatform.dto.QuizSummary(q.id, q.title, q.description, q.totalPoints, q.course.id, " +
+            "(SELECT COUNT(qq) FROM QuizQuestion qq WHERE qq.quiz = q)) " +
+            "FROM Quiz q ORDER BY q.id",
+            countQuery = "SELECT COUNT(q) FROM Quiz q")
+    Page<QuizSummary> findAllSummaries(Pageable pageable);
+}
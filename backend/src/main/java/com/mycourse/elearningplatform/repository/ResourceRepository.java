@@ -1,10 +1,40 @@
 package com.mycourse.elearningplatform.repository;
 
+import com.mycourse.elearningplatform.dto.ResourceSummary;
 import com.mycourse.elearningplatform.model.Resource;
 import com.mycourse.elearningplatform.model.Course;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
 import java.util.List;
 
 public interface ResourceRepository extends JpaRepository<Resource, Long> {
     List<Resource> findByCourse(Course course);
-} 
\ No newline at end of file
+
+    // One join with courses for the instructor filter and title; null filters are ignored
+    @Query(value = "SELECT new com.mycourse.elearningplatform.dto.ResourceSummary(r.id, r.fileName, r.fileUrl, r.fileType, " +
+            "r.fileSize, r.contentHash, r.createdAt, r.updatedAt, c.id, c.title) " +
+            "FROM Resource r JOIN r.course c " +
+            "WHERE c.instructor.id = :instructorId " +
+            "AND (:courseId IS NULL OR c.id = :courseId) " +
+            "AND (:fileType IS NULL OR r.fileType = :fileType) " +
+            "AND (:from IS NULL OR r.createdAt >= :from) " +
+            "AND (:to IS NULL OR r.createdAt < :to) " +
+            "ORDER BY r.createdAt DESC, r.id DESC",
+            countQuery = "SELECT COUNT(r) FROM Resource r JOIN r.course c " +
+            "WHERE c.instructor.id = :instructorId " +
+            "AND (:courseId IS NULL OR c.id = :courseId) " +
+            "AND (:fileType IS NULL OR r.fileType = :fileType) " +
+            "AND (:from IS NULL OR r.createdAt >= :from) " +
+            "AND (:to IS NULL OR r.createdAt < :to)")
+    Page<ResourceSummary> findSummariesByInstructorId(@Param("instructorId") Long instructorId,
+                                                      @Param("courseId") Long courseId,
+                                                      @Param("fileType") String fileType,
+                                                      @Param("from") LocalDateTime from,
+                                                      @Param("to") LocalDateTime to,
+                                                      Pageable pageable);
+}
@@ -0,0 +1,73 @@
+package com.mycourse.elearningplatform.security;
+
+import com.mycourse.elearningplatform.model.User;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+/**
+ * The authenticated caller of the current request, built from the JWT claims.
+ * The id, email and roles are available without touching the database; the full
+ * {@link User} entity is only loaded (once per request) when {@link #getUser()} is called.
+ */
+public class CurrentUser {
+    private final Long id;
+    private final String email;
+    private final List<String> roles;
+    private final Supplier<Optional<User>> userLoader;
+    private final Supplier<User> referenceLoader;
+    private Optional<User> user;
+
+    public CurrentUser(Long id, String email, List<String> roles, Supplier<Optional<User>> userLoader, Supplier<User> referenceLoader) {
+        this.id = id;
+        this.email = email;
+        this.roles = roles;
+        this.userLoader = userLoader;
+        this.referenceLoader = referenceLoader;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getEmail() {
+        return email;
+    }
+
+    // Role names without the ROLE_ prefix, e.g. "TEACHER"
+    public List<String> getRoles() {
+        return roles;
+    }
+
+    public boolean hasRole(String role) {
+        return roles.contains(role);
+    }
+
+    public boolean isTeacher() {
+        return hasRole("TEACHER");
+    }
+
+    /**
+     * Load the full user entity (roles, interests, profile). Only the first call hits the database.
+     * Empty if the user was deleted after the token was issued.
+     */
+    public Optional<User> findUser() {
+        if (user == null) {
+            user = userLoader.get();
+        }
+        return user;
+    }
+
+    public User getUser() {
+        return findUser().orElseThrow();
+    }
+
+    /**
+     * A lazy JPA reference to the user, for setting associations without a SELECT.
+     * Do not serialize the returned object; use {@link #getUser()} when the entity is returned to the client.
+     */
+    public User getReference() {
+        return user != null && user.isPresent() ? user.get() : referenceLoader.get();
+    }
+}
@@ -0,0 +1,91 @@
+package com.mycourse.elearningplatform.security;
+
+import com.mycourse.elearningplatform.model.User;
+import com.mycourse.elearningplatform.repository.UserRepository;
+import org.springframework.core.MethodParameter;
+import org.springframework.security.authentication.AuthenticationCredentialsNotFoundException;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.bind.support.WebDataBinderFactory;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.method.support.HandlerMethodArgumentResolver;
+import org.springframework.web.method.support.ModelAndViewContainer;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Resolves {@link CurrentUser} controller parameters from the JWT principal set by JwtAuthFilter,
+ * so handlers no longer need a findByEmail lookup before they can do anything.
+ */
+@Component
+public class CurrentUserArgumentResolver implements HandlerMethodArgumentResolver {
+    private static final String REQUEST_ATTRIBUTE = CurrentUser.class.getName();
+
+    private final UserRepository userRepository;
+
+    // Instrumentation: requests that resolved a CurrentUser vs. requests that still loaded the entity
+    private final LongAdder resolved = new LongAdder();
+    private final LongAdder loaded = new LongAdder();
+
+    public CurrentUserArgumentResolver(UserRepository userRepository) {
+        this.userRepository = userRepository;
+    }
+
+    @Override
+    public boolean supportsParameter(MethodParameter parameter) {
+        return CurrentUser.class.equals(parameter.getParameterType());
+    }
+
+    @Override
+    public Object resolveArgument(MethodParameter parameter, ModelAndViewContainer mavContainer,
+                                  NativeWebRequest webRequest, WebDataBinderFactory binderFactory) {
+        Object cached = webRequest.getAttribute(REQUEST_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+        if (cached instanceof CurrentUser currentUser) {
+            return currentUser;
+        }
+
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication == null || !(authentication.getPrincipal() instanceof UserDetailsImpl principal)) {
+            throw new AuthenticationCredentialsNotFoundException("Authentication required");
+        }
+
+        List<String> roles = principal.getAuthorities().stream()
+                .map(authority -> authority.getAuthority().replace("ROLE_", ""))
+                .toList();
+
+        CurrentUser currentUser;
+        if (principal.getId() != null) {
+            Long id = principal.getId();
+            currentUser = new CurrentUser(id, principal.getUsername(), roles,
+                    () -> {
+                        loaded.increment();
+                        return userRepository.findById(id);
+                    },
+                    () -> userRepository.getReferenceById(id));
+        } else {
+            // Tokens issued before the userId claim existed: fall back to the email lookup
+            loaded.increment();
+            User user = userRepository.findByEmail(principal.getUsername()).orElseThrow();
+            currentUser = new CurrentUser(user.getId(), user.getEmail(), roles, () -> Optional.of(user), () -> user);
+        }
+
+        resolved.increment();
+        webRequest.setAttribute(REQUEST_ATTRIBUTE, currentUser, RequestAttributes.SCOPE_REQUEST);
+        return currentUser;
+    }
+
+    public Map<String, Long> getStats() {
+        long resolvedCount = resolved.sum();
+        long loadedCount = loaded.sum();
+        return Map.of(
+                "resolved", resolvedCount,
+                "userLoaded", loadedCount,
+                "lookupsAvoided", Math.max(0, resolvedCount - loadedCount)
+        );
+    }
+}
@@ -0,0 +1,186 @@
+package com.mycourse.elearningplatform.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Append-only learning activity log (enrolled, lesson viewed, progress changed, quiz submitted...).
+ * Request threads only offer events to a bounded in-memory queue; a single writer thread drains it
+ * and writes multi-row INSERTs into learning_events, a table range-partitioned by month so old
+ * months can be dropped whole instead of deleted row by row.
+ * If the queue is full the event is dropped and counted, never blocking the caller.
+ */
+@Service
+public class ActivityEventLog {
+    public static final String ENROLLED = "ENROLLED";
+    public static final String UNENROLLED = "UNENROLLED";
+    public static final String LESSON_VIEWED = "LESSON_VIEWED";
+    public static final String LESSON_COMPLETED = "LESSON_COMPLETED";
+    public static final String PROGRESS_CHANGED = "PROGRESS_CHANGED";
+    public static final String QUIZ_SUBMITTED = "QUIZ_SUBMITTED";
+
+    private static final int QUEUE_CAPACITY = 65536;
+    private static final int BATCH_SIZE = 1000;
+    // Partitions are created this many months ahead so inserts never miss one
+    private static final int MONTHS_AHEAD = 2;
+    private static final DateTimeFormatter PARTITION_SUFFIX = DateTimeFormatter.ofPattern("yyyyMM");
+
+    public record ActivityEvent(String type, Long userId, Long courseId, Long targetId, Integer value, LocalDateTime occurredAt) {}
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${app.activity.retention-months:13}")
+    private int retentionMonths;
+
+    private final ArrayBlockingQueue<ActivityEvent> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final LongAdder dropped = new LongAdder();
+    private volatile boolean running;
+    private Thread writer;
+
+    @PostConstruct
+    public void start() {
+        try {
+            jdbcTemplate.execute(
+                    "CREATE TABLE IF NOT EXISTS learning_events (" +
+                    "event_type varchar(32) NOT NULL, " +
+                    "user_id bigint NOT NULL, " +
+                    "course_id bigint, " +
+                    "target_id bigint, " +
+                    "value integer, " +
+                    "occurred_at timestamp NOT NULL" +
+                    ") PARTITION BY RANGE (occurred_at)");
+            jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS idx_learning_events_course_time ON learning_events (course_id, occurred_at)");
+            jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS idx_learning_events_user_time ON learning_events (user_id, occurred_at)");
+            maintainPartitions();
+        } catch (Exception e) {
+            System.err.println("[ERROR] Could not prepare learning_events table: " + e.getMessage());
+        }
+
+        running = true;
+        writer = new Thread(this::writeLoop, "activity-event-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    public void record(String type, Long userId, Long courseId, Long targetId, Integer value) {
+        if (!queue.offer(new ActivityEvent(type, userId, courseId, targetId, value, LocalDateTime.now()))) {
+            dropped.increment();
+        }
+    }
+
+    public void record(String type, Long userId, Long courseId) {
+        record(type, userId, courseId, null, null);
+    }
+
+    /**
+     * Distinct learners with any activity in the course per day, oldest day first.
+     */
+    public List<Map<String, Object>> dailyActiveLearners(Long courseId, int days) {
+        LocalDate from = LocalDate.now().minusDays(days - 1L);
+        return jdbcTemplate.query(
+                "SELECT CAST(occurred_at AS date) AS day, COUNT(DISTINCT user_id) AS learners " +
+                "FROM learning_events WHERE course_id = ? AND occurred_at >= ? " +
+                "GROUP BY day ORDER BY day",
+                (rs, rowNum) -> {
+                    Map<String, Object> row = new HashMap<>();
+                    row.put("day", rs.getDate("day").toLocalDate().toString());
+                    row.put("activeLearners", rs.getLong("learners"));
+                    return row;
+                },
+                courseId, Timestamp.valueOf(from.atStartOfDay()));
+    }
+
+    // Create upcoming monthly partitions and drop the ones past retention
+    @Scheduled(cron = "0 15 3 * * *")
+    public void maintainPartitions() {
+        YearMonth current = YearMonth.now();
+        for (int i = 0; i <= MONTHS_AHEAD; i++) {
+            YearMonth month = current.plusMonths(i);
+            jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS learning_events_" + month.format(PARTITION_SUFFIX) +
+                    " PARTITION OF learning_events FOR VALUES FROM ('" + month.atDay(1) + "') TO ('" +
+                    month.plusMonths(1).atDay(1) + "')");
+        }
+
+        String oldestKept = current.minusMonths(retentionMonths - 1L).format(PARTITION_SUFFIX);
+        List<String> partitions = jdbcTemplate.queryForList(
+                "SELECT c.relname FROM pg_inherits i " +
+                "JOIN pg_class c ON c.oid = i.inhrelid " +
+                "JOIN pg_class p ON p.oid = i.inhparent " +
+                "WHERE p.relname = 'learning_events'", String.class);
+        for (String partition : partitions) {
+            String suffix = partition.substring(partition.lastIndexOf('_') + 1);
+            if (suffix.matches("\\d{6}") && suffix.compareTo(oldestKept) < 0) {
+                jdbcTemplate.execute("DROP TABLE IF EXISTS " + partition);
+            }
+        }
+    }
+
+    private void writeLoop() {
+        List<ActivityEvent> batch = new ArrayList<>(BATCH_SIZE);
+        while (running || !queue.isEmpty()) {
+            try {
+                ActivityEvent first = queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) continue;
+                batch.add(first);
+                queue.drainTo(batch, BATCH_SIZE - 1);
+                writeBatch(batch);
+            } catch (InterruptedException e) {
+                running = false;
+            } catch (Exception e) {
+                System.err.println("[ERROR] Failed to write " + batch.size() + " activity events: " + e.getMessage());
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void writeBatch(List<ActivityEvent> batch) {
+        StringBuilder sql = new StringBuilder(
+                "INSERT INTO learning_events (event_type, user_id, course_id, target_id, value, occurred_at) VALUES ");
+        Object[] args = new Object[batch.size() * 6];
+        for (int i = 0; i < batch.size(); i++) {
+            ActivityEvent event = batch.get(i);
+            sql.append(i == 0 ? "" : ", ").append("(?, ?, ?, ?, ?, ?)");
+            args[i * 6] = event.type();
+            args[i * 6 + 1] = event.userId();
+            args[i * 6 + 2] = event.courseId();
+            args[i * 6 + 3] = event.targetId();
+            args[i * 6 + 4] = event.value();
+            args[i * 6 + 5] = Timestamp.valueOf(event.occurredAt());
+        }
+        jdbcTemplate.update(sql.toString(), args);
+
+        long lost = dropped.sumThenReset();
+        if (lost > 0) {
+            System.err.println("[ERROR] Activity event queue was full, dropped " + lost + " events");
+        }
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        // The writer notices within one poll timeout and drains what is still queued
+        running = false;
+        if (writer != null) {
+            writer.join(10000);
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.mycourse.elearningplatform.service;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * Broadcasts enrollment, progress and quiz-score changes to instructors over Server-Sent Events.
+ * Every subscriber has its own small bounded queue drained by a shared sender pool, so a publisher
+ * never blocks on a slow network; a subscriber whose queue overflows, or whose send stalls for
+ * longer than the send timeout, is disconnected and is expected to reconnect and reload the roster.
+ */
+@Service
+public class CourseEventHub {
+    private static final int QUEUE_CAPACITY = 256;
+    private static final int SENDER_THREADS = 4;
+    private static final long SEND_TIMEOUT_MS = 5000;
+    // Clients reconnect after this; keeps abandoned connections from living forever
+    private static final long STREAM_TIMEOUT_MS = 30 * 60 * 1000;
+
+    public record CourseEvent(String type, Long courseId, Object data) {}
+
+    private static final CourseEvent PING = new CourseEvent("ping", null, Map.of());
+
+    private final class Subscriber {
+        final SseEmitter emitter = new SseEmitter(STREAM_TIMEOUT_MS);
+        final List<Long> courseIds;
+        final ArrayBlockingQueue<CourseEvent> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        final AtomicBoolean draining = new AtomicBoolean();
+        final AtomicBoolean closed = new AtomicBoolean();
+
+        Subscriber(List<Long> courseIds) {
+            this.courseIds = courseIds;
+        }
+    }
+
+    private final ConcurrentHashMap<Long, Set<Subscriber>> subscribersByCourse = new ConcurrentHashMap<>();
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    private final SseSenderPool senders = new SseSenderPool("course-events", SENDER_THREADS, SEND_TIMEOUT_MS);
+
+    public SseEmitter subscribe(Collection<Long> courseIds) {
+        Subscriber subscriber = new Subscriber(List.copyOf(courseIds));
+        subscriber.emitter.onCompletion(() -> remove(subscriber));
+        subscriber.emitter.onTimeout(() -> remove(subscriber));
+        subscriber.emitter.onError(e -> remove(subscriber));
+
+        subscribers.add(subscriber);
+        for (Long courseId : subscriber.courseIds) {
+            // Add under the map's lock so a concurrent remove cannot drop the set we are adding to
+            subscribersByCourse.compute(courseId, (id, set) -> {
+                Set<Subscriber> watching = set != null ? set : ConcurrentHashMap.newKeySet();
+                watching.add(subscriber);
+                return watching;
+            });
+        }
+        enqueue(subscriber, new CourseEvent("subscribed", null, Map.of("courseIds", subscriber.courseIds)));
+        return subscriber.emitter;
+    }
+
+    /**
+     * Queue an event for everyone watching the course. Never blocks; cheap when nobody is subscribed.
+     */
+    public void publish(Long courseId, String type, Object data) {
+        publish(courseId, type, () -> data);
+    }
+
+    /**
+     * Same as {@link #publish(Long, String, Object)}, building the payload only when someone is
+     * watching the course, for payloads that cost a query to build.
+     */
+    public void publish(Long courseId, String type, Supplier<?> data) {
+        Set<Subscriber> watching = subscribersByCourse.get(courseId);
+        if (watching == null || watching.isEmpty()) return;
+
+        CourseEvent event = new CourseEvent(type, courseId, data.get());
+        for (Subscriber subscriber : watching) {
+            enqueue(subscriber, event);
+        }
+    }
+
+    @Scheduled(fixedRate = 20000)
+    public void ping() {
+        // Keeps proxies from closing idle streams and detects dead connections
+        for (Subscriber subscriber : subscribers) {
+            enqueue(subscriber, PING);
+        }
+    }
+
+    @Scheduled(fixedRate = 1000)
+    public void dropStalled() {
+        senders.checkStalled();
+    }
+
+    private void enqueue(Subscriber subscriber, CourseEvent event) {
+        if (subscriber.closed.get()) return;
+        if (!subscriber.queue.offer(event)) {
+            remove(subscriber);
+            subscriber.emitter.complete();
+            return;
+        }
+        scheduleDrain(subscriber);
+    }
+
+    private void scheduleDrain(Subscriber subscriber) {
+        if (subscriber.draining.compareAndSet(false, true)) {
+            senders.execute(() -> drain(subscriber));
+        }
+    }
+
+    private void drain(Subscriber subscriber) {
+        try {
+            CourseEvent event;
+            while (!subscriber.closed.get() && (event = subscriber.queue.poll()) != null) {
+                senders.send(subscriber.emitter, SseEmitter.event()
+                        .name(event.type())
+                        .data(event.data(), MediaType.APPLICATION_JSON), () -> remove(subscriber));
+            }
+            if (subscriber.closed.get()) {
+                // Dropped while a send was stalled; close the stream now that the write is done
+                subscriber.emitter.complete();
+            }
+        } catch (Exception e) {
+            remove(subscriber);
+            subscriber.emitter.completeWithError(e);
+        } finally {
+            subscriber.draining.set(false);
+        }
+        // An event may have been queued after the last poll but before the flag was cleared
+        if (!subscriber.closed.get() && !subscriber.queue.isEmpty()) {
+            scheduleDrain(subscriber);
+        }
+    }
+
+    private void remove(Subscriber subscriber) {
+        if (!subscriber.closed.compareAndSet(false, true)) return;
+        subscribers.remove(subscriber);
+        for (Long courseId : subscriber.courseIds) {
+            subscribersByCourse.computeIfPresent(courseId, (id, set) -> {
+                set.remove(subscriber);
+                return set.isEmpty() ? null : set;
+            });
+        }
+        subscriber.queue.clear();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (Subscriber subscriber : subscribers) {
+            remove(subscriber);
+            subscriber.emitter.complete();
+        }
+        senders.shutdownNow();
+    }
+}
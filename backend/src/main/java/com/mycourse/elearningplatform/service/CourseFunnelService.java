@@ -0,0 +1,232 @@
+package com.mycourse.elearningplatform.service;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Date;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Completion funnel per course and enrollment-week cohort, kept in course_funnel_rollups as one
+ * counter per (course, cohort week, stage) holding the learners whose furthest stage is that stage.
+ * Counters move when an enrollment is created or deleted and when a progress flush crosses a stage
+ * boundary, so reading a funnel costs the number of cohorts, not the number of enrollments.
+ * Certificates are issued at 100% progress, so the last stage is also the certified count.
+ * Drift (e.g. progress lost in a crash before it was flushed) is corrected nightly one course at a
+ * time, each in its own short transaction; the full rebuild only runs once, to fill an empty table.
+ */
+@Service
+public class CourseFunnelService {
+    public static final List<String> STAGES = List.of("enrolled", "started", "progress25", "progress50", "progress75", "certified");
+
+    // Enrollments from before enrolledAt was recorded are grouped under this week
+    private static final LocalDate UNKNOWN_WEEK = LocalDate.of(1970, 1, 5);
+    // First key of the per-course advisory locks ("FUNL"); the second is the course id
+    private static final int LOCK_NAMESPACE = 0x46554e4c;
+
+    private static final String STAGE_SQL =
+            "CASE WHEN COALESCE(progress, 0) >= 100 THEN 5 " +
+            "WHEN COALESCE(progress, 0) >= 75 THEN 4 " +
+            "WHEN COALESCE(progress, 0) >= 50 THEN 3 " +
+            "WHEN COALESCE(progress, 0) >= 25 THEN 2 " +
+            "WHEN COALESCE(progress, 0) > 0 THEN 1 ELSE 0 END";
+
+    public record Transition(Long courseId, LocalDateTime enrolledAt, int fromProgress, int toProgress) {}
+
+    private record RollupKey(Long courseId, LocalDate cohortWeek, int stage) {}
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @PostConstruct
+    public void createTable() {
+        jdbcTemplate.execute(
+                "CREATE TABLE IF NOT EXISTS course_funnel_rollups (" +
+                "course_id bigint NOT NULL, " +
+                "cohort_week date NOT NULL, " +
+                "stage smallint NOT NULL, " +
+                "learners bigint NOT NULL, " +
+                "PRIMARY KEY (course_id, cohort_week, stage))");
+    }
+
+    public static int stageOf(int progress) {
+        if (progress >= 100) return 5;
+        if (progress >= 75) return 4;
+        if (progress >= 50) return 3;
+        if (progress >= 25) return 2;
+        return progress > 0 ? 1 : 0;
+    }
+
+    // Call in the same transaction as the enrollment insert
+    public void recordEnrolled(Long courseId, LocalDateTime enrolledAt) {
+        applyDeltas(Map.of(new RollupKey(courseId, cohortWeek(enrolledAt), 0), 1L));
+    }
+
+    // Call in the same transaction as the enrollment delete, with the last persisted progress
+    public void recordUnenrolled(Long courseId, LocalDateTime enrolledAt, Integer progress) {
+        int stage = stageOf(progress != null ? progress : 0);
+        applyDeltas(Map.of(new RollupKey(courseId, cohortWeek(enrolledAt), stage), -1L));
+    }
+
+    // Call in the same transaction as the progress update the transitions came from
+    public void recordTransitions(List<Transition> transitions) {
+        Map<RollupKey, Long> deltas = new HashMap<>();
+        for (Transition t : transitions) {
+            int from = stageOf(t.fromProgress());
+            int to = stageOf(t.toProgress());
+            if (from == to) continue;
+            LocalDate week = cohortWeek(t.enrolledAt());
+            deltas.merge(new RollupKey(t.courseId(), week, from), -1L, Long::sum);
+            deltas.merge(new RollupKey(t.courseId(), week, to), 1L, Long::sum);
+        }
+        deltas.values().removeIf(delta -> delta == 0);
+        applyDeltas(deltas);
+    }
+
+    /**
+     * Funnel for a course: learners that reached each stage, overall and per enrollment-week cohort.
+     */
+    public Map<String, Object> getFunnel(Long courseId) {
+        TreeMap<LocalDate, long[]> atStage = new TreeMap<>();
+        jdbcTemplate.query(
+                "SELECT cohort_week, stage, learners FROM course_funnel_rollups WHERE course_id = ?",
+                rs -> {
+                    long[] counts = atStage.computeIfAbsent(rs.getDate("cohort_week").toLocalDate(), w -> new long[STAGES.size()]);
+                    counts[rs.getInt("stage")] += rs.getLong("learners");
+                },
+                courseId);
+
+        long[] total = new long[STAGES.size()];
+        List<Map<String, Object>> cohorts = new ArrayList<>();
+        for (Map.Entry<LocalDate, long[]> entry : atStage.entrySet()) {
+            long[] counts = entry.getValue();
+            for (int stage = 0; stage < counts.length; stage++) {
+                total[stage] += counts[stage];
+            }
+            Map<String, Object> cohort = new LinkedHashMap<>();
+            cohort.put("cohortWeek", entry.getKey().equals(UNKNOWN_WEEK) ? null : entry.getKey().toString());
+            cohort.put("reached", reached(counts));
+            cohorts.add(cohort);
+        }
+
+        Map<String, Object> funnel = new LinkedHashMap<>();
+        funnel.put("courseId", courseId);
+        funnel.put("stages", STAGES);
+        funnel.put("reached", reached(total));
+        funnel.put("cohorts", cohorts);
+        return funnel;
+    }
+
+    /**
+     * Rebuild all counters from the enrollments table, for filling the table the first time. The
+     * exclusive lock makes concurrent flushes and enrollments wait, so their deltas land on top of the
+     * rebuilt counts instead of being counted twice. Use {@link #reconcile(Long)} for routine repair.
+     */
+    public void backfill() {
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.execute("LOCK TABLE course_funnel_rollups IN EXCLUSIVE MODE");
+            jdbcTemplate.update("DELETE FROM course_funnel_rollups");
+            jdbcTemplate.update(
+                    "INSERT INTO course_funnel_rollups (course_id, cohort_week, stage, learners) " +
+                    "SELECT course_id, CAST(date_trunc('week', COALESCE(enrolled_at, ?)) AS date), " + STAGE_SQL + ", COUNT(*) " +
+                    "FROM enrollments GROUP BY 1, 2, 3",
+                    Date.valueOf(UNKNOWN_WEEK));
+        });
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillIfEmpty() {
+        Boolean empty = jdbcTemplate.queryForObject("SELECT NOT EXISTS (SELECT 1 FROM course_funnel_rollups)", Boolean.class);
+        if (Boolean.TRUE.equals(empty)) {
+            backfill();
+        }
+    }
+
+    /**
+     * Recount one course from its enrollments. Only that course's writers wait, and only for the
+     * length of one small transaction: they hold the course's advisory lock shared until they commit
+     * (see applyDeltas), so the recount sees each enrollment change together with its delta or neither.
+     */
+    public void reconcile(Long courseId) {
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.query("SELECT pg_advisory_xact_lock(?, CAST(? % 2147483647 AS integer))",
+                    rs -> {}, LOCK_NAMESPACE, courseId);
+            jdbcTemplate.update("DELETE FROM course_funnel_rollups WHERE course_id = ?", courseId);
+            jdbcTemplate.update(
+                    "INSERT INTO course_funnel_rollups (course_id, cohort_week, stage, learners) " +
+                    "SELECT course_id, CAST(date_trunc('week', COALESCE(enrolled_at, ?)) AS date), " + STAGE_SQL + ", COUNT(*) " +
+                    "FROM enrollments WHERE course_id = ? GROUP BY 1, 2, 3",
+                    Date.valueOf(UNKNOWN_WEEK), courseId);
+        });
+    }
+
+    // Nightly drift correction, course by course; also clears counters of deleted courses
+    @Scheduled(cron = "0 45 3 * * *")
+    public void nightlyReconcile() {
+        List<Long> courseIds = jdbcTemplate.queryForList(
+                "SELECT id FROM courses UNION SELECT DISTINCT course_id FROM course_funnel_rollups", Long.class);
+        for (Long courseId : courseIds) {
+            try {
+                reconcile(courseId);
+            } catch (Exception e) {
+                System.err.println("[ERROR] Funnel reconcile failed for course " + courseId + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private void applyDeltas(Map<RollupKey, Long> deltas) {
+        if (deltas.isEmpty()) return;
+        // Shared per-course locks, held until the caller commits, so a reconcile of the course waits
+        deltas.keySet().stream().map(RollupKey::courseId).distinct().sorted().forEach(courseId ->
+                jdbcTemplate.query("SELECT pg_advisory_xact_lock_shared(?, CAST(? % 2147483647 AS integer))",
+                        rs -> {}, LOCK_NAMESPACE, courseId));
+        StringBuilder sql = new StringBuilder("INSERT INTO course_funnel_rollups (course_id, cohort_week, stage, learners) VALUES ");
+        List<Object> args = new ArrayList<>(deltas.size() * 4);
+        for (Map.Entry<RollupKey, Long> entry : deltas.entrySet()) {
+            sql.append(args.isEmpty() ? "" : ", ").append("(?, ?, ?, ?)");
+            args.add(entry.getKey().courseId());
+            args.add(Date.valueOf(entry.getKey().cohortWeek()));
+            args.add(entry.getKey().stage());
+            args.add(entry.getValue());
+        }
+        sql.append(" ON CONFLICT (course_id, cohort_week, stage) DO UPDATE SET learners = course_funnel_rollups.learners + EXCLUDED.learners");
+        jdbcTemplate.update(sql.toString(), args.toArray());
+    }
+
+    private Map<String, Long> reached(long[] atStage) {
+        // A learner at stage s has also reached every earlier stage
+        Map<String, Long> reached = new LinkedHashMap<>();
+        long running = 0;
+        long[] cumulative = new long[atStage.length];
+        for (int stage = atStage.length - 1; stage >= 0; stage--) {
+            running += atStage[stage];
+            cumulative[stage] = running;
+        }
+        for (int stage = 0; stage < atStage.length; stage++) {
+            reached.put(STAGES.get(stage), cumulative[stage]);
+        }
+        return reached;
+    }
+
+    private static LocalDate cohortWeek(LocalDateTime enrolledAt) {
+        if (enrolledAt == null) return UNKNOWN_WEEK;
+        return enrolledAt.toLocalDate().with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+    }
+}
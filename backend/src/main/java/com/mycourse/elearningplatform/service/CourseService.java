@@ -22,7 +22,9 @@ public class CourseService {
     @Autowired
     private ResourceRepository resourceRepository;
     @Autowired
-    private NhostStorageService nhostStorageService;
+    private StoredFileService storedFileService;
+    @Autowired
+    private TranscriptSearchService transcriptSearchService;
 
     public List<Course> getAllCourses() {
         return courseRepository.findAll();
@@ -41,9 +43,9 @@ public class CourseService {
         return courseRepository.save(course);
     }
 
-    public Course updateCourse(Long id, Course updated, User instructor) {
+    public Course updateCourse(Long id, Course updated, Long instructorId) {
         return courseRepository.findById(id).map(course -> {
-            if (!course.getInstructor().getId().equals(instructor.getId())) {
+            if (!course.getInstructor().getId().equals(instructorId)) {
                 throw new RuntimeException("Forbidden: You are not the instructor of this course");
             }
             
@@ -53,12 +55,8 @@ public class CourseService {
                 if (course.getImageUrl() != null && !course.getImageUrl().isEmpty()) {
                     String oldFileId = extractFileIdFromNhostUrl(course.getImageUrl());
                     if (oldFileId != null) {
-                        try {
-                            nhostStorageService.deleteFile(oldFileId);
-                            System.out.println("Deleted old course image from Nhost: " + oldFileId);
-                        } catch (Exception e) {
-                            System.err.println("Failed to delete old course image from Nhost: " + e.getMessage());
-                        }
+                        // Released rather than deleted: other courses may share the stored file
+                        storedFileService.release(oldFileId);
                     }
                 }
                 course.setImageUrl(updated.getImageUrl());
@@ -70,12 +68,7 @@ public class CourseService {
                 if (course.getVideoUrl() != null && !course.getVideoUrl().isEmpty()) {
                     String oldFileId = extractFileIdFromNhostUrl(course.getVideoUrl());
                     if (oldFileId != null) {
-                        try {
-                            nhostStorageService.deleteFile(oldFileId);
-                            System.out.println("Deleted old course video from Nhost: " + oldFileId);
-                        } catch (Exception e) {
-                            System.err.println("Failed to delete old course video from Nhost: " + e.getMessage());
-                        }
+                        storedFileService.release(oldFileId);
                     }
                 }
                 course.setVideoUrl(updated.getVideoUrl());
@@ -90,20 +83,20 @@ public class CourseService {
         }).orElseThrow(() -> new RuntimeException("Course not found"));
     }
 
-    public void deleteCourse(Long id, User instructor) {
+    public void deleteCourse(Long id, Long instructorId) {
         courseRepository.findById(id).ifPresentOrElse(course -> {
-            if (!course.getInstructor().getId().equals(instructor.getId())) {
+            if (!course.getInstructor().getId().equals(instructorId)) {
                 throw new RuntimeException("Forbidden: You are not the instructor of this course");
             }
             
-            // Collect file IDs to delete
-            List<String> fileIdsToDelete = new ArrayList<>();
+            // Collect file IDs to release
+            List<String> fileIdsToRelease = new ArrayList<>();
             
             // Add course image file ID
             if (course.getImageUrl() != null && !course.getImageUrl().isEmpty()) {
                 String fileId = extractFileIdFromNhostUrl(course.getImageUrl());
                 if (fileId != null) {
-                    fileIdsToDelete.add(fileId);
+                    fileIdsToRelease.add(fileId);
                 }
             }
             
@@ -111,7 +104,7 @@ public class CourseService {
             if (course.getVideoUrl() != null && !course.getVideoUrl().isEmpty()) {
                 String fileId = extractFileIdFromNhostUrl(course.getVideoUrl());
                 if (fileId != null) {
-                    fileIdsToDelete.add(fileId);
+                    fileIdsToRelease.add(fileId);
                 }
             }
             
@@ -121,39 +114,23 @@ public class CourseService {
                 if (resource.getFileUrl() != null && !resource.getFileUrl().isEmpty()) {
                     String fileId = extractFileIdFromNhostUrl(resource.getFileUrl());
                     if (fileId != null) {
-                        fileIdsToDelete.add(fileId);
+                        fileIdsToRelease.add(fileId);
                     }
                 }
             }
             
             // Delete the course from database first (fast operation)
             courseRepository.deleteById(id);
+            transcriptSearchService.removeCourse(id);
             
-            // Delete files from Nhost storage asynchronously (don't block the response)
-            if (!fileIdsToDelete.isEmpty()) {
-                deleteFilesAsync(fileIdsToDelete);
-            }
+            // Stored files can be shared between courses; the storage GC deletes them once nothing references them
+            storedFileService.release(fileIdsToRelease);
             
         }, () -> {
             throw new RuntimeException("Course not found");
         });
     }
     
-    private void deleteFilesAsync(List<String> fileIds) {
-        // Run file deletions in a separate thread to avoid blocking the response
-        new Thread(() -> {
-            for (String fileId : fileIds) {
-                try {
-                    nhostStorageService.deleteFile(fileId);
-                    System.out.println("Deleted file from Nhost: " + fileId);
-                } catch (Exception e) {
-                    System.err.println("Failed to delete file from Nhost: " + fileId + " - " + e.getMessage());
-                    // Continue with other files even if one fails
-                }
-            }
-        }).start();
-    }
-
     public List<Course> searchCourses(String keyword) {
         return courseRepository.findAll().stream()
                 .filter(c -> c.getTitle().toLowerCase().contains(keyword.toLowerCase()) ||
@@ -167,11 +144,17 @@ public class CourseService {
         resource.setFileName(fileName);
         resource.setFileUrl(fileUrl);
         resource.setFileType(fileType);
-        // Set default file size if not provided
-        resource.setFileSize(0L);
+        describeStoredFile(resource);
         return resourceRepository.save(resource);
     }
 
+    // Size and content hash recorded when the file was uploaded; 0 and none for files from elsewhere
+    public void describeStoredFile(Resource resource) {
+        Optional<StoredFileService.StoredFile> stored = storedFileService.find(extractFileIdFromNhostUrl(resource.getFileUrl()));
+        resource.setFileSize(stored.map(StoredFileService.StoredFile::fileSize).orElse(0L));
+        resource.setContentHash(stored.map(StoredFileService.StoredFile::contentHash).orElse(null));
+    }
+
     public List<Resource> getResourcesByCourse(Course course) {
         return resourceRepository.findByCourse(course);
     }
@@ -181,13 +164,8 @@ public class CourseService {
             // Delete the resource from database first (fast operation)
             resourceRepository.deleteById(resourceId);
             
-            // Delete file from Nhost storage asynchronously
-            if (resource.getFileUrl() != null && !resource.getFileUrl().isEmpty()) {
-                String fileId = extractFileIdFromNhostUrl(resource.getFileUrl());
-                if (fileId != null) {
-                    deleteFilesAsync(List.of(fileId));
-                }
-            }
+            // Released rather than deleted: other courses may share the stored file
+            storedFileService.release(extractFileIdFromNhostUrl(resource.getFileUrl()));
         });
     }
 
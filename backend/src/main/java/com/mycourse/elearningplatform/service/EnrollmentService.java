@@ -0,0 +1,62 @@
+package com.mycourse.elearningplatform.service;
+
+import com.mycourse.elearningplatform.model.Course;
+import com.mycourse.elearningplatform.model.Enrollment;
+import com.mycourse.elearningplatform.model.User;
+import com.mycourse.elearningplatform.repository.CourseRepository;
+import com.mycourse.elearningplatform.repository.EnrollmentRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Optional;
+
+/**
+ * Enrolling and unenrolling. The enrollment row and its funnel counters change in one transaction;
+ * notifications are left to the caller, to send once the change is committed.
+ */
+@Service
+public class EnrollmentService {
+    @Autowired
+    private EnrollmentRepository enrollmentRepository;
+    @Autowired
+    private CourseRepository courseRepository;
+    @Autowired
+    private CourseFunnelService courseFunnelService;
+    @Autowired
+    private ProgressWriteBuffer progressWriteBuffer;
+    @Autowired
+    private PlaybackCheckpointService playbackCheckpointService;
+
+    /**
+     * @return the new enrollment, or empty if the user is already enrolled
+     */
+    @Transactional
+    public Optional<Enrollment> enroll(User user, Long courseId) {
+        Course course = courseRepository.findById(courseId).orElseThrow(() -> new RuntimeException("Course not found"));
+        if (enrollmentRepository.existsByUserIdAndCourseId(user.getId(), courseId)) {
+            return Optional.empty();
+        }
+        Enrollment enrollment = new Enrollment(user, course);
+        enrollmentRepository.save(enrollment);
+        courseFunnelService.recordEnrolled(courseId, enrollment.getEnrolledAt());
+        return Optional.of(enrollment);
+    }
+
+    /**
+     * @return the deleted enrollment, or empty if the user was not enrolled
+     */
+    @Transactional
+    public Optional<Enrollment> unenroll(Long userId, Long courseId) {
+        Optional<Enrollment> enrollment = enrollmentRepository.findByUserIdAndCourseId(userId, courseId);
+        if (enrollment.isEmpty()) {
+            return Optional.empty();
+        }
+        // Buffered progress and checkpoints would otherwise be flushed to the deleted row
+        progressWriteBuffer.discard(userId, courseId);
+        playbackCheckpointService.discard(userId, courseId);
+        enrollmentRepository.delete(enrollment.get());
+        courseFunnelService.recordUnenrolled(courseId, enrollment.get().getEnrolledAt(), enrollment.get().getProgress());
+        return enrollment;
+    }
+}
@@ -0,0 +1,256 @@
+package com.mycourse.elearningplatform.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Item analysis for quiz questions, updated as each attempt is graded instead of by scanning attempts:
+ * difficulty (share answered correctly), discrimination (point-biserial correlation between getting
+ * the item right and the attempt's total score, from Welford running mean/variance), how often each
+ * option was picked, and time spent. Kept in memory per question and written to quiz_item_stats in
+ * the background, so a crash loses at most one flush interval of statistics.
+ */
+@Service
+public class ItemStatisticsService {
+    private static final int BATCH_SIZE = 500;
+    // Time spent is reported by the client; cap it at the quiz's time limit, or this for untimed quizzes
+    private static final double MAX_SECONDS_PER_QUESTION = 3600;
+
+    // Running statistics of one question; all access is synchronized on the instance
+    private static final class ItemStats {
+        final long questionId;
+        final long quizId;
+        long attempts;
+        long correct;
+        // Welford over the attempt percentage of everyone who saw the item
+        double scoreMean;
+        double scoreM2;
+        // Running mean of the attempt percentage of those who got the item right
+        double correctScoreMean;
+        long timeCount;
+        double timeMean;
+        double timeM2;
+        long[] optionCounts;
+
+        ItemStats(long questionId, long quizId, int optionCount) {
+            this.questionId = questionId;
+            this.quizId = quizId;
+            this.optionCounts = new long[optionCount];
+        }
+
+        void add(boolean right, double attemptScore, long selectedOptions, Double seconds) {
+            attempts++;
+            double delta = attemptScore - scoreMean;
+            scoreMean += delta / attempts;
+            scoreM2 += delta * (attemptScore - scoreMean);
+            if (right) {
+                correct++;
+                correctScoreMean += (attemptScore - correctScoreMean) / correct;
+            }
+            for (int option = 0; option < optionCounts.length; option++) {
+                if ((selectedOptions & (1L << option)) != 0) optionCounts[option]++;
+            }
+            if (seconds != null && seconds >= 0) {
+                timeCount++;
+                double timeDelta = seconds - timeMean;
+                timeMean += timeDelta / timeCount;
+                timeM2 += timeDelta * (seconds - timeMean);
+            }
+        }
+
+        Map<String, Object> snapshot() {
+            Map<String, Object> stats = new HashMap<>();
+            stats.put("attempts", attempts);
+            stats.put("difficulty", attempts == 0 ? null : (double) correct / attempts);
+            stats.put("discrimination", pointBiserial());
+            List<Double> rates = new ArrayList<>(optionCounts.length);
+            for (long count : optionCounts) rates.add(attempts == 0 ? 0.0 : (double) count / attempts);
+            stats.put("optionSelectionRates", rates);
+            stats.put("meanTimeSeconds", timeCount == 0 ? null : timeMean);
+            stats.put("timeStdDevSeconds", timeCount < 2 ? null : Math.sqrt(timeM2 / (timeCount - 1)));
+            return stats;
+        }
+
+        // r_pb = (M1 - M0) / s * sqrt(p * q), with M0 derived from the overall and the "right" means
+        private Double pointBiserial() {
+            long wrong = attempts - correct;
+            if (correct == 0 || wrong == 0 || scoreM2 <= 0) return null;
+            double p = (double) correct / attempts;
+            double wrongScoreMean = (attempts * scoreMean - correct * correctScoreMean) / wrong;
+            double stdDev = Math.sqrt(scoreM2 / attempts);
+            return (correctScoreMean - wrongScoreMean) / stdDev * Math.sqrt(p * (1 - p));
+        }
+    }
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final ConcurrentHashMap<Long, ItemStats> stats = new ConcurrentHashMap<>();
+    // Quizzes whose persisted statistics have been loaded into memory
+    private final Set<Long> loadedQuizzes = ConcurrentHashMap.newKeySet();
+    private final Set<Long> dirty = ConcurrentHashMap.newKeySet();
+
+    @PostConstruct
+    public void createTable() {
+        jdbcTemplate.execute(
+                "CREATE TABLE IF NOT EXISTS quiz_item_stats (" +
+                "question_id bigint PRIMARY KEY, " +
+                "quiz_id bigint NOT NULL, " +
+                "attempts bigint NOT NULL, " +
+                "correct bigint NOT NULL, " +
+                "score_mean double precision NOT NULL, " +
+                "score_m2 double precision NOT NULL, " +
+                "correct_score_mean double precision NOT NULL, " +
+                "time_count bigint NOT NULL, " +
+                "time_mean double precision NOT NULL, " +
+                "time_m2 double precision NOT NULL, " +
+                "option_counts text)");
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS idx_quiz_item_stats_quiz_id ON quiz_item_stats (quiz_id)");
+    }
+
+    /**
+     * Add one graded attempt. timeSpent maps question ids to seconds, as reported by the client.
+     */
+    public void record(QuizGradingService.CompiledQuiz quiz, QuizGradingService.GradeResult grade, Map<String, Object> timeSpent) {
+        ensureLoaded(quiz.getQuizId());
+        for (QuizGradingService.ItemResponse item : grade.items()) {
+            long questionId = quiz.getQuestionId(item.questionIndex());
+            int optionCount = quiz.getOptions(item.questionIndex()).size();
+            ItemStats itemStats = stats.computeIfAbsent(questionId, id -> new ItemStats(id, quiz.getQuizId(), optionCount));
+            Double seconds = plausibleSeconds(quiz, timeSpent != null ? timeSpent.get(String.valueOf(questionId)) : null);
+            synchronized (itemStats) {
+                itemStats.add(item.correct(), grade.percentage(), item.selectedOptions(), seconds);
+            }
+            dirty.add(questionId);
+        }
+    }
+
+    // A forged or broken value would skew the running mean for good, so it is clamped or dropped first
+    private static Double plausibleSeconds(QuizGradingService.CompiledQuiz quiz, Object reported) {
+        if (!(reported instanceof Number number)) return null;
+        double seconds = number.doubleValue();
+        if (!Double.isFinite(seconds) || seconds < 0) return null;
+        double max = quiz.getTimeLimitSeconds() > 0 ? quiz.getTimeLimitSeconds() : MAX_SECONDS_PER_QUESTION;
+        return Math.min(seconds, max);
+    }
+
+    /**
+     * Statistics of every question of the quiz, in authoring order.
+     */
+    public List<Map<String, Object>> getQuizStatistics(QuizGradingService.CompiledQuiz quiz) {
+        ensureLoaded(quiz.getQuizId());
+        List<Map<String, Object>> result = new ArrayList<>(quiz.getQuestionCount());
+        for (int i = 0; i < quiz.getQuestionCount(); i++) {
+            ItemStats itemStats = stats.get(quiz.getQuestionId(i));
+            Map<String, Object> row;
+            if (itemStats != null) {
+                synchronized (itemStats) {
+                    row = itemStats.snapshot();
+                }
+            } else {
+                row = new ItemStats(quiz.getQuestionId(i), quiz.getQuizId(), quiz.getOptions(i).size()).snapshot();
+            }
+            row.put("questionId", quiz.getQuestionId(i));
+            row.put("type", quiz.getType(i));
+            row.put("prompt", quiz.getPrompt(i));
+            row.put("options", quiz.getOptions(i));
+            result.add(row);
+        }
+        return result;
+    }
+
+    // Forget statistics of a quiz whose questions were replaced or that was deleted.
+    // Under the flush lock, so a running flush cannot write the quiz's rows back after the delete
+    public synchronized void reset(Long quizId) {
+        for (Iterator<ItemStats> it = stats.values().iterator(); it.hasNext(); ) {
+            ItemStats s = it.next();
+            if (s.quizId != quizId) continue;
+            it.remove();
+            dirty.remove(s.questionId);
+        }
+        jdbcTemplate.update("DELETE FROM quiz_item_stats WHERE quiz_id = ?", quizId);
+        loadedQuizzes.remove(quizId);
+    }
+
+    @Scheduled(fixedDelayString = "${app.quiz.item-stats-flush-interval-ms:30000}")
+    public synchronized void flush() {
+        if (dirty.isEmpty()) return;
+        List<Object[]> rows = new ArrayList<>();
+        for (Long questionId : List.copyOf(dirty)) {
+            dirty.remove(questionId);
+            ItemStats s = stats.get(questionId);
+            if (s == null) continue;
+            synchronized (s) {
+                rows.add(new Object[]{s.questionId, s.quizId, s.attempts, s.correct, s.scoreMean, s.scoreM2,
+                        s.correctScoreMean, s.timeCount, s.timeMean, s.timeM2,
+                        Arrays.stream(s.optionCounts).mapToObj(Long::toString).collect(Collectors.joining(",")),
+                        s.questionId});
+            }
+        }
+
+        for (int from = 0; from < rows.size(); from += BATCH_SIZE) {
+            List<Object[]> chunk = rows.subList(from, Math.min(from + BATCH_SIZE, rows.size()));
+            try {
+                // An attempt graded against a replaced or deleted question set may record stats after
+                // reset(); rows of questions that no longer exist are not written back
+                jdbcTemplate.batchUpdate(
+                        "INSERT INTO quiz_item_stats (question_id, quiz_id, attempts, correct, score_mean, score_m2, " +
+                        "correct_score_mean, time_count, time_mean, time_m2, option_counts) " +
+                        "SELECT ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ? WHERE EXISTS (SELECT 1 FROM quiz_questions WHERE id = ?) " +
+                        "ON CONFLICT (question_id) DO UPDATE SET attempts = EXCLUDED.attempts, correct = EXCLUDED.correct, " +
+                        "score_mean = EXCLUDED.score_mean, score_m2 = EXCLUDED.score_m2, " +
+                        "correct_score_mean = EXCLUDED.correct_score_mean, time_count = EXCLUDED.time_count, " +
+                        "time_mean = EXCLUDED.time_mean, time_m2 = EXCLUDED.time_m2, option_counts = EXCLUDED.option_counts",
+                        chunk);
+            } catch (Exception e) {
+                // Values are absolute, so marking them dirty again is enough to retry
+                System.err.println("[ERROR] Item statistics flush failed for " + chunk.size() + " questions: " + e.getMessage());
+                chunk.forEach(row -> dirty.add((Long) row[0]));
+            }
+        }
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        flush();
+    }
+
+    private void ensureLoaded(long quizId) {
+        if (loadedQuizzes.contains(quizId)) return;
+        synchronized (loadedQuizzes) {
+            if (loadedQuizzes.contains(quizId)) return;
+            jdbcTemplate.query("SELECT * FROM quiz_item_stats WHERE quiz_id = ?", rs -> {
+                String counts = rs.getString("option_counts");
+                long[] optionCounts = counts == null || counts.isEmpty()
+                        ? new long[0]
+                        : Arrays.stream(counts.split(",")).mapToLong(Long::parseLong).toArray();
+                ItemStats s = new ItemStats(rs.getLong("question_id"), quizId, optionCounts.length);
+                s.optionCounts = optionCounts;
+                s.attempts = rs.getLong("attempts");
+                s.correct = rs.getLong("correct");
+                s.scoreMean = rs.getDouble("score_mean");
+                s.scoreM2 = rs.getDouble("score_m2");
+                s.correctScoreMean = rs.getDouble("correct_score_mean");
+                s.timeCount = rs.getLong("time_count");
+                s.timeMean = rs.getDouble("time_mean");
+                s.timeM2 = rs.getDouble("time_m2");
+                stats.putIfAbsent(s.questionId, s);
+            }, quizId);
+            loadedQuizzes.add(quizId);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.mycourse.elearningplatform.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+
+/**
+ * Per-course quiz leaderboards on Enrollment.averageQuizScore, held in memory as order-statistic
+ * trees so score updates and rank lookups are O(log n) instead of an ORDER BY per view.
+ * Ties go to whoever reached the score first. Rebuilt from graded attempts at startup.
+ * Every update carries the enrollment's quiz score version, so an older average arriving after a
+ * newer one (grading workers and quiz deletes commit and publish independently) is ignored.
+ */
+@Service
+public class LeaderboardService {
+
+    public record Standing(long userId, int score, LocalDateTime achievedAt, int rank, int participants) {}
+
+    private static final class Board {
+        final RankTree tree = new RankTree();
+        final Map<Long, RankTree.Entry> byUser = new HashMap<>();
+        // Quiz score version behind each user's current entry, kept when the entry is dropped
+        final Map<Long, Long> versions = new HashMap<>();
+    }
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final ConcurrentHashMap<Long, Board> boards = new ConcurrentHashMap<>();
+
+    // Once the schema is in place: ddl-auto may still be adding the enrollment columns read here
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        try {
+            jdbcTemplate.query(
+                    "SELECT e.course_id, e.user_id, e.average_quiz_score, " +
+                    "COALESCE(e.quiz_score_version, e.quiz_attempt_count, 0) AS version, MAX(a.graded_at) AS achieved_at " +
+                    "FROM enrollments e " +
+                    "JOIN quizzes q ON q.course_id = e.course_id " +
+                    "JOIN quiz_attempts a ON a.quiz_id = q.id AND a.user_id = e.user_id AND a.status = 'GRADED' " +
+                    "WHERE e.average_quiz_score IS NOT NULL " +
+                    "GROUP BY e.course_id, e.user_id, e.average_quiz_score, e.quiz_score_version, e.quiz_attempt_count",
+                    rs -> {
+                        update(rs.getLong("course_id"), rs.getLong("user_id"), rs.getInt("average_quiz_score"),
+                                rs.getTimestamp("achieved_at").toLocalDateTime(), rs.getLong("version"));
+                    });
+        } catch (Exception e) {
+            System.err.println("[ERROR] Could not rebuild quiz leaderboards: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Set the user's score (null takes the user off the board) unless the board already has one
+     * from a later version.
+     */
+    public void update(long courseId, long userId, Integer score, LocalDateTime achievedAt, long version) {
+        Board board = boards.computeIfAbsent(courseId, id -> new Board());
+        synchronized (board) {
+            Long current = board.versions.get(userId);
+            if (current != null && current >= version) return;
+            board.versions.put(userId, version);
+            RankTree.Entry previous = board.byUser.get(userId);
+            if (previous != null) {
+                // Same score keeps the earlier time, so re-taking a quiz never costs a tie-break
+                if (score != null && previous.score() == score) return;
+                board.tree.remove(previous);
+                board.byUser.remove(userId);
+            }
+            if (score == null) return;
+            RankTree.Entry entry = new RankTree.Entry(userId, score, achievedAt);
+            board.tree.insert(entry);
+            board.byUser.put(userId, entry);
+        }
+    }
+
+    public void remove(long courseId, long userId) {
+        Board board = boards.get(courseId);
+        if (board == null) return;
+        synchronized (board) {
+            board.versions.remove(userId);
+            RankTree.Entry previous = board.byUser.remove(userId);
+            if (previous != null) {
+                board.tree.remove(previous);
+            }
+        }
+    }
+
+    public List<Standing> top(long courseId, int n) {
+        Board board = boards.get(courseId);
+        if (board == null) return List.of();
+        synchronized (board) {
+            List<RankTree.Entry> entries = board.tree.top(n);
+            int participants = board.tree.size();
+            return IntStream.range(0, entries.size())
+                    .mapToObj(i -> new Standing(entries.get(i).userId(), entries.get(i).score(), entries.get(i).achievedAt(), i + 1, participants))
+                    .toList();
+        }
+    }
+
+    public Optional<Standing> standing(long courseId, long userId) {
+        Board board = boards.get(courseId);
+        if (board == null) return Optional.empty();
+        synchronized (board) {
+            RankTree.Entry entry = board.byUser.get(userId);
+            if (entry == null) return Optional.empty();
+            return Optional.of(new Standing(userId, entry.score(), entry.achievedAt(), board.tree.rank(entry), board.tree.size()));
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.mycourse.elearningplatform.service;
+
+import com.mycourse.elearningplatform.model.Lesson;
+import com.mycourse.elearningplatform.repository.LessonRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+
+/**
+ * Per-lesson completion stored as one bitmap per enrollment (enrollments.completed_lessons),
+ * indexed by Lesson.ordinal. A 200-lesson course costs 25 bytes per student instead of 200 rows.
+ * Bits are set with a single UPDATE so concurrent completions never overwrite each other.
+ */
+@Service
+public class LessonCompletionService {
+    // Grows the bitmap with zero bytes when needed, then sets the bit; PostgreSQL numbers bits
+    // from the least significant bit of the first byte, the same layout as BitSet.valueOf(byte[])
+    private static final String SET_BIT_SQL =
+            "UPDATE enrollments SET completed_lessons = set_bit(" +
+            "CASE WHEN length(COALESCE(completed_lessons, ''::bytea)) > ? THEN completed_lessons " +
+            "ELSE COALESCE(completed_lessons, ''::bytea) || decode(repeat('00', ? + 1 - length(COALESCE(completed_lessons, ''::bytea))), 'hex') END, " +
+            "?, 1) " +
+            "WHERE user_id = ? AND course_id = ? RETURNING completed_lessons";
+
+    @Autowired
+    private LessonRepository lessonRepository;
+    @Autowired
+    private LessonService lessonService;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private ProgressWriteBuffer progressWriteBuffer;
+    @Autowired
+    private ActivityEventLog activityEventLog;
+
+    /**
+     * Mark a lesson complete and update course progress from the completed-lesson count.
+     * @return the completion summary, or empty if the user is not enrolled in the course
+     * @throws NoSuchElementException if the lesson is not part of the course
+     */
+    public Optional<Map<String, Object>> markComplete(Long userId, Long courseId, Long lessonId) {
+        List<Lesson> lessons = lessonsOf(courseId);
+        Lesson lesson = lessons.stream()
+                .filter(l -> l.getId().equals(lessonId))
+                .findFirst()
+                .orElseThrow(() -> new NoSuchElementException("Lesson not found"));
+
+        int bit = lesson.getOrdinal();
+        List<byte[]> updated = jdbcTemplate.query(SET_BIT_SQL,
+                (rs, rowNum) -> rs.getBytes(1),
+                bit / 8, bit / 8, bit, userId, courseId);
+        if (updated.isEmpty()) {
+            return Optional.empty();
+        }
+
+        activityEventLog.record(ActivityEventLog.LESSON_COMPLETED, userId, courseId, lessonId, null);
+        Map<String, Object> summary = summarize(courseId, lessons, BitSet.valueOf(updated.get(0)));
+        progressWriteBuffer.record(userId, courseId, (Integer) summary.get("percentage"));
+        return Optional.of(summary);
+    }
+
+    /**
+     * Completion map for one enrollment.
+     * @return the completion summary, or empty if the user is not enrolled in the course
+     */
+    public Optional<Map<String, Object>> getCompletion(Long userId, Long courseId) {
+        List<Optional<byte[]>> rows = jdbcTemplate.query(
+                "SELECT completed_lessons FROM enrollments WHERE user_id = ? AND course_id = ?",
+                (rs, rowNum) -> Optional.ofNullable(rs.getBytes(1)),
+                userId, courseId);
+        if (rows.isEmpty()) {
+            return Optional.empty();
+        }
+        BitSet completed = rows.get(0).map(BitSet::valueOf).orElseGet(BitSet::new);
+        return Optional.of(summarize(courseId, lessonsOf(courseId), completed));
+    }
+
+    private Map<String, Object> summarize(Long courseId, List<Lesson> lessons, BitSet completed) {
+        // Only count bits of lessons that still exist; ordinals of deleted lessons are never reused
+        // (LessonService.allocateOrdinals), so their bits are simply ignored
+        BitSet live = new BitSet();
+        lessons.forEach(l -> live.set(l.getOrdinal()));
+        live.and(completed);
+        int completedCount = live.cardinality();
+        int total = lessons.size();
+
+        List<Map<String, Object>> lessonStates = new ArrayList<>();
+        List<Long> completedLessonIds = new ArrayList<>();
+        Long nextLessonId = null;
+        for (Lesson lesson : lessons) {
+            boolean done = completed.get(lesson.getOrdinal());
+            Map<String, Object> state = new HashMap<>();
+            state.put("lessonId", lesson.getId());
+            state.put("completed", done);
+            lessonStates.add(state);
+            if (done) {
+                completedLessonIds.add(lesson.getId());
+            } else if (nextLessonId == null) {
+                nextLessonId = lesson.getId();
+            }
+        }
+
+        Map<String, Object> summary = new HashMap<>();
+        summary.put("courseId", courseId);
+        summary.put("lessons", lessonStates);
+        summary.put("completedLessonIds", completedLessonIds);
+        summary.put("completedCount", completedCount);
+        summary.put("totalLessons", total);
+        summary.put("percentage", total == 0 ? 0 : completedCount * 100 / total);
+        summary.put("nextLessonId", nextLessonId);
+        return summary;
+    }
+
+    // Display order, so nextLessonId is the first unfinished lesson as students see them
+    private List<Lesson> lessonsOf(Long courseId) {
+        List<Lesson> lessons = lessonRepository.findByCourseIdInDisplayOrder(courseId);
+        if (lessons.stream().anyMatch(l -> l.getOrdinal() == null)) {
+            assignMissingOrdinals(courseId);
+            lessons = lessonRepository.findByCourseIdInDisplayOrder(courseId);
+        }
+        return lessons;
+    }
+
+    // Lessons created before ordinals existed get the next free ordinals, in id order
+    private synchronized void assignMissingOrdinals(Long courseId) {
+        List<Lesson> changed = lessonRepository.findByCourseIdOrderByOrdinalAscIdAsc(courseId).stream()
+                .filter(lesson -> lesson.getOrdinal() == null)
+                .toList();
+        if (changed.isEmpty()) return;
+        int next = lessonService.allocateOrdinals(courseId, changed.size());
+        for (Lesson lesson : changed) {
+            lesson.setOrdinal(next++);
+        }
+        lessonRepository.saveAll(changed);
+    }
+}
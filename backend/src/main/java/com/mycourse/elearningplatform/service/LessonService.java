@@ -6,46 +6,149 @@ import com.mycourse.elearningplatform.model.Lesson;
 import com.mycourse.elearningplatform.repository.CourseRepository;
 import com.mycourse.elearningplatform.repository.LessonRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
-import java.util.stream.Collectors;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Lessons of a course in display order. The ordered list is built once per course into an
+ * unmodifiable manifest (DTOs with formatted dates and extracted file ids) and served from memory
+ * until a lesson is added, deleted or the course is reordered, so the lesson list shown on every
+ * player page load costs no queries. Manifest DTOs are shared and must not be modified.
+ */
 @Service
 public class LessonService {
     @Autowired
     private LessonRepository lessonRepository;
     @Autowired
     private CourseRepository courseRepository;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private TranscriptSearchService transcriptSearchService;
+
+    private final ConcurrentHashMap<Long, List<LessonDto>> manifests = new ConcurrentHashMap<>();
 
+    @Transactional
     public LessonDto addLesson(Long courseId, LessonDto lessonDto) {
         Optional<Course> courseOpt = courseRepository.findById(courseId);
         if (courseOpt.isEmpty()) throw new RuntimeException("Course not found");
         Course course = courseOpt.get();
+        if (lessonRepository.existsUnpositionedByCourseId(courseId)) {
+            // Pin the current order first, so the new lesson lands after every existing one
+            assignPositions(courseId, lessonRepository.findIdsByCourseIdInDisplayOrder(courseId));
+        }
         Lesson lesson = new Lesson();
         lesson.setTitle(lessonDto.getTitle());
         lesson.setDescription(lessonDto.getDescription());
         lesson.setContentUrl(lessonDto.getContentUrl());
         lesson.setCourse(course);
+        lesson.setOrdinal(allocateOrdinals(courseId, 1));
+        lesson.setPosition(lessonRepository.findMaxPositionByCourseId(courseId) + 1);
         lessonRepository.save(lesson);
+        evict(courseId);
         return toDto(lesson);
     }
 
     public List<LessonDto> getLessonsByCourse(Long courseId) {
-        Optional<Course> courseOpt = courseRepository.findById(courseId);
-        if (courseOpt.isEmpty()) throw new RuntimeException("Course not found");
-        Course course = courseOpt.get();
-        List<Lesson> lessons = lessonRepository.findByCourse(course);
-        return lessons.stream().map(this::toDto).collect(Collectors.toList());
+        List<LessonDto> cached = manifests.get(courseId);
+        if (cached != null) {
+            return cached;
+        }
+        List<Lesson> lessons = lessonRepository.findByCourseIdInDisplayOrder(courseId);
+        if (lessons.isEmpty() && !courseRepository.existsById(courseId)) throw new RuntimeException("Course not found");
+        List<LessonDto> manifest = lessons.stream().map(this::toDto).toList();
+        // Built outside the map lock; an eviction racing this load is repeated after commit (see evict)
+        manifests.put(courseId, manifest);
+        return manifest;
+    }
+
+    /**
+     * Put every lesson of the course in the given order with one UPDATE.
+     * @throws IllegalArgumentException unless the ids are exactly the course's lessons
+     */
+    @Transactional
+    public List<LessonDto> reorder(Long courseId, List<Long> lessonIds) {
+        // Ids only: entities loaded here would keep their old positions for the reload below
+        Set<Long> existing = new HashSet<>(lessonRepository.findIdsByCourseIdInDisplayOrder(courseId));
+        if (lessonIds.size() != existing.size() || !existing.equals(new HashSet<>(lessonIds))) {
+            throw new IllegalArgumentException("Lesson ids must list every lesson of the course exactly once");
+        }
+        assignPositions(courseId, lessonIds);
+        evict(courseId);
+        return lessonIds.isEmpty() ? List.of() : loadManifest(courseId);
+    }
+
+    /**
+     * Reserve the next count lesson ordinals of the course and return the first. Ordinals come from
+     * a per-course counter that only goes up, so one freed by a deleted lesson is never handed out
+     * again (old completion bits would count for the new lesson), and the row lock on the course
+     * keeps concurrent adds from taking the same one. Courses from before the counter start it
+     * after their highest ordinal.
+     */
+    public int allocateOrdinals(Long courseId, int count) {
+        Integer next = jdbcTemplate.queryForObject(
+                "UPDATE courses SET next_lesson_ordinal = GREATEST(COALESCE(next_lesson_ordinal, 0), " +
+                "(SELECT COALESCE(MAX(ordinal), -1) + 1 FROM lesson WHERE course_id = ?)) + ? " +
+                "WHERE id = ? RETURNING next_lesson_ordinal",
+                Integer.class, courseId, count, courseId);
+        if (next == null) throw new RuntimeException("Course not found");
+        return next - count;
     }
 
     public Optional<Lesson> getLessonById(Long lessonId) {
         return lessonRepository.findById(lessonId);
     }
+
+    @Transactional
     public void deleteLessonById(Long lessonId) {
-        lessonRepository.deleteById(lessonId);
+        Optional<Lesson> lesson = lessonRepository.findById(lessonId);
+        if (lesson.isEmpty()) return;
+        Long courseId = lesson.get().getCourse().getId();
+        lessonRepository.delete(lesson.get());
+        transcriptSearchService.removeTranscript(courseId, lessonId);
+        evict(courseId);
+    }
+
+    private List<LessonDto> loadManifest(Long courseId) {
+        return lessonRepository.findByCourseIdInDisplayOrder(courseId).stream().map(this::toDto).toList();
+    }
+
+    private void assignPositions(Long courseId, List<Long> lessonIds) {
+        if (lessonIds.isEmpty()) return;
+        StringBuilder sql = new StringBuilder("UPDATE lesson l SET position = v.position FROM (VALUES ");
+        List<Object> args = new ArrayList<>(lessonIds.size() * 2 + 1);
+        for (int i = 0; i < lessonIds.size(); i++) {
+            sql.append(i == 0 ? "" : ", ").append("(CAST(? AS bigint), CAST(? AS integer))");
+            args.add(lessonIds.get(i));
+            args.add(i);
+        }
+        sql.append(") AS v(id, position) WHERE l.id = v.id AND l.course_id = ?");
+        args.add(courseId);
+        jdbcTemplate.update(sql.toString(), args.toArray());
+    }
+
+    private void evict(Long courseId) {
+        manifests.remove(courseId);
+        // Again after commit, in case a concurrent load read the old rows in the meantime
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    manifests.remove(courseId);
+                }
+            });
+        }
     }
 
     private LessonDto toDto(Lesson lesson) {
@@ -55,7 +158,8 @@ public class LessonService {
                 lesson.getDescription(),
                 lesson.getContentUrl(),
                 lesson.getCreatedAt().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME),
-                extractFileIdFromNhostUrl(lesson.getContentUrl())
+                extractFileIdFromNhostUrl(lesson.getContentUrl()),
+                lesson.getPosition()
         );
     }
 
@@ -65,4 +169,4 @@ public class LessonService {
         if (idx == -1) return null;
         return url.substring(idx + 10).split("[/?]")[0];
     }
-} 
\ No newline at end of file
+}
@@ -0,0 +1,579 @@
+package com.mycourse.elearningplatform.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Live classroom quizzes. The instructor opens a session on a quiz and moves through its questions;
+ * enrolled students join a Server-Sent Events stream and answer with plain POSTs. Session state
+ * (roster, answers to the open question, scores) lives only in memory and is updated with atomics,
+ * so a burst of answers never takes a lock or touches the database. Every broadcast is serialized
+ * once and fanned out through small per-connection queues drained by a shared sender pool; a
+ * participant whose queue overflows, or whose send stalls past the send timeout, is disconnected and
+ * rejoins with their score intact.
+ * Final standings are written to live_quiz_results in one batch when the session ends.
+ */
+@Service
+public class LiveQuizService {
+    public static final String LOBBY = "LOBBY";
+    public static final String QUESTION = "QUESTION";
+    public static final String REVEAL = "REVEAL";
+    public static final String ENDED = "ENDED";
+
+    public enum AnswerStatus { ACCEPTED, NOT_JOINED, QUESTION_CLOSED, ALREADY_ANSWERED }
+
+    private static final int QUEUE_CAPACITY = 64;
+    private static final int SENDER_THREADS = 8;
+    private static final long SEND_TIMEOUT_MS = 5000;
+    private static final long STREAM_TIMEOUT_MS = 3 * 60 * 60 * 1000;
+    // Sessions the host has not touched for this long are ended and saved
+    private static final long IDLE_TIMEOUT_MS = 60 * 60 * 1000;
+    private static final int LEADERBOARD_SIZE = 10;
+    private static final int BATCH_SIZE = 1000;
+
+    public record SessionView(long id, long quizId, long courseId, long hostId, String state,
+                              Integer question, int questionCount, int participants) {}
+
+    public record Standing(int rank, long userId, String name, int score, int correctAnswers) {}
+
+    private record Message(String type, String json) {}
+
+    private static final Message PING = new Message("ping", "{}");
+    // Queued after the last event so the stream closes only once everything before it was sent
+    private static final Message CLOSE = new Message("close", null);
+
+    private static final class Connection {
+        final SseEmitter emitter = new SseEmitter(STREAM_TIMEOUT_MS);
+        final ArrayBlockingQueue<Message> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        final AtomicBoolean draining = new AtomicBoolean();
+        final AtomicBoolean closed = new AtomicBoolean();
+        volatile Runnable onClose;
+    }
+
+    private static final class Participant {
+        final long userId;
+        final String name;
+        final AtomicInteger score = new AtomicInteger();
+        final AtomicInteger correctAnswers = new AtomicInteger();
+        // Total answer time; equal scores are ranked by who answered faster
+        final AtomicLong responseMillis = new AtomicLong();
+        // Index of the last question answered; moving it with a CAS allows one answer per question
+        final AtomicInteger lastAnswered = new AtomicInteger(-1);
+        volatile boolean lastCorrect;
+        // Swapped atomically on rejoin, so two joins at once cannot both keep a stream open
+        final AtomicReference<Connection> connection = new AtomicReference<>();
+
+        Participant(long userId, String name) {
+            this.userId = userId;
+            this.name = name;
+        }
+    }
+
+    // Answers to one question; replaced, never reset, when the host moves on
+    private static final class Tally {
+        final int question;
+        final long openedAt = System.currentTimeMillis();
+        // Cleared when the question closes; answers being scored are counted in inFlight so that
+        // closing can wait for them, and no answer lands after the standings were taken
+        volatile boolean open = true;
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger answered = new AtomicInteger();
+        final AtomicInteger correct = new AtomicInteger();
+        final AtomicIntegerArray optionCounts;
+        final Message event;
+
+        Tally(int question, int optionCount, Message event) {
+            this.question = question;
+            this.optionCounts = new AtomicIntegerArray(optionCount);
+            this.event = event;
+        }
+    }
+
+    private static final class Session {
+        final long id;
+        final long hostId;
+        final QuizGradingService.CompiledQuiz quiz;
+        final LocalDateTime startedAt = LocalDateTime.now();
+        final ConcurrentHashMap<Long, Participant> participants = new ConcurrentHashMap<>();
+        final Set<Connection> hosts = ConcurrentHashMap.newKeySet();
+        volatile String state = LOBBY;
+        volatile Tally tally;
+        volatile long lastActivity = System.currentTimeMillis();
+        // Last counts sent by the progress tick; only touched by the scheduler thread
+        int reportedParticipants = -1;
+        int reportedAnswered = -1;
+
+        Session(long id, long hostId, QuizGradingService.CompiledQuiz quiz) {
+            this.id = id;
+            this.hostId = hostId;
+            this.quiz = quiz;
+        }
+    }
+
+    @Autowired
+    private QuizGradingService quizGradingService;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private final ConcurrentHashMap<Long, Session> sessions = new ConcurrentHashMap<>();
+    private final SseSenderPool senders = new SseSenderPool("live-quiz", SENDER_THREADS, SEND_TIMEOUT_MS);
+
+    @PostConstruct
+    public void createTable() {
+        jdbcTemplate.execute("CREATE SEQUENCE IF NOT EXISTS live_quiz_session_seq");
+        jdbcTemplate.execute(
+                "CREATE TABLE IF NOT EXISTS live_quiz_results (" +
+                "session_id bigint NOT NULL, " +
+                "quiz_id bigint NOT NULL, " +
+                "course_id bigint NOT NULL, " +
+                "user_id bigint NOT NULL, " +
+                "rank integer NOT NULL, " +
+                "score integer NOT NULL, " +
+                "correct_answers integer NOT NULL, " +
+                "questions_asked integer NOT NULL, " +
+                "started_at timestamp NOT NULL, " +
+                "ended_at timestamp NOT NULL, " +
+                "PRIMARY KEY (session_id, user_id))");
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS idx_live_quiz_results_quiz ON live_quiz_results (quiz_id)");
+    }
+
+    public SessionView create(long hostId, long quizId) {
+        QuizGradingService.CompiledQuiz quiz = quizGradingService.compiled(quizId);
+        if (quiz.getQuestionCount() == 0) {
+            throw new IllegalArgumentException("Quiz has no questions");
+        }
+        Long id = jdbcTemplate.queryForObject("SELECT nextval('live_quiz_session_seq')", Long.class);
+        Session session = new Session(id, hostId, quiz);
+        sessions.put(id, session);
+        return view(session);
+    }
+
+    public Optional<SessionView> find(long sessionId) {
+        return Optional.ofNullable(sessions.get(sessionId)).map(this::view);
+    }
+
+    /**
+     * Join (or rejoin) as a participant. A rejoin replaces the previous stream and keeps the score.
+     */
+    public SseEmitter join(long sessionId, long userId, String name) {
+        Session session = session(sessionId);
+        Participant participant = session.participants.computeIfAbsent(userId, id -> new Participant(id, name));
+        Connection connection = open();
+        Connection previous = participant.connection.getAndSet(connection);
+        if (previous != null) {
+            close(previous);
+        }
+        enqueue(connection, message("state", stateOf(session, participant)));
+        Tally tally = session.tally;
+        if (tally != null && QUESTION.equals(session.state)) {
+            enqueue(connection, tally.event);
+        }
+        return connection.emitter;
+    }
+
+    // The host's own stream: everything participants get, plus answer counts as they come in
+    public SseEmitter watch(long sessionId) {
+        Session session = session(sessionId);
+        Connection connection = open();
+        connection.onClose = () -> session.hosts.remove(connection);
+        session.hosts.add(connection);
+        enqueue(connection, message("state", stateOf(session, null)));
+        return connection.emitter;
+    }
+
+    /**
+     * Open the next question to everyone.
+     * @return false when there are no questions left
+     */
+    public boolean next(long sessionId) {
+        Session session = session(sessionId);
+        synchronized (session) {
+            if (ENDED.equals(session.state)) return false;
+            Tally current = session.tally;
+            int index = current == null ? 0 : current.question + 1;
+            if (index >= session.quiz.getQuestionCount()) return false;
+            if (current != null) closeTally(current);
+
+            QuizGradingService.CompiledQuiz quiz = session.quiz;
+            Map<String, Object> question = new HashMap<>();
+            question.put("index", index);
+            question.put("total", quiz.getQuestionCount());
+            question.put("questionId", quiz.getQuestionId(index));
+            question.put("type", quiz.getType(index));
+            question.put("prompt", quiz.getPrompt(index));
+            question.put("options", quiz.getOptions(index));
+            question.put("points", quiz.getPoints(index));
+            Tally tally = new Tally(index, quiz.getOptions(index).size(), message("question", question));
+            session.tally = tally;
+            session.state = QUESTION;
+            session.lastActivity = System.currentTimeMillis();
+            broadcast(session, tally.event);
+            return true;
+        }
+    }
+
+    // Close the open question: everyone gets the answer, the answer distribution and the leaderboard
+    public boolean reveal(long sessionId) {
+        Session session = session(sessionId);
+        synchronized (session) {
+            Tally tally = session.tally;
+            if (!QUESTION.equals(session.state) || tally == null) return false;
+            session.state = REVEAL;
+            closeTally(tally);
+            session.lastActivity = System.currentTimeMillis();
+
+            List<Standing> standings = standings(session);
+            int[] optionCounts = new int[tally.optionCounts.length()];
+            for (int i = 0; i < optionCounts.length; i++) optionCounts[i] = tally.optionCounts.get(i);
+            Map<String, Object> reveal = new HashMap<>();
+            reveal.put("index", tally.question);
+            reveal.put("questionId", session.quiz.getQuestionId(tally.question));
+            reveal.put("correctOptions", optionIndexes(session.quiz.getCorrectOptions(tally.question)));
+            reveal.put("answered", tally.answered.get());
+            reveal.put("correct", tally.correct.get());
+            reveal.put("optionCounts", optionCounts);
+            reveal.put("leaderboard", standings.subList(0, Math.min(LEADERBOARD_SIZE, standings.size())));
+            broadcast(session, message("reveal", reveal));
+            sendPersonal(session, standings, "result", tally.question);
+            return true;
+        }
+    }
+
+    /**
+     * End the session, save the final standings and close every stream.
+     * @return the final standings
+     */
+    public List<Standing> end(long sessionId) {
+        Session session = session(sessionId);
+        synchronized (session) {
+            if (ENDED.equals(session.state)) return List.of();
+            session.state = ENDED;
+            sessions.remove(sessionId);
+            Tally tally = session.tally;
+            if (tally != null) closeTally(tally);
+
+            List<Standing> standings = standings(session);
+            try {
+                persist(session, standings);
+            } catch (Exception e) {
+                System.err.println("[ERROR] Could not save live quiz session " + sessionId + ": " + e.getMessage());
+            }
+            broadcast(session, message("ended", Map.of(
+                    "leaderboard", standings.subList(0, Math.min(LEADERBOARD_SIZE, standings.size())),
+                    "participants", standings.size())));
+            sendPersonal(session, standings, "final", -1);
+            for (Participant participant : session.participants.values()) {
+                Connection connection = participant.connection.get();
+                if (connection != null) enqueue(connection, CLOSE);
+            }
+            for (Connection host : session.hosts) {
+                enqueue(host, CLOSE);
+            }
+            return standings;
+        }
+    }
+
+    public AnswerStatus answer(long sessionId, long userId, long questionId, Object answer) {
+        Session session = session(sessionId);
+        Participant participant = session.participants.get(userId);
+        if (participant == null) return AnswerStatus.NOT_JOINED;
+        Tally tally = session.tally;
+        if (tally == null || !QUESTION.equals(session.state) || session.quiz.getQuestionId(tally.question) != questionId) {
+            return AnswerStatus.QUESTION_CLOSED;
+        }
+        tally.inFlight.incrementAndGet();
+        try {
+            // Checked after announcing the answer: either closeTally sees it in flight and waits,
+            // or this sees the question closed
+            if (!tally.open) return AnswerStatus.QUESTION_CLOSED;
+            int previous = participant.lastAnswered.get();
+            if (previous >= tally.question || !participant.lastAnswered.compareAndSet(previous, tally.question)) {
+                return AnswerStatus.ALREADY_ANSWERED;
+            }
+            score(session, tally, participant, answer);
+            return AnswerStatus.ACCEPTED;
+        } finally {
+            tally.inFlight.decrementAndGet();
+        }
+    }
+
+    private void score(Session session, Tally tally, Participant participant, Object answer) {
+        QuizGradingService.ItemResponse item = quizGradingService.gradeItem(session.quiz, tally.question, answer);
+        participant.lastCorrect = item.correct();
+        participant.responseMillis.addAndGet(System.currentTimeMillis() - tally.openedAt);
+        if (item.correct()) {
+            participant.score.addAndGet(session.quiz.getPoints(tally.question));
+            participant.correctAnswers.incrementAndGet();
+            tally.correct.incrementAndGet();
+        }
+        long selected = item.selectedOptions();
+        while (selected != 0) {
+            tally.optionCounts.incrementAndGet(Long.numberOfTrailingZeros(selected));
+            selected &= selected - 1;
+        }
+        tally.answered.incrementAndGet();
+    }
+
+    // Stop taking answers and wait for the ones already being scored (a few microseconds each)
+    private static void closeTally(Tally tally) {
+        tally.open = false;
+        while (tally.inFlight.get() > 0) {
+            Thread.onSpinWait();
+        }
+    }
+
+    // Roster size and answer count, sent a few times a second only when they changed
+    @Scheduled(fixedRate = 250)
+    public void broadcastProgress() {
+        for (Session session : sessions.values()) {
+            Tally tally = session.tally;
+            int participants = session.participants.size();
+            int answered = tally != null && QUESTION.equals(session.state) ? tally.answered.get() : 0;
+            if (participants == session.reportedParticipants && answered == session.reportedAnswered) continue;
+            session.reportedParticipants = participants;
+            session.reportedAnswered = answered;
+            broadcast(session, message("progress", Map.of("participants", participants, "answered", answered)));
+        }
+    }
+
+    @Scheduled(fixedRate = 1000)
+    public void dropStalled() {
+        senders.checkStalled();
+    }
+
+    @Scheduled(fixedRate = 20000)
+    public void ping() {
+        long idleSince = System.currentTimeMillis() - IDLE_TIMEOUT_MS;
+        for (Session session : sessions.values()) {
+            if (session.lastActivity < idleSince) {
+                try {
+                    end(session.id);
+                } catch (RuntimeException e) {
+                    // Already ended by the host
+                }
+            } else {
+                broadcast(session, PING);
+            }
+        }
+    }
+
+    private List<Standing> standings(Session session) {
+        List<Participant> ranked = new ArrayList<>(session.participants.values());
+        ranked.sort(Comparator.comparingInt((Participant p) -> p.score.get()).reversed()
+                .thenComparingLong(p -> p.responseMillis.get())
+                .thenComparingLong(p -> p.userId));
+        List<Standing> standings = new ArrayList<>(ranked.size());
+        for (int i = 0; i < ranked.size(); i++) {
+            Participant p = ranked.get(i);
+            standings.add(new Standing(i + 1, p.userId, p.name, p.score.get(), p.correctAnswers.get()));
+        }
+        return standings;
+    }
+
+    // Each participant's own outcome; question is -1 for the final result
+    private void sendPersonal(Session session, List<Standing> standings, String type, int question) {
+        for (Standing standing : standings) {
+            Participant participant = session.participants.get(standing.userId());
+            Connection connection = participant != null ? participant.connection.get() : null;
+            if (connection == null || connection.closed.get()) continue;
+            Map<String, Object> result = new HashMap<>();
+            result.put("rank", standing.rank());
+            result.put("participants", standings.size());
+            result.put("score", standing.score());
+            result.put("correctAnswers", standing.correctAnswers());
+            if (question >= 0) {
+                result.put("answered", participant.lastAnswered.get() == question);
+                result.put("correct", participant.lastAnswered.get() == question && participant.lastCorrect);
+            }
+            enqueue(connection, message(type, result));
+        }
+    }
+
+    private void persist(Session session, List<Standing> standings) {
+        if (standings.isEmpty()) return;
+        Tally tally = session.tally;
+        int questionsAsked = tally != null ? tally.question + 1 : 0;
+        Timestamp startedAt = Timestamp.valueOf(session.startedAt);
+        Timestamp endedAt = Timestamp.valueOf(LocalDateTime.now());
+        transactionTemplate.executeWithoutResult(status -> {
+            for (int from = 0; from < standings.size(); from += BATCH_SIZE) {
+                List<Standing> chunk = standings.subList(from, Math.min(from + BATCH_SIZE, standings.size()));
+                StringBuilder sql = new StringBuilder(
+                        "INSERT INTO live_quiz_results (session_id, quiz_id, course_id, user_id, rank, score, " +
+                        "correct_answers, questions_asked, started_at, ended_at) VALUES ");
+                List<Object> args = new ArrayList<>(chunk.size() * 10);
+                for (Standing standing : chunk) {
+                    sql.append(args.isEmpty() ? "" : ", ").append("(?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
+                    args.add(session.id);
+                    args.add(session.quiz.getQuizId());
+                    args.add(session.quiz.getCourseId());
+                    args.add(standing.userId());
+                    args.add(standing.rank());
+                    args.add(standing.score());
+                    args.add(standing.correctAnswers());
+                    args.add(questionsAsked);
+                    args.add(startedAt);
+                    args.add(endedAt);
+                }
+                jdbcTemplate.update(sql.toString(), args.toArray());
+            }
+        });
+    }
+
+    private Map<String, Object> stateOf(Session session, Participant participant) {
+        Map<String, Object> state = new HashMap<>();
+        state.put("sessionId", session.id);
+        state.put("quizId", session.quiz.getQuizId());
+        state.put("title", session.quiz.getTitle());
+        state.put("state", session.state);
+        state.put("questionCount", session.quiz.getQuestionCount());
+        state.put("participants", session.participants.size());
+        if (participant != null) {
+            state.put("score", participant.score.get());
+            state.put("correctAnswers", participant.correctAnswers.get());
+        }
+        return state;
+    }
+
+    private SessionView view(Session session) {
+        Tally tally = session.tally;
+        return new SessionView(session.id, session.quiz.getQuizId(), session.quiz.getCourseId(), session.hostId,
+                session.state, tally != null ? tally.question : null, session.quiz.getQuestionCount(),
+                session.participants.size());
+    }
+
+    private Session session(long sessionId) {
+        Session session = sessions.get(sessionId);
+        if (session == null) throw new RuntimeException("Live session not found");
+        return session;
+    }
+
+    private static List<Integer> optionIndexes(long mask) {
+        List<Integer> indexes = new ArrayList<>();
+        while (mask != 0) {
+            indexes.add(Long.numberOfTrailingZeros(mask));
+            mask &= mask - 1;
+        }
+        return indexes;
+    }
+
+    private Message message(String type, Object data) {
+        try {
+            return new Message(type, objectMapper.writeValueAsString(data));
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("Could not serialize live quiz event", e);
+        }
+    }
+
+    private Connection open() {
+        Connection connection = new Connection();
+        connection.emitter.onCompletion(() -> closed(connection));
+        connection.emitter.onTimeout(() -> closed(connection));
+        connection.emitter.onError(e -> closed(connection));
+        return connection;
+    }
+
+    private void closed(Connection connection) {
+        connection.closed.set(true);
+        connection.queue.clear();
+        Runnable onClose = connection.onClose;
+        if (onClose != null) onClose.run();
+    }
+
+    private void broadcast(Session session, Message message) {
+        for (Participant participant : session.participants.values()) {
+            Connection connection = participant.connection.get();
+            if (connection != null) enqueue(connection, message);
+        }
+        for (Connection host : session.hosts) {
+            enqueue(host, message);
+        }
+    }
+
+    private void enqueue(Connection connection, Message message) {
+        if (connection.closed.get()) return;
+        if (!connection.queue.offer(message)) {
+            // Too far behind to catch up; the client rejoins and gets the current state
+            close(connection);
+            return;
+        }
+        if (connection.draining.compareAndSet(false, true)) {
+            senders.execute(() -> drain(connection));
+        }
+    }
+
+    private void drain(Connection connection) {
+        try {
+            Message message;
+            while (!connection.closed.get() && (message = connection.queue.poll()) != null) {
+                if (message == CLOSE) {
+                    close(connection);
+                    break;
+                }
+                senders.send(connection.emitter, SseEmitter.event().name(message.type()).data(message.json()),
+                        () -> closed(connection));
+            }
+            if (connection.closed.get()) {
+                // Dropped while a send was stalled; close the stream now that the write is done
+                connection.emitter.complete();
+            }
+        } catch (Exception e) {
+            closed(connection);
+            connection.emitter.completeWithError(e);
+        } finally {
+            connection.draining.set(false);
+        }
+        // A message may have been queued after the last poll but before the flag was cleared
+        if (!connection.closed.get() && !connection.queue.isEmpty() && connection.draining.compareAndSet(false, true)) {
+            senders.execute(() -> drain(connection));
+        }
+    }
+
+    private void close(Connection connection) {
+        if (connection.closed.get()) return;
+        closed(connection);
+        connection.emitter.complete();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        // Save every running session before the results are lost with the process
+        for (Long sessionId : List.copyOf(sessions.keySet())) {
+            try {
+                end(sessionId);
+            } catch (RuntimeException e) {
+                System.err.println("[ERROR] Could not end live quiz session " + sessionId + ": " + e.getMessage());
+            }
+        }
+        senders.shutdownNow();
+    }
+}
@@ -0,0 +1,181 @@
+package com.mycourse.elearningplatform.service;
+
+import com.mycourse.elearningplatform.dto.LessonDto;
+import com.mycourse.elearningplatform.model.Course;
+import com.mycourse.elearningplatform.model.Resource;
+import com.mycourse.elearningplatform.repository.CourseRepository;
+import com.mycourse.elearningplatform.repository.ResourceRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Every media file of a course (cover image, intro video, lesson content, resources) with signed
+ * URLs, in one response. The files are signed concurrently on a small shared pool, which also caps
+ * how many signing requests are in flight against storage. The pool's queue is bounded; files that
+ * do not fit, fail or time out get their direct URL, and signings left over from a timed-out manifest
+ * are cancelled instead of running on for nobody.
+ */
+@Service
+public class MediaManifestService {
+    private static final String NHOST_FILE_PATH = "/v1/files/";
+    // Files not signed by then get their direct URL, as a failed signing already does
+    private static final long SIGNING_TIMEOUT_MS = 10000;
+    // Queued signings per signer thread; beyond that, files get their direct URL right away
+    private static final int QUEUE_PER_SIGNER = 64;
+
+    @Autowired
+    private NhostStorageService nhostStorageService;
+    @Autowired
+    private LessonService lessonService;
+    @Autowired
+    private CourseRepository courseRepository;
+    @Autowired
+    private ResourceRepository resourceRepository;
+
+    @Value("${app.media.signing-concurrency:8}")
+    private int signingConcurrency;
+
+    private ExecutorService signers;
+
+    @PostConstruct
+    public void startSigners() {
+        int threads = Math.max(1, signingConcurrency);
+        signers = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(threads * QUEUE_PER_SIGNER), new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "media-signer-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    @Transactional(readOnly = true)
+    public Map<String, Object> manifest(Long courseId, int expiresInSeconds) {
+        Course course = courseRepository.findById(courseId).orElseThrow(() -> new RuntimeException("Course not found"));
+        List<LessonDto> lessons = lessonService.getLessonsByCourse(courseId);
+        List<Resource> resources = resourceRepository.findByCourse(course);
+
+        Set<String> fileIds = new LinkedHashSet<>();
+        addFileId(fileIds, fileIdOf(course.getImageUrl()));
+        addFileId(fileIds, fileIdOf(course.getVideoUrl()));
+        lessons.forEach(lesson -> addFileId(fileIds, lesson.getFileId()));
+        resources.forEach(resource -> addFileId(fileIds, fileIdOf(resource.getFileUrl())));
+        Map<String, String> urls = sign(fileIds, expiresInSeconds);
+
+        Map<String, Object> courseMedia = new HashMap<>();
+        courseMedia.put("imageFileId", fileIdOf(course.getImageUrl()));
+        courseMedia.put("imageUrl", urlOf(urls, course.getImageUrl()));
+        courseMedia.put("videoFileId", fileIdOf(course.getVideoUrl()));
+        courseMedia.put("videoUrl", urlOf(urls, course.getVideoUrl()));
+
+        List<Map<String, Object>> lessonMedia = new ArrayList<>(lessons.size());
+        for (LessonDto lesson : lessons) {
+            Map<String, Object> entry = new HashMap<>();
+            entry.put("lessonId", lesson.getId());
+            entry.put("title", lesson.getTitle());
+            entry.put("position", lesson.getPosition());
+            entry.put("fileId", lesson.getFileId());
+            entry.put("url", urlOf(urls, lesson.getContentUrl()));
+            lessonMedia.add(entry);
+        }
+
+        List<Map<String, Object>> resourceMedia = new ArrayList<>(resources.size());
+        for (Resource resource : resources) {
+            Map<String, Object> entry = new HashMap<>();
+            entry.put("resourceId", resource.getId());
+            entry.put("fileName", resource.getFileName());
+            entry.put("fileType", resource.getFileType());
+            entry.put("fileSize", resource.getFileSize());
+            entry.put("fileId", fileIdOf(resource.getFileUrl()));
+            entry.put("url", urlOf(urls, resource.getFileUrl()));
+            resourceMedia.add(entry);
+        }
+
+        Map<String, Object> manifest = new HashMap<>();
+        manifest.put("courseId", courseId);
+        manifest.put("expiresIn", expiresInSeconds);
+        manifest.put("course", courseMedia);
+        manifest.put("lessons", lessonMedia);
+        manifest.put("resources", resourceMedia);
+        return manifest;
+    }
+
+    // Signed URL per file id, signed in parallel on the signer pool
+    private Map<String, String> sign(Set<String> fileIds, int expiresInSeconds) {
+        Map<String, String> urls = new HashMap<>();
+        if (fileIds.isEmpty()) return urls;
+        Map<String, CompletableFuture<String>> pending = new HashMap<>();
+        for (String fileId : fileIds) {
+            try {
+                pending.put(fileId, CompletableFuture.supplyAsync(
+                        () -> nhostStorageService.getSignedUrl(fileId, expiresInSeconds).get("signedUrl"), signers));
+            } catch (RejectedExecutionException e) {
+                // Queue full: storage is already behind, so do not wait for it
+                urls.put(fileId, nhostStorageService.getFileUrl(fileId));
+            }
+        }
+
+        try {
+            CompletableFuture.allOf(pending.values().toArray(CompletableFuture<?>[]::new)).get(SIGNING_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            System.err.println("[ERROR] Signing " + pending.size() + " media files timed out; using direct URLs for the rest");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            // Individual failures are handled below
+        }
+        pending.forEach((fileId, future) -> {
+            // A cancelled signing still in the queue is skipped when its turn comes
+            future.cancel(false);
+            String url = future.isDone() && !future.isCompletedExceptionally() ? future.join() : null;
+            urls.put(fileId, url != null ? url : nhostStorageService.getFileUrl(fileId));
+        });
+        return urls;
+    }
+
+    // Signed URL for storage files; anything else (external links, local uploads) is returned as stored
+    private String urlOf(Map<String, String> urls, String storedUrl) {
+        String fileId = fileIdOf(storedUrl);
+        return fileId != null ? urls.getOrDefault(fileId, storedUrl) : storedUrl;
+    }
+
+    private void addFileId(Set<String> fileIds, String fileId) {
+        if (fileId != null && !fileId.isEmpty()) fileIds.add(fileId);
+    }
+
+    private String fileIdOf(String url) {
+        if (url == null || url.isEmpty()) return null;
+        int idx = url.indexOf(NHOST_FILE_PATH);
+        if (idx == -1) return null;
+        return url.substring(idx + NHOST_FILE_PATH.length()).split("[/?]")[0];
+    }
+
+    @PreDestroy
+    public void stopSigners() {
+        signers.shutdownNow();
+    }
+}
@@ -1,12 +1,21 @@
 package com.mycourse.elearningplatform.service;
 
+import jakarta.annotation.PreDestroy;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.*;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
 import org.springframework.stereotype.Service;
+import org.springframework.web.client.ResponseExtractor;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.web.multipart.MultipartFile;
-import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.AbstractResource;
+import org.springframework.core.io.InputStreamSource;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.Map;
 import java.util.HashMap;
 import java.util.UUID;
@@ -24,9 +33,22 @@ public class NhostStorageService {
     private String nhostAdminSecret;
 
     private final RestTemplate restTemplate;
+    // Streamed reads time out, so a stalled storage connection fails its reader instead of holding it forever
+    private final RestTemplate readTemplate;
 
-    public NhostStorageService(RestTemplate restTemplate) {
+    // Presigned URLs are reused across requests instead of calling /presignedurl every time
+    private final SignedUrlCache signedUrlCache;
+
+    public NhostStorageService(RestTemplate restTemplate,
+                               @Value("${app.media.signed-url-cache-size:10000}") int signedUrlCacheSize,
+                               @Value("${app.media.storage-connect-timeout-ms:5000}") long connectTimeoutMs,
+                               @Value("${app.media.storage-read-timeout-ms:30000}") long readTimeoutMs) {
         this.restTemplate = restTemplate;
+        SimpleClientHttpRequestFactory readFactory = new SimpleClientHttpRequestFactory();
+        readFactory.setConnectTimeout(Duration.ofMillis(connectTimeoutMs));
+        readFactory.setReadTimeout(Duration.ofMillis(readTimeoutMs));
+        this.readTemplate = new RestTemplate(readFactory);
+        this.signedUrlCache = new SignedUrlCache(this::presign, signedUrlCacheSize, 2);
     }
 
     /**
@@ -57,7 +79,7 @@ public class NhostStorageService {
         
         // Upload to Nhost - no local fallback
         try {
-            Map<String, Object> result = uploadViaCorrectAPI(file, bucketId, fileName);
+            Map<String, Object> result = uploadViaCorrectAPI(new StreamedFileResource(file, file.getSize(), fileName), bucketId);
             
             // Add URL to the result if not present
             if (!result.containsKey("url")) {
@@ -82,19 +104,37 @@ public class NhostStorageService {
     public Map<String, Object> uploadFile(MultipartFile file, String bucketId, String fileName) {
         return uploadFile(file, bucketId, fileName, null);
     }
+
+    /**
+     * Upload a local file (for example an assembled resumable upload), streamed from disk
+     */
+    public Map<String, Object> uploadFile(Path path, String bucketId, String fileName) {
+        try {
+            Map<String, Object> result = uploadViaCorrectAPI(
+                    new StreamedFileResource(() -> Files.newInputStream(path), Files.size(path), fileName), bucketId);
+            String fileId = (String) result.get("id");
+            if (!result.containsKey("url") && fileId != null) {
+                result.put("url", getFileUrl(fileId));
+            }
+            return result;
+        } catch (Exception e) {
+            System.err.println("Nhost upload failed: " + e.getMessage());
+            throw new RuntimeException("Failed to upload file to Nhost: " + e.getMessage(), e);
+        }
+    }
     
-    private Map<String, Object> uploadViaCorrectAPI(MultipartFile file, String bucketId, String fileName) throws Exception {
+    private Map<String, Object> uploadViaCorrectAPI(StreamedFileResource fileResource, String bucketId) throws Exception {
         // Try both authentication methods since Nhost API might have changed
         try {
-            return uploadWithBearerAuth(file, bucketId, fileName);
+            return uploadWithBearerAuth(fileResource, bucketId);
         } catch (Exception e) {
             System.err.println("Bearer token auth failed: " + e.getMessage());
             System.out.println("Trying with x-hasura-admin-secret instead...");
-            return uploadWithHasuraAdminSecret(file, bucketId, fileName);
+            return uploadWithHasuraAdminSecret(fileResource, bucketId);
         }
     }
     
-    private Map<String, Object> uploadWithBearerAuth(MultipartFile file, String bucketId, String fileName) throws Exception {
+    private Map<String, Object> uploadWithBearerAuth(StreamedFileResource fileResource, String bucketId) throws Exception {
         String endpoint = String.format("https://%s.storage.%s.nhost.run/v1/files", nhostSubdomain, nhostRegion);
         
         System.out.println("Uploading to Nhost Storage API with Bearer auth: " + endpoint);
@@ -111,16 +151,8 @@ public class NhostStorageService {
         HttpHeaders fileHeaders = new HttpHeaders();
         fileHeaders.setContentType(MediaType.APPLICATION_OCTET_STREAM);
         
-        // Create ByteArrayResource with proper filename
-        ByteArrayResource fileResource = new ByteArrayResource(file.getBytes()) {
-            @Override
-            public String getFilename() {
-                return fileName;
-            }
-        };
-        
-        // Create a HttpEntity for the file with its headers
-        HttpEntity<ByteArrayResource> filePart = new HttpEntity<>(fileResource, fileHeaders);
+        // Create a HttpEntity for the file with its headers (streamed, never copied into memory)
+        HttpEntity<StreamedFileResource> filePart = new HttpEntity<>(fileResource, fileHeaders);
         
         // Add file to multipart request
         body.add("file", filePart);
@@ -148,7 +180,7 @@ public class NhostStorageService {
         }
     }
     
-    private Map<String, Object> uploadWithHasuraAdminSecret(MultipartFile file, String bucketId, String fileName) throws Exception {
+    private Map<String, Object> uploadWithHasuraAdminSecret(StreamedFileResource fileResource, String bucketId) throws Exception {
         String endpoint = String.format("https://%s.storage.%s.nhost.run/v1/files", nhostSubdomain, nhostRegion);
         
         System.out.println("Uploading to Nhost Storage API with x-hasura-admin-secret: " + endpoint);
@@ -165,16 +197,8 @@ public class NhostStorageService {
         HttpHeaders fileHeaders = new HttpHeaders();
         fileHeaders.setContentType(MediaType.APPLICATION_OCTET_STREAM);
         
-        // Create ByteArrayResource with proper filename
-        ByteArrayResource fileResource = new ByteArrayResource(file.getBytes()) {
-            @Override
-            public String getFilename() {
-                return fileName;
-            }
-        };
-        
-        // Create a HttpEntity for the file with its headers
-        HttpEntity<ByteArrayResource> filePart = new HttpEntity<>(fileResource, fileHeaders);
+        // Create a HttpEntity for the file with its headers (streamed, never copied into memory)
+        HttpEntity<StreamedFileResource> filePart = new HttpEntity<>(fileResource, fileHeaders);
         
         // Add file to multipart request
         body.add("file", filePart);
@@ -232,12 +256,7 @@ public class NhostStorageService {
         org.springframework.util.LinkedMultiValueMap<String, Object> body = 
             new org.springframework.util.LinkedMultiValueMap<>();
         
-        ByteArrayResource fileResource = new ByteArrayResource(file.getBytes()) {
-            @Override
-            public String getFilename() {
-                return fileName;
-            }
-        };
+        StreamedFileResource fileResource = new StreamedFileResource(file, file.getSize(), fileName);
         
         body.add("file", fileResource);
         if (bucketId != null && !bucketId.isEmpty()) {
@@ -323,16 +342,17 @@ public class NhostStorageService {
             nhostSubdomain, nhostRegion, fileId);
     }
 
+    /**
+     * Signed URL for a file, from the cache when one is still fresh. The URL returned stays valid for
+     * at least the requested lifetime, possibly longer (see SignedUrlCache).
+     */
     public Map<String, String> getSignedUrl(String fileId, int expiresInSeconds) {
         try {
-            // Try with Bearer token first
-            try {
-                return getSignedUrlWithBearerAuth(fileId, expiresInSeconds);
-            } catch (Exception e) {
-                System.err.println("Failed to get signed URL with Bearer auth: " + e.getMessage());
-                // Fall back to x-hasura-admin-secret
-                return getSignedUrlWithHasuraAdminSecret(fileId, expiresInSeconds);
-            }
+            String url = signedUrlCache.get(fileId, expiresInSeconds);
+            Map<String, String> result = new HashMap<>();
+            result.put("signedUrl", url);
+            result.put("url", url);
+            return result;
         } catch (Exception e) {
             System.err.println("Error getting signed URL from Nhost: " + e.getMessage());
             
@@ -347,6 +367,28 @@ public class NhostStorageService {
         }
     }
     
+    public Map<String, Object> getSignedUrlCacheStats() {
+        return signedUrlCache.getStats();
+    }
+
+    // One upstream signing call; failures are not cached
+    private String presign(String fileId, int expiresInSeconds) {
+        Map<String, String> result;
+        // Try with Bearer token first
+        try {
+            result = getSignedUrlWithBearerAuth(fileId, expiresInSeconds);
+        } catch (Exception e) {
+            System.err.println("Failed to get signed URL with Bearer auth: " + e.getMessage());
+            // Fall back to x-hasura-admin-secret
+            result = getSignedUrlWithHasuraAdminSecret(fileId, expiresInSeconds);
+        }
+        String url = result.get("signedUrl");
+        if (url == null) {
+            throw new RuntimeException("Nhost returned no signed URL for file " + fileId);
+        }
+        return url;
+    }
+
     private Map<String, String> getSignedUrlWithBearerAuth(String fileId, int expiresInSeconds) {
         String signUrl = String.format("https://%s.storage.%s.nhost.run/v1/files/%s/presignedurl",
             nhostSubdomain, nhostRegion, fileId);
@@ -401,6 +443,17 @@ public class NhostStorageService {
         }
     }
 
+    /**
+     * Read a stored file as a stream. The extractor gets the response body as it arrives, so the file
+     * is never held in memory; the connection is closed when the extractor returns. Connecting and
+     * every read of the body time out (app.media.storage-*-timeout-ms).
+     */
+    public <T> T readFile(String fileId, ResponseExtractor<T> extractor) {
+        return readTemplate.execute(getFileUrl(fileId), HttpMethod.GET,
+                request -> request.getHeaders().set("x-hasura-admin-secret", nhostAdminSecret),
+                extractor);
+    }
+
     public boolean deleteFile(String fileId) {
         try {
             String deleteUrl = String.format("https://%s.storage.%s.nhost.run/v1/files/%s", 
@@ -419,4 +472,47 @@ public class NhostStorageService {
             throw new RuntimeException("Error deleting file from Nhost: " + e.getMessage(), e);
         }
     }
-}
\ No newline at end of file
+
+    @PreDestroy
+    public void shutdown() {
+        signedUrlCache.shutdown();
+    }
+
+    /**
+     * Upload body part read from its source (the multipart temp file, or a file on disk) on demand.
+     * Every read opens a new stream, so a retried upload streams it again instead of keeping a copy in
+     * heap. RestTemplate sends the multipart body with chunked transfer as it is read.
+     */
+    private static class StreamedFileResource extends AbstractResource {
+        private final InputStreamSource source;
+        private final long size;
+        private final String fileName;
+
+        StreamedFileResource(InputStreamSource source, long size, String fileName) {
+            this.source = source;
+            this.size = size;
+            this.fileName = fileName;
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            return source.getInputStream();
+        }
+
+        @Override
+        public long contentLength() {
+            // AbstractResource would otherwise read the whole stream to count it
+            return size;
+        }
+
+        @Override
+        public String getFilename() {
+            return fileName;
+        }
+
+        @Override
+        public String getDescription() {
+            return "upload [" + fileName + "]";
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package com.mycourse.elearningplatform.service;
+
+import com.mycourse.elearningplatform.model.PlaybackPosition;
+import com.mycourse.elearningplatform.repository.EnrollmentRepository;
+import com.mycourse.elearningplatform.repository.LessonRepository;
+import com.mycourse.elearningplatform.repository.PlaybackPositionRepository;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Video playback checkpoints. Players report their position every few seconds; only the latest
+ * position per (user, course, lesson) is kept in memory and written in batched upserts, so the
+ * database sees one row write per viewer per flush interval instead of one per heartbeat.
+ * Lesson id 0 is the course's own video (Course.videoUrl).
+ */
+@Service
+public class PlaybackCheckpointService {
+    public static final long COURSE_VIDEO = 0L;
+
+    private static final int SHARDS = 16;
+    private static final int BATCH_SIZE = 500;
+    // How long a verified (user, course, lesson) stays trusted before the enrollment is checked again
+    private static final long VERIFIED_TTL_MS = 10 * 60 * 1000;
+
+    private static final String UPSERT_PREFIX =
+            "INSERT INTO playback_positions (user_id, course_id, lesson_id, position_seconds, duration_seconds, updated_at) VALUES ";
+    // Last write wins, but an older checkpoint (e.g. a retried chunk) never overwrites a newer one
+    private static final String UPSERT_SUFFIX =
+            " ON CONFLICT (user_id, course_id, lesson_id) DO UPDATE SET " +
+            "position_seconds = EXCLUDED.position_seconds, " +
+            "duration_seconds = EXCLUDED.duration_seconds, " +
+            "updated_at = EXCLUDED.updated_at " +
+            "WHERE playback_positions.updated_at <= EXCLUDED.updated_at";
+
+    private record ViewerKey(Long userId, Long courseId) {}
+
+    private record CheckpointKey(Long userId, Long courseId, Long lessonId) {}
+
+    public record Checkpoint(Long userId, Long courseId, Long lessonId, double position, Double duration, LocalDateTime updatedAt) {
+        public Map<String, Object> toMap() {
+            Map<String, Object> map = new HashMap<>();
+            map.put("lessonId", lessonId);
+            map.put("position", position);
+            map.put("duration", duration);
+            map.put("updatedAt", updatedAt.toString());
+            return map;
+        }
+    }
+
+    @Autowired
+    private EnrollmentRepository enrollmentRepository;
+    @Autowired
+    private LessonRepository lessonRepository;
+    @Autowired
+    private PlaybackPositionRepository playbackPositionRepository;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private ActivityEventLog activityEventLog;
+
+    // Each viewer maps to an immutable lessonId -> checkpoint map, replaced on every heartbeat,
+    // so readers never see a half-updated map and a flush can take a viewer out in one remove
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private final ConcurrentHashMap<ViewerKey, Map<Long, Checkpoint>>[] shards = new ConcurrentHashMap[SHARDS];
+    // Viewers' checkpoints taken by the running flush, still visible to readers until written
+    private final ConcurrentHashMap<ViewerKey, Map<Long, Checkpoint>> inFlight = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<CheckpointKey, Long> verifiedUntil = new ConcurrentHashMap<>();
+
+    public PlaybackCheckpointService() {
+        for (int i = 0; i < SHARDS; i++) {
+            shards[i] = new ConcurrentHashMap<>();
+        }
+    }
+
+    /**
+     * Record a playback heartbeat.
+     * @return false if the user is not enrolled in the course or the lesson is not part of it
+     */
+    public boolean record(Long userId, Long courseId, Long lessonId, double position, Double duration) {
+        long lesson = lessonId != null ? lessonId : COURSE_VIDEO;
+        if (!isVerified(userId, courseId, lesson)) {
+            return false;
+        }
+
+        Checkpoint checkpoint = new Checkpoint(userId, courseId, lesson, Math.max(0, position), duration, LocalDateTime.now());
+        ViewerKey viewer = new ViewerKey(userId, courseId);
+        ConcurrentHashMap<ViewerKey, Map<Long, Checkpoint>> shard = shardOf(viewer);
+        // One view event per lesson per flush interval: enough to tell who watched what and for how long
+        Map<Long, Checkpoint> buffered = shard.get(viewer);
+        if (buffered == null || !buffered.containsKey(lesson)) {
+            activityEventLog.record(ActivityEventLog.LESSON_VIEWED, userId, courseId, lesson, (int) checkpoint.position());
+        }
+        shard.compute(viewer, (k, lessons) -> {
+            if (lessons == null) return Map.of(lesson, checkpoint);
+            Map<Long, Checkpoint> copy = new HashMap<>(lessons);
+            copy.put(lesson, checkpoint);
+            return Map.copyOf(copy);
+        });
+        return true;
+    }
+
+    /**
+     * Resume positions for every video of a course the user has started, newest value per lesson.
+     */
+    public List<Checkpoint> getPositions(Long userId, Long courseId) {
+        Map<Long, Checkpoint> latest = new HashMap<>();
+        for (PlaybackPosition row : playbackPositionRepository.findByUserIdAndCourseId(userId, courseId)) {
+            latest.put(row.getLessonId(), new Checkpoint(userId, courseId, row.getLessonId(),
+                    row.getPositionSeconds(), row.getDurationSeconds(), row.getUpdatedAt()));
+        }
+        ViewerKey viewer = new ViewerKey(userId, courseId);
+        Map<Long, Checkpoint> flushing = inFlight.get(viewer);
+        if (flushing != null) {
+            flushing.values().forEach(c -> latest.merge(c.lessonId(), c, PlaybackCheckpointService::newer));
+        }
+        Map<Long, Checkpoint> pending = shardOf(viewer).get(viewer);
+        if (pending != null) {
+            pending.values().forEach(c -> latest.merge(c.lessonId(), c, PlaybackCheckpointService::newer));
+        }
+        return new ArrayList<>(latest.values());
+    }
+
+    // Drop buffered checkpoints of an enrollment that is being deleted
+    public void discard(Long userId, Long courseId) {
+        ViewerKey viewer = new ViewerKey(userId, courseId);
+        shardOf(viewer).remove(viewer);
+        verifiedUntil.keySet().removeIf(k -> k.userId().equals(userId) && k.courseId().equals(courseId));
+    }
+
+    @Scheduled(fixedDelayString = "${app.playback.flush-interval-ms:10000}")
+    public synchronized void flush() {
+        long now = System.currentTimeMillis();
+        verifiedUntil.values().removeIf(until -> until < now);
+
+        for (ConcurrentHashMap<ViewerKey, Map<Long, Checkpoint>> shard : shards) {
+            if (shard.isEmpty()) continue;
+
+            Map<ViewerKey, Map<Long, Checkpoint>> taken = new HashMap<>();
+            List<Checkpoint> batch = new ArrayList<>();
+            for (ViewerKey viewer : shard.keySet()) {
+                // Published to inFlight before it leaves the shard, so readers always find it in one of them;
+                // if a heartbeat replaced it in between, take the newer map instead
+                Map<Long, Checkpoint> published = null;
+                while (true) {
+                    Map<Long, Checkpoint> lessons = shard.get(viewer);
+                    if (lessons == null) {
+                        // Discarded meanwhile
+                        if (published != null) inFlight.remove(viewer, published);
+                        break;
+                    }
+                    inFlight.put(viewer, lessons);
+                    published = lessons;
+                    if (shard.remove(viewer, lessons)) {
+                        taken.put(viewer, lessons);
+                        batch.addAll(lessons.values());
+                        break;
+                    }
+                }
+            }
+
+            for (int from = 0; from < batch.size(); from += BATCH_SIZE) {
+                List<Checkpoint> chunk = batch.subList(from, Math.min(from + BATCH_SIZE, batch.size()));
+                try {
+                    writeChunk(chunk);
+                } catch (Exception e) {
+                    // Requeue unless the viewer has already sent a newer position
+                    System.err.println("[ERROR] Playback flush failed for " + chunk.size() + " checkpoints: " + e.getMessage());
+                    for (Checkpoint c : chunk) {
+                        ViewerKey viewer = new ViewerKey(c.userId(), c.courseId());
+                        shard.compute(viewer, (k, lessons) -> {
+                            Map<Long, Checkpoint> copy = lessons != null ? new HashMap<>(lessons) : new HashMap<>();
+                            copy.merge(c.lessonId(), c, PlaybackCheckpointService::newer);
+                            return Map.copyOf(copy);
+                        });
+                    }
+                }
+            }
+
+            taken.forEach(inFlight::remove);
+        }
+    }
+
+    private void writeChunk(List<Checkpoint> chunk) {
+        StringBuilder sql = new StringBuilder(UPSERT_PREFIX);
+        Object[] args = new Object[chunk.size() * 6];
+        for (int i = 0; i < chunk.size(); i++) {
+            Checkpoint c = chunk.get(i);
+            sql.append(i == 0 ? "" : ", ").append("(?, ?, ?, ?, ?, ?)");
+            args[i * 6] = c.userId();
+            args[i * 6 + 1] = c.courseId();
+            args[i * 6 + 2] = c.lessonId();
+            args[i * 6 + 3] = c.position();
+            args[i * 6 + 4] = c.duration();
+            args[i * 6 + 5] = Timestamp.valueOf(c.updatedAt());
+        }
+        sql.append(UPSERT_SUFFIX);
+        jdbcTemplate.update(sql.toString(), args);
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        flush();
+    }
+
+    private boolean isVerified(Long userId, Long courseId, long lessonId) {
+        CheckpointKey key = new CheckpointKey(userId, courseId, lessonId);
+        long now = System.currentTimeMillis();
+        Long until = verifiedUntil.get(key);
+        if (until != null && until >= now) {
+            return true;
+        }
+        boolean valid = enrollmentRepository.existsByUserIdAndCourseId(userId, courseId)
+                && (lessonId == COURSE_VIDEO || lessonRepository.existsByIdAndCourseId(lessonId, courseId));
+        if (valid) {
+            verifiedUntil.put(key, now + VERIFIED_TTL_MS);
+        }
+        return valid;
+    }
+
+    private ConcurrentHashMap<ViewerKey, Map<Long, Checkpoint>> shardOf(ViewerKey viewer) {
+        return shards[Math.floorMod(viewer.hashCode() * 0x9E3779B9, SHARDS)];
+    }
+
+    private static Checkpoint newer(Checkpoint a, Checkpoint b) {
+        return a.updatedAt().isAfter(b.updatedAt()) ? a : b;
+    }
+}
@@ -0,0 +1,204 @@
+package com.mycourse.elearningplatform.service;
+
+import com.mycourse.elearningplatform.dto.EnrollmentDTO;
+import com.mycourse.elearningplatform.model.Enrollment;
+import com.mycourse.elearningplatform.repository.EnrollmentRepository;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Write-behind buffer for progress heartbeats.
+ * Updates are coalesced per (user, course) in memory, keeping the highest progress and the latest
+ * activity time, and written to the enrollments table in batched UPDATE ... FROM (VALUES ...) statements,
+ * together with the funnel counters of any enrollment that crossed a stage (see CourseFunnelService).
+ * A crash loses at most one flush interval of progress; a normal shutdown flushes everything.
+ */
+@Service
+public class ProgressWriteBuffer {
+    private static final int BATCH_SIZE = 500;
+
+    private record Key(Long userId, Long courseId) {}
+
+    public record PendingProgress(Long enrollmentId, Long userId, Long courseId, int progress, LocalDateTime lastActivity) {
+        PendingProgress merge(PendingProgress other) {
+            return new PendingProgress(enrollmentId, userId, courseId,
+                    Math.max(progress, other.progress),
+                    lastActivity.isAfter(other.lastActivity) ? lastActivity : other.lastActivity);
+        }
+    }
+
+    @Autowired
+    private EnrollmentRepository enrollmentRepository;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private CourseEventHub courseEventHub;
+    @Autowired
+    private ActivityEventLog activityEventLog;
+    @Autowired
+    private CourseFunnelService courseFunnelService;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    private final ConcurrentHashMap<Key, PendingProgress> pending = new ConcurrentHashMap<>();
+    // Entries taken by the flush that is currently running, still visible to readers until written
+    private final ConcurrentHashMap<Key, PendingProgress> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Record a progress heartbeat.
+     * @return the coalesced pending value, or empty if the user is not enrolled in the course
+     */
+    public Optional<PendingProgress> record(Long userId, Long courseId, int progress) {
+        Key key = new Key(userId, courseId);
+        PendingProgress existing = pending.get(key);
+        if (existing == null) {
+            existing = inFlight.get(key);
+        }
+        // Only the first heartbeat of an interval needs to check the enrollment exists
+        Long enrollmentId = existing != null
+                ? existing.enrollmentId()
+                : enrollmentRepository.findIdByUserIdAndCourseId(userId, courseId).orElse(null);
+        if (enrollmentId == null) {
+            return Optional.empty();
+        }
+
+        int clamped = Math.max(0, Math.min(100, progress));
+        PendingProgress update = new PendingProgress(enrollmentId, userId, courseId, clamped, LocalDateTime.now());
+        PendingProgress merged = pending.merge(key, update, PendingProgress::merge);
+        // Instructors watching the course only need to hear about actual progress changes
+        if (existing == null || merged.progress() > existing.progress()) {
+            courseEventHub.publish(courseId, "progress", Map.of(
+                    "enrollmentId", enrollmentId,
+                    "userId", userId,
+                    "progress", merged.progress(),
+                    "lastActivityDate", merged.lastActivity()));
+            activityEventLog.record(ActivityEventLog.PROGRESS_CHANGED, userId, courseId, enrollmentId, merged.progress());
+        }
+        return Optional.of(merged);
+    }
+
+    // Drop buffered progress for an enrollment that is being deleted
+    public void discard(Long userId, Long courseId) {
+        pending.remove(new Key(userId, courseId));
+    }
+
+    // Freshest not-yet-persisted value for an enrollment, if any
+    public Optional<PendingProgress> peek(Long userId, Long courseId) {
+        Key key = new Key(userId, courseId);
+        PendingProgress queued = pending.get(key);
+        PendingProgress flushing = inFlight.get(key);
+        if (queued != null && flushing != null) return Optional.of(queued.merge(flushing));
+        return Optional.ofNullable(queued != null ? queued : flushing);
+    }
+
+    public EnrollmentDTO overlay(EnrollmentDTO dto) {
+        if (dto.getUser() == null || dto.getCourse() == null) return dto;
+        peek(dto.getUser().getId(), dto.getCourse().getId()).ifPresent(p -> {
+            dto.setProgress(Math.max(p.progress(), dto.getProgress() != null ? dto.getProgress() : 0));
+            dto.setLastActivityDate(p.lastActivity());
+        });
+        return dto;
+    }
+
+    public int progressOf(Enrollment enrollment) {
+        int stored = enrollment.getProgress() != null ? enrollment.getProgress() : 0;
+        return peek(enrollment.getUser().getId(), enrollment.getCourse().getId())
+                .map(p -> Math.max(p.progress(), stored))
+                .orElse(stored);
+    }
+
+    public LocalDateTime lastActivityOf(Enrollment enrollment) {
+        return peek(enrollment.getUser().getId(), enrollment.getCourse().getId())
+                .map(PendingProgress::lastActivity)
+                .orElse(enrollment.getLastActivityDate());
+    }
+
+    @Scheduled(fixedDelayString = "${app.progress.flush-interval-ms:5000}")
+    public synchronized void flush() {
+        if (pending.isEmpty()) return;
+
+        List<PendingProgress> batch = new ArrayList<>();
+        for (Key key : pending.keySet()) {
+            // Published to inFlight before it leaves pending, so readers always find it in one of them;
+            // if a heartbeat replaced it in between, take the newer value instead
+            PendingProgress published = null;
+            while (true) {
+                PendingProgress queued = pending.get(key);
+                if (queued == null) {
+                    // Discarded meanwhile
+                    if (published != null) inFlight.remove(key, published);
+                    break;
+                }
+                inFlight.put(key, queued);
+                published = queued;
+                if (pending.remove(key, queued)) {
+                    batch.add(queued);
+                    break;
+                }
+            }
+        }
+
+        for (int from = 0; from < batch.size(); from += BATCH_SIZE) {
+            List<PendingProgress> chunk = batch.subList(from, Math.min(from + BATCH_SIZE, batch.size()));
+            try {
+                writeChunk(chunk);
+            } catch (Exception e) {
+                // Put the values back so the next flush retries them; merge keeps the max
+                System.err.println("[ERROR] Progress flush failed for " + chunk.size() + " enrollments: " + e.getMessage());
+                for (PendingProgress p : chunk) {
+                    pending.merge(new Key(p.userId(), p.courseId()), p, PendingProgress::merge);
+                }
+            }
+        }
+
+        for (PendingProgress p : batch) {
+            inFlight.remove(new Key(p.userId(), p.courseId()), p);
+        }
+    }
+
+    private void writeChunk(List<PendingProgress> chunk) {
+        StringBuilder sql = new StringBuilder(
+                "UPDATE enrollments e SET " +
+                "progress = GREATEST(COALESCE(e.progress, 0), v.progress), " +
+                "last_activity_date = GREATEST(COALESCE(e.last_activity_date, v.last_activity), v.last_activity) " +
+                "FROM (VALUES ");
+        Object[] args = new Object[chunk.size() * 3];
+        for (int i = 0; i < chunk.size(); i++) {
+            PendingProgress p = chunk.get(i);
+            sql.append(i == 0 ? "" : ", ").append("(CAST(? AS bigint), CAST(? AS integer), CAST(? AS timestamp))");
+            args[i * 3] = p.enrollmentId();
+            args[i * 3 + 1] = p.progress();
+            args[i * 3 + 2] = Timestamp.valueOf(p.lastActivity());
+        }
+        // Joining the row to itself exposes the value from before the update, so stage changes can be rolled up
+        sql.append(") AS v(id, progress, last_activity), enrollments old WHERE e.id = v.id AND old.id = e.id " +
+                "RETURNING e.course_id, e.enrolled_at, COALESCE(old.progress, 0), e.progress");
+        transactionTemplate.executeWithoutResult(status -> {
+            List<CourseFunnelService.Transition> transitions = jdbcTemplate.query(sql.toString(),
+                    (rs, rowNum) -> new CourseFunnelService.Transition(
+                            rs.getLong(1),
+                            rs.getTimestamp(2) != null ? rs.getTimestamp(2).toLocalDateTime() : null,
+                            rs.getInt(3),
+                            rs.getInt(4)),
+                    args);
+            courseFunnelService.recordTransitions(transitions);
+        });
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        flush();
+    }
+}
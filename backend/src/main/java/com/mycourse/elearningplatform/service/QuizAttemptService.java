@@ -0,0 +1,491 @@
+package com.mycourse.elearningplatform.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mycourse.elearningplatform.model.QuizAttempt;
+import com.mycourse.elearningplatform.repository.QuizRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Quiz submission pipeline. Submissions are written to quiz_attempts as PENDING rows (the outbox)
+ * and acknowledged immediately; a small pool of workers claims pending rows in batches with
+ * FOR UPDATE SKIP LOCKED, grades them in memory and writes scores and Enrollment.averageQuizScore
+ * with batched UPDATEs in the same transaction. A crash leaves rows PENDING, so nothing is lost.
+ * An attempt is marked FAILED only when it can never be graded (quiz deleted, answers unreadable);
+ * other grading errors leave it PENDING to be retried with backoff, up to a few tries.
+ * The average is kept as a running sum/count of attempt percentages on the enrollment.
+ *
+ * Timed quizzes are started first (an IN_PROGRESS row with a deadline) and may save draft answers.
+ * Every open deadline sits in an in-memory timing wheel, rebuilt from the table on startup; when
+ * deadlines pass, the expired attempts are moved to PENDING with their last saved answers in one
+ * UPDATE per tick and graded by the same workers, so no query polls for overdue attempts.
+ */
+@Service
+public class QuizAttemptService {
+    private static final int BATCH_SIZE = 200;
+    // One-second ticks; 512 slots cover about 8.5 minutes per round, longer limits wait extra rounds
+    private static final long WHEEL_TICK_MILLIS = 1000;
+    private static final int WHEEL_SIZE = 512;
+    // Transient grading failures are retried after 10 s, 20 s, 40 s, ... and give up after this many tries
+    private static final int MAX_GRADING_TRIES = 5;
+    private static final long RETRY_BASE_SECONDS = 10;
+
+    // Inserts only if the user is enrolled in the quiz's course
+    private static final String ENQUEUE_SQL =
+            "INSERT INTO quiz_attempts (quiz_id, user_id, status, answers, time_spent, submitted_at) " +
+            "SELECT ?, ?, ?, ?, ?, ? WHERE EXISTS (SELECT 1 FROM enrollments WHERE user_id = ? AND course_id = ?) " +
+            "RETURNING id";
+
+    // At most one open timed attempt per student and quiz, enforced by a partial unique index
+    private static final String START_SQL =
+            "INSERT INTO quiz_attempts (quiz_id, user_id, status, answers, time_spent, started_at, deadline) " +
+            "SELECT ?, ?, ?, '{}', '{}', ?, ? WHERE EXISTS (SELECT 1 FROM enrollments WHERE user_id = ? AND course_id = ?) " +
+            "ON CONFLICT (quiz_id, user_id) WHERE status = 'IN_PROGRESS' DO NOTHING " +
+            "RETURNING id, started_at, deadline";
+
+    private static final String CLAIM_SQL =
+            "SELECT id, quiz_id, user_id, answers, time_spent, grading_tries FROM quiz_attempts " +
+            "WHERE status = ? AND (retry_after IS NULL OR retry_after <= ?) " +
+            "ORDER BY id LIMIT ? FOR UPDATE SKIP LOCKED";
+
+    // Rows last written before quiz_score_version existed carry on from their attempt count
+    private static final String NEXT_SCORE_VERSION = "COALESCE(e.quiz_score_version, e.quiz_attempt_count, 0) + 1";
+
+    // Takes a quiz's graded attempts out of its course's enrollments; the average is NULL once none are left
+    private static final String REMOVE_SCORES_SQL =
+            "UPDATE enrollments e SET " +
+            "quiz_score_sum = COALESCE(e.quiz_score_sum, 0) - v.total, " +
+            "quiz_attempt_count = GREATEST(COALESCE(e.quiz_attempt_count, 0) - v.attempts, 0), " +
+            "average_quiz_score = CASE WHEN COALESCE(e.quiz_attempt_count, 0) > v.attempts " +
+            "THEN ROUND((COALESCE(e.quiz_score_sum, 0) - v.total) / (e.quiz_attempt_count - v.attempts + 0.0)) END, " +
+            "quiz_score_version = " + NEXT_SCORE_VERSION + " " +
+            "FROM (SELECT user_id, SUM(percentage) AS total, COUNT(*) AS attempts FROM quiz_attempts " +
+            "WHERE quiz_id = ? AND status = ? GROUP BY user_id) v " +
+            "WHERE e.user_id = v.user_id AND e.course_id = ? " +
+            "RETURNING e.user_id, e.average_quiz_score, e.quiz_score_version";
+
+    public record OpenAttempt(long id, LocalDateTime startedAt, LocalDateTime deadline) {}
+
+    private record PendingAttempt(long id, long quizId, long userId, String answers, String timeSpent, int tries) {}
+
+    private record GradedAttempt(PendingAttempt attempt, QuizGradingService.CompiledQuiz quiz, long courseId, String status,
+                                 QuizGradingService.GradeResult grade) {}
+
+    private record ScoreKey(long userId, long courseId) {}
+
+    // The enrollment's new average (null once it has no graded attempts left) and its quiz score version
+    private record Average(Integer score, long version) {}
+
+    private record BatchResult(List<GradedAttempt> attempts, Map<ScoreKey, Average> averages) {}
+
+    @Autowired
+    private QuizGradingService quizGradingService;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    @Autowired
+    private ObjectMapper objectMapper;
+    @Autowired
+    private CourseEventHub courseEventHub;
+    @Autowired
+    private ActivityEventLog activityEventLog;
+    @Autowired
+    private LeaderboardService leaderboardService;
+    @Autowired
+    private ItemStatisticsService itemStatisticsService;
+    @Autowired
+    private QuizRepository quizRepository;
+
+    @Value("${app.quiz.grading-workers:2}")
+    private int workerCount;
+    // Late submissions within this many seconds of the deadline are still accepted (network delay)
+    @Value("${app.quiz.submit-grace-seconds:5}")
+    private int graceSeconds;
+
+    // Released on every submission so idle workers start right away instead of at the next poll
+    private final Semaphore wakeup = new Semaphore(0);
+    private final List<Thread> workers = new ArrayList<>();
+    private volatile boolean running;
+    private final TimingWheel<Long> deadlines = new TimingWheel<>("quiz-deadlines", WHEEL_TICK_MILLIS, WHEEL_SIZE, this::closeExpired);
+
+    @PostConstruct
+    public void startWorkers() {
+        running = true;
+        deadlines.start();
+        for (int i = 0; i < workerCount; i++) {
+            Thread worker = new Thread(this::workLoop, "quiz-grader-" + (i + 1));
+            worker.setDaemon(true);
+            worker.start();
+            workers.add(worker);
+        }
+    }
+
+    /**
+     * Durably queue a submission for grading.
+     * @return the attempt id, or empty if the user is not enrolled in the quiz's course
+     */
+    public Optional<Long> enqueue(Long userId, Long quizId, Map<String, Object> answers, Map<String, Object> timeSpent) {
+        long courseId = quizGradingService.compiled(quizId).getCourseId();
+        List<Long> ids = jdbcTemplate.query(ENQUEUE_SQL,
+                (rs, rowNum) -> rs.getLong(1),
+                quizId, userId, QuizAttempt.PENDING, toJson(answers), toJson(timeSpent), Timestamp.valueOf(LocalDateTime.now()),
+                userId, courseId);
+        if (ids.isEmpty()) {
+            return Optional.empty();
+        }
+        wakeup.release();
+        return Optional.of(ids.get(0));
+    }
+
+    // Rebuild the wheel from the table once the schema is in place; deadlines already passed fire on the first tick
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadOpenAttempts() {
+        jdbcTemplate.execute("CREATE UNIQUE INDEX IF NOT EXISTS uq_quiz_attempts_open ON quiz_attempts (quiz_id, user_id) " +
+                "WHERE status = 'IN_PROGRESS'");
+        jdbcTemplate.query("SELECT id, deadline FROM quiz_attempts WHERE status = ?",
+                rs -> {
+                    deadlines.schedule(rs.getLong("id"), closeAt(rs.getTimestamp("deadline")));
+                },
+                QuizAttempt.IN_PROGRESS);
+    }
+
+    /**
+     * Start a timed attempt, or return the student's attempt that is already open.
+     * @return the open attempt, or empty if the user is not enrolled in the quiz's course
+     */
+    public Optional<OpenAttempt> start(Long userId, Long quizId) {
+        QuizGradingService.CompiledQuiz quiz = quizGradingService.compiled(quizId);
+        LocalDateTime now = LocalDateTime.now();
+        List<OpenAttempt> started = jdbcTemplate.query(START_SQL, this::mapOpenAttempt,
+                quizId, userId, QuizAttempt.IN_PROGRESS, Timestamp.valueOf(now),
+                Timestamp.valueOf(now.plusSeconds(quiz.getTimeLimitSeconds())), userId, quiz.getCourseId());
+        if (!started.isEmpty()) {
+            OpenAttempt attempt = started.get(0);
+            deadlines.schedule(attempt.id(), closeAt(Timestamp.valueOf(attempt.deadline())));
+            return Optional.of(attempt);
+        }
+        // Nothing inserted: either an attempt is already open or the user is not enrolled
+        List<OpenAttempt> open = jdbcTemplate.query(
+                "SELECT id, started_at, deadline FROM quiz_attempts WHERE quiz_id = ? AND user_id = ? AND status = ?",
+                this::mapOpenAttempt, quizId, userId, QuizAttempt.IN_PROGRESS);
+        return open.stream().findFirst();
+    }
+
+    /**
+     * Save draft answers of an open timed attempt; they are graded if the deadline passes before submission.
+     * @return false if the attempt is not this user's, already closed, or past its deadline
+     */
+    public boolean saveDraft(Long userId, Long attemptId, Map<String, Object> answers, Map<String, Object> timeSpent) {
+        return jdbcTemplate.update(
+                "UPDATE quiz_attempts SET answers = ?, time_spent = ? " +
+                "WHERE id = ? AND user_id = ? AND status = ? AND deadline >= ?",
+                toJson(answers), toJson(timeSpent), attemptId, userId, QuizAttempt.IN_PROGRESS,
+                Timestamp.valueOf(LocalDateTime.now().minusSeconds(graceSeconds))) > 0;
+    }
+
+    /**
+     * Submit an open timed attempt for grading.
+     * @return false if the attempt is not this user's, already closed, or past its deadline
+     */
+    public boolean submitTimed(Long userId, Long attemptId, Map<String, Object> answers, Map<String, Object> timeSpent) {
+        LocalDateTime now = LocalDateTime.now();
+        int updated = jdbcTemplate.update(
+                "UPDATE quiz_attempts SET status = ?, answers = ?, time_spent = ?, submitted_at = ? " +
+                "WHERE id = ? AND user_id = ? AND status = ? AND deadline >= ?",
+                QuizAttempt.PENDING, toJson(answers), toJson(timeSpent), Timestamp.valueOf(now),
+                attemptId, userId, QuizAttempt.IN_PROGRESS, Timestamp.valueOf(now.minusSeconds(graceSeconds)));
+        if (updated == 0) {
+            return false;
+        }
+        deadlines.cancel(attemptId);
+        wakeup.release();
+        return true;
+    }
+
+    /**
+     * Delete a quiz with all its attempts. Its graded attempts are taken out of the enrollments'
+     * quiz averages in the same transaction; the leaderboard and caches follow once that is committed.
+     * @return false if the quiz does not exist
+     */
+    public boolean deleteQuiz(Long quizId) {
+        List<Long> open = new ArrayList<>();
+        Map<ScoreKey, Average> averages = new HashMap<>();
+        Boolean deleted = transactionTemplate.execute(status -> {
+            // Locking the quiz holds off new attempts; locking its attempts waits for workers grading them
+            List<Long> courseIds = jdbcTemplate.queryForList("SELECT course_id FROM quizzes WHERE id = ? FOR UPDATE", Long.class, quizId);
+            if (courseIds.isEmpty()) return false;
+            long courseId = courseIds.get(0);
+            jdbcTemplate.query("SELECT id, status FROM quiz_attempts WHERE quiz_id = ? FOR UPDATE",
+                    rs -> {
+                        if (QuizAttempt.IN_PROGRESS.equals(rs.getString("status"))) open.add(rs.getLong("id"));
+                    },
+                    quizId);
+            jdbcTemplate.query(REMOVE_SCORES_SQL,
+                    rs -> {
+                        int score = rs.getInt(2);
+                        averages.put(new ScoreKey(rs.getLong(1), courseId), new Average(rs.wasNull() ? null : score, rs.getLong(3)));
+                    },
+                    quizId, QuizAttempt.GRADED, courseId);
+            jdbcTemplate.update("DELETE FROM quiz_attempts WHERE quiz_id = ?", quizId);
+            quizRepository.deleteById(quizId);
+            return true;
+        });
+        if (!Boolean.TRUE.equals(deleted)) {
+            return false;
+        }
+        open.forEach(deadlines::cancel);
+        LocalDateTime committedAt = LocalDateTime.now();
+        averages.forEach((key, average) ->
+                leaderboardService.update(key.courseId(), key.userId(), average.score(), committedAt, average.version()));
+        quizGradingService.evict(quizId);
+        itemStatisticsService.reset(quizId);
+        return true;
+    }
+
+    // Called by the wheel with every attempt whose deadline (plus grace) passed in the last tick
+    private void closeExpired(List<Long> attemptIds) {
+        for (int from = 0; from < attemptIds.size(); from += BATCH_SIZE) {
+            List<Long> chunk = attemptIds.subList(from, Math.min(from + BATCH_SIZE, attemptIds.size()));
+            StringBuilder sql = new StringBuilder(
+                    "UPDATE quiz_attempts SET status = ?, submitted_at = deadline WHERE status = ? AND id IN (");
+            Object[] args = new Object[chunk.size() + 2];
+            args[0] = QuizAttempt.PENDING;
+            args[1] = QuizAttempt.IN_PROGRESS;
+            for (int i = 0; i < chunk.size(); i++) {
+                sql.append(i == 0 ? "?" : ", ?");
+                args[i + 2] = chunk.get(i);
+            }
+            sql.append(")");
+            try {
+                jdbcTemplate.update(sql.toString(), args);
+            } catch (Exception e) {
+                // Try again a few seconds later; the rows stay IN_PROGRESS until then
+                System.err.println("[ERROR] Closing " + chunk.size() + " expired quiz attempts failed: " + e.getMessage());
+                long retryAt = System.currentTimeMillis() + 5000;
+                chunk.forEach(id -> deadlines.schedule(id, retryAt));
+            }
+        }
+        wakeup.release(workerCount);
+    }
+
+    private OpenAttempt mapOpenAttempt(ResultSet rs, int rowNum) throws SQLException {
+        return new OpenAttempt(rs.getLong("id"),
+                rs.getTimestamp("started_at").toLocalDateTime(),
+                rs.getTimestamp("deadline").toLocalDateTime());
+    }
+
+    // The wheel closes an attempt once its grace period is over too
+    private long closeAt(Timestamp deadline) {
+        return deadline.getTime() + graceSeconds * 1000L;
+    }
+
+    private void workLoop() {
+        while (running) {
+            try {
+                if (processBatch() == 0) {
+                    wakeup.tryAcquire(1, TimeUnit.SECONDS);
+                    wakeup.drainPermits();
+                }
+            } catch (InterruptedException e) {
+                return;
+            } catch (Exception e) {
+                System.err.println("[ERROR] Quiz grading batch failed: " + e.getMessage());
+                try {
+                    Thread.sleep(1000);
+                } catch (InterruptedException ie) {
+                    return;
+                }
+            }
+        }
+    }
+
+    // Claim, grade and persist up to one batch of pending attempts; returns how many were processed
+    int processBatch() {
+        BatchResult batch = transactionTemplate.execute(status -> {
+            List<PendingAttempt> pending = jdbcTemplate.query(CLAIM_SQL,
+                    (rs, rowNum) -> new PendingAttempt(rs.getLong("id"), rs.getLong("quiz_id"), rs.getLong("user_id"),
+                            rs.getString("answers"), rs.getString("time_spent"), rs.getInt("grading_tries")),
+                    QuizAttempt.PENDING, Timestamp.valueOf(LocalDateTime.now()), BATCH_SIZE);
+            if (pending.isEmpty()) {
+                return new BatchResult(List.of(), Map.of());
+            }
+
+            List<GradedAttempt> results = new ArrayList<>(pending.size());
+            for (PendingAttempt attempt : pending) {
+                results.add(grade(attempt));
+            }
+            writeAttempts(results);
+            return new BatchResult(results, writeEnrollmentScores(results));
+        });
+
+        // Notify only after the results are committed
+        LocalDateTime committedAt = LocalDateTime.now();
+        // Workers may get here out of commit order; the version lets the board drop older averages
+        batch.averages().forEach((key, average) ->
+                leaderboardService.update(key.courseId(), key.userId(), average.score(), committedAt, average.version()));
+        for (GradedAttempt g : batch.attempts()) {
+            if (!QuizAttempt.GRADED.equals(g.status())) continue;
+            Map<String, Object> event = new HashMap<>();
+            event.put("userId", g.attempt().userId());
+            event.put("quizId", g.attempt().quizId());
+            event.put("attemptId", g.attempt().id());
+            event.put("percentage", g.grade().percentage());
+            Average average = batch.averages().get(new ScoreKey(g.attempt().userId(), g.courseId()));
+            event.put("averageQuizScore", average != null ? average.score() : null);
+            courseEventHub.publish(g.courseId(), "quizScore", event);
+            activityEventLog.record(ActivityEventLog.QUIZ_SUBMITTED, g.attempt().userId(), g.courseId(),
+                    g.attempt().quizId(), g.grade().percentage());
+            itemStatisticsService.record(g.quiz(), g.grade(), readMap(g.attempt().timeSpent()));
+        }
+        return batch.attempts().size();
+    }
+
+    // FAILED only when grading can never succeed; anything else stays PENDING and is retried later
+    private GradedAttempt grade(PendingAttempt attempt) {
+        Map<String, Object> answers;
+        try {
+            answers = readMap(attempt.answers());
+        } catch (RuntimeException e) {
+            System.err.println("[ERROR] Quiz attempt " + attempt.id() + " has unreadable answers: " + e.getMessage());
+            return new GradedAttempt(attempt, null, 0, QuizAttempt.FAILED, null);
+        }
+        try {
+            QuizGradingService.CompiledQuiz quiz = quizGradingService.compiled(attempt.quizId());
+            return new GradedAttempt(attempt, quiz, quiz.getCourseId(), QuizAttempt.GRADED, quizGradingService.grade(quiz, attempt.userId(), answers));
+        } catch (Exception e) {
+            if (!quizExists(attempt.quizId())) {
+                System.err.println("[ERROR] Quiz attempt " + attempt.id() + " belongs to a deleted quiz");
+                return new GradedAttempt(attempt, null, 0, QuizAttempt.FAILED, null);
+            }
+            boolean giveUp = attempt.tries() + 1 >= MAX_GRADING_TRIES;
+            System.err.println("[ERROR] Could not grade quiz attempt " + attempt.id() + " (try " + (attempt.tries() + 1) + "): " + e.getMessage());
+            return new GradedAttempt(attempt, null, 0, giveUp ? QuizAttempt.FAILED : QuizAttempt.PENDING, null);
+        }
+    }
+
+    private boolean quizExists(long quizId) {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                "SELECT EXISTS (SELECT 1 FROM quizzes WHERE id = ?)", Boolean.class, quizId));
+    }
+
+    private void writeAttempts(List<GradedAttempt> results) {
+        List<GradedAttempt> retries = results.stream().filter(g -> QuizAttempt.PENDING.equals(g.status())).toList();
+        for (GradedAttempt g : retries) {
+            long delay = RETRY_BASE_SECONDS << Math.min(g.attempt().tries(), 10);
+            jdbcTemplate.update("UPDATE quiz_attempts SET grading_tries = ?, retry_after = ? WHERE id = ?",
+                    g.attempt().tries() + 1, Timestamp.valueOf(LocalDateTime.now().plusSeconds(delay)), g.attempt().id());
+        }
+        results = results.stream().filter(g -> !QuizAttempt.PENDING.equals(g.status())).toList();
+        if (results.isEmpty()) return;
+
+        StringBuilder sql = new StringBuilder(
+                "UPDATE quiz_attempts a SET status = v.status, score = v.score, max_score = v.max_score, " +
+                "percentage = v.percentage, results = v.results, graded_at = v.graded_at FROM (VALUES ");
+        Object[] args = new Object[results.size() * 7];
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        for (int i = 0; i < results.size(); i++) {
+            GradedAttempt g = results.get(i);
+            sql.append(i == 0 ? "" : ", ").append("(CAST(? AS bigint), CAST(? AS varchar), CAST(? AS integer), " +
+                    "CAST(? AS integer), CAST(? AS integer), CAST(? AS text), CAST(? AS timestamp))");
+            args[i * 7] = g.attempt().id();
+            args[i * 7 + 1] = g.status();
+            args[i * 7 + 2] = g.grade() != null ? g.grade().score() : null;
+            args[i * 7 + 3] = g.grade() != null ? g.grade().maxScore() : null;
+            args[i * 7 + 4] = g.grade() != null ? g.grade().percentage() : null;
+            args[i * 7 + 5] = g.grade() != null ? toJson(g.grade().correct()) : null;
+            args[i * 7 + 6] = now;
+        }
+        sql.append(") AS v(id, status, score, max_score, percentage, results, graded_at) WHERE a.id = v.id");
+        jdbcTemplate.update(sql.toString(), args);
+    }
+
+    // Returns the new average of every enrollment that was updated
+    private Map<ScoreKey, Average> writeEnrollmentScores(List<GradedAttempt> results) {
+        // Several attempts of the same student in one batch become one row: total percentage and count
+        Map<ScoreKey, long[]> totals = new HashMap<>();
+        for (GradedAttempt g : results) {
+            if (g.grade() == null) continue;
+            long[] total = totals.computeIfAbsent(new ScoreKey(g.attempt().userId(), g.courseId()), k -> new long[2]);
+            total[0] += g.grade().percentage();
+            total[1]++;
+        }
+        if (totals.isEmpty()) return Map.of();
+
+        StringBuilder sql = new StringBuilder(
+                "UPDATE enrollments e SET " +
+                "quiz_score_sum = COALESCE(e.quiz_score_sum, 0) + v.total, " +
+                "quiz_attempt_count = COALESCE(e.quiz_attempt_count, 0) + v.attempts, " +
+                "average_quiz_score = ROUND((COALESCE(e.quiz_score_sum, 0) + v.total) / (COALESCE(e.quiz_attempt_count, 0) + v.attempts + 0.0)), " +
+                "quiz_score_version = " + NEXT_SCORE_VERSION + " " +
+                "FROM (VALUES ");
+        List<Object> args = new ArrayList<>(totals.size() * 4);
+        for (Map.Entry<ScoreKey, long[]> entry : totals.entrySet()) {
+            sql.append(args.isEmpty() ? "" : ", ").append("(CAST(? AS bigint), CAST(? AS bigint), CAST(? AS bigint), CAST(? AS integer))");
+            args.add(entry.getKey().userId());
+            args.add(entry.getKey().courseId());
+            args.add(entry.getValue()[0]);
+            args.add((int) entry.getValue()[1]);
+        }
+        sql.append(") AS v(user_id, course_id, total, attempts) WHERE e.user_id = v.user_id AND e.course_id = v.course_id " +
+                "RETURNING e.user_id, e.course_id, e.average_quiz_score, e.quiz_score_version");
+        Map<ScoreKey, Average> averages = new HashMap<>();
+        jdbcTemplate.query(sql.toString(),
+                rs -> {
+                    averages.put(new ScoreKey(rs.getLong(1), rs.getLong(2)), new Average(rs.getInt(3), rs.getLong(4)));
+                },
+                args.toArray());
+        return averages;
+    }
+
+    private Map<String, Object> readMap(String json) {
+        if (json == null) return Map.of();
+        try {
+            return objectMapper.readValue(json, new TypeReference<Map<String, Object>>() {});
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("Could not read quiz attempt", e);
+        }
+    }
+
+    private String toJson(Object value) {
+        try {
+            return objectMapper.writeValueAsString(value != null ? value : Map.of());
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("Could not serialize quiz attempt", e);
+        }
+    }
+
+    @PreDestroy
+    public void stopWorkers() throws InterruptedException {
+        // Workers finish the batch in hand; anything still PENDING is picked up after restart
+        running = false;
+        deadlines.stop();
+        for (Thread worker : workers) {
+            worker.interrupt();
+        }
+        for (Thread worker : workers) {
+            worker.join(10000);
+        }
+    }
+}
@@ -0,0 +1,425 @@
+package com.mycourse.elearningplatform.service;
+
+import com.mycourse.elearningplatform.model.Quiz;
+import com.mycourse.elearningplatform.model.QuizQuestion;
+import com.mycourse.elearningplatform.repository.QuizQuestionRepository;
+import com.mycourse.elearningplatform.repository.QuizRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Quiz delivery and server-side grading. Each quiz version is compiled once into an immutable
+ * structure (prompts and options for delivery, choice bitmasks, numeric targets and normalized
+ * accepted texts for grading) and cached until the quiz changes. Opening a quiz is a cache hit
+ * plus an O(questions) shuffle; grading is a single loop with no database access.
+ *
+ * Per-student variants (question order, option order, random draw from the question bank) come
+ * from a PRNG seeded on (quiz, user), so they are never stored: grading rebuilds the same variant
+ * to map the displayed option indexes back to the original ones. The seed leaves out the quiz
+ * version, and each question's option order is seeded on that question alone, so editing the quiz
+ * between delivery and grading never reshuffles the options a student already answered.
+ */
+@Service
+public class QuizGradingService {
+    private static final byte SINGLE_CHOICE = 0;
+    private static final byte MULTIPLE_CHOICE = 1;
+    private static final byte NUMERIC = 2;
+    private static final byte SHORT_TEXT = 3;
+    private static final int MAX_OPTIONS = 64;
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    /**
+     * Immutable definition of one quiz version. Index i of every array describes the i-th question
+     * in authoring order.
+     */
+    public static final class CompiledQuiz {
+        private final long quizId;
+        private final long courseId;
+        private final int version;
+        private final String title;
+        private final boolean shuffleQuestions;
+        private final boolean shuffleOptions;
+        private final int drawCount;
+        private final int timeLimitSeconds;
+        private final long[] questionIds;
+        private final String[] answerKeys;
+        private final String[] types;
+        private final String[] prompts;
+        private final List<String>[] options;
+        private final byte[] kinds;
+        private final int[] points;
+        private final long[] choiceMasks;
+        private final double[] numbers;
+        private final double[] tolerances;
+        private final Set<String>[] texts;
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private CompiledQuiz(Quiz quiz, List<QuizQuestion> questions) {
+            int n = questions.size();
+            this.quizId = quiz.getId();
+            this.courseId = quiz.getCourse().getId();
+            this.version = quiz.getVersion() != null ? quiz.getVersion() : 0;
+            this.title = quiz.getTitle();
+            this.shuffleQuestions = Boolean.TRUE.equals(quiz.getShuffleQuestions());
+            this.shuffleOptions = Boolean.TRUE.equals(quiz.getShuffleOptions());
+            this.drawCount = quiz.getDrawCount() != null && quiz.getDrawCount() > 0 ? Math.min(quiz.getDrawCount(), n) : n;
+            this.timeLimitSeconds = quiz.getTimeLimitSeconds() != null ? Math.max(0, quiz.getTimeLimitSeconds()) : 0;
+            this.questionIds = new long[n];
+            this.answerKeys = new String[n];
+            this.types = new String[n];
+            this.prompts = new String[n];
+            this.options = new List[n];
+            this.kinds = new byte[n];
+            this.points = new int[n];
+            this.choiceMasks = new long[n];
+            this.numbers = new double[n];
+            this.tolerances = new double[n];
+            this.texts = new Set[n];
+
+            for (int i = 0; i < n; i++) {
+                QuizQuestion q = questions.get(i);
+                questionIds[i] = q.getId();
+                answerKeys[i] = String.valueOf(q.getId());
+                types[i] = q.getType();
+                prompts[i] = q.getPrompt();
+                options[i] = List.copyOf(q.getOptions());
+                points[i] = q.getPoints() != null ? Math.max(0, q.getPoints()) : 1;
+                kinds[i] = kindOf(q.getType());
+                switch (kinds[i]) {
+                    case SINGLE_CHOICE, MULTIPLE_CHOICE -> choiceMasks[i] = correctMask(q);
+                    case NUMERIC -> {
+                        numbers[i] = Double.parseDouble(q.getCorrectAnswers().get(0).trim());
+                        tolerances[i] = q.getTolerance() != null ? Math.abs(q.getTolerance()) : 0;
+                    }
+                    default -> {
+                        Set<String> accepted = new HashSet<>();
+                        q.getCorrectAnswers().forEach(a -> accepted.add(normalize(a)));
+                        texts[i] = Set.copyOf(accepted);
+                    }
+                }
+            }
+        }
+
+        public long getQuizId() { return quizId; }
+        public long getCourseId() { return courseId; }
+        public int getVersion() { return version; }
+        public String getTitle() { return title; }
+        // 0 when the quiz is untimed
+        public int getTimeLimitSeconds() { return timeLimitSeconds; }
+        public int getQuestionCount() { return questionIds.length; }
+        public long getQuestionId(int index) { return questionIds[index]; }
+        public String getType(int index) { return types[index]; }
+        public String getPrompt(int index) { return prompts[index]; }
+        public List<String> getOptions(int index) { return options[index]; }
+        public int getPoints(int index) { return points[index]; }
+        // Bitmask of the correct original option indexes; 0 for questions that are not choice questions
+        public long getCorrectOptions(int index) { return choiceMasks[index]; }
+    }
+
+    /**
+     * One student's view of a quiz: the compiled indexes of the drawn questions in display order,
+     * and for each shuffled choice question the original option index shown at each position.
+     */
+    public record Variant(int[] questions, int[][] optionOrder) {}
+
+    /**
+     * Outcome of one question in one submission, for item statistics. selectedOptions is a bitmask of
+     * original option indexes (0 when nothing valid was chosen or the question is not a choice question).
+     */
+    public record ItemResponse(int questionIndex, boolean correct, long selectedOptions) {}
+
+    public record GradeResult(int score, int maxScore, int percentage, Map<Long, Boolean> correct, List<ItemResponse> items) {}
+
+    @Autowired
+    private QuizRepository quizRepository;
+    @Autowired
+    private QuizQuestionRepository quizQuestionRepository;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    private final ConcurrentHashMap<Long, CompiledQuiz> compiled = new ConcurrentHashMap<>();
+    // Bumped by every eviction of the quiz; a compile that started before the latest one is not cached
+    private final ConcurrentHashMap<Long, Long> evictions = new ConcurrentHashMap<>();
+
+    public CompiledQuiz compiled(Long quizId) {
+        CompiledQuiz cached = compiled.get(quizId);
+        if (cached != null) {
+            return cached;
+        }
+        Long generation = evictions.get(quizId);
+        // Compiled outside the map lock; two threads may both compile once, which is harmless
+        CompiledQuiz fresh = transactionTemplate.execute(status -> {
+            Quiz quiz = quizRepository.findById(quizId).orElseThrow(() -> new RuntimeException("Quiz not found"));
+            return new CompiledQuiz(quiz, quizQuestionRepository.findByQuizIdOrderByPositionAscIdAsc(quizId));
+        });
+        compiled.compute(quizId, (id, current) -> {
+            // It may have read rows from before that eviction; answer from it but do not keep it
+            if (!Objects.equals(evictions.get(quizId), generation)) return current;
+            // Never let a slower compile of an older version replace a newer one
+            return current == null || fresh.version >= current.version ? fresh : current;
+        });
+        return fresh;
+    }
+
+    // Drop the cached definition after the quiz or its questions change, or the quiz is deleted
+    public void evict(Long quizId) {
+        invalidate(quizId);
+        // Again after commit, in case a concurrent compile read the old rows in the meantime
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    invalidate(quizId);
+                }
+            });
+        }
+    }
+
+    // Generation first: a compile caching right now either sees it or is removed right after
+    private void invalidate(Long quizId) {
+        evictions.merge(quizId, 1L, Long::sum);
+        compiled.remove(quizId);
+    }
+
+    public Variant variant(CompiledQuiz quiz, long userId) {
+        SplittableRandom random = new SplittableRandom(seed(quiz.quizId, userId));
+        int n = quiz.questionIds.length;
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) order[i] = i;
+        if (quiz.shuffleQuestions || quiz.drawCount < n) {
+            shuffle(order, random);
+        }
+        int[] shown = Arrays.copyOf(order, quiz.drawCount);
+        if (!quiz.shuffleQuestions) {
+            // Drawn from the bank, but shown in authoring order
+            Arrays.sort(shown);
+        }
+
+        int[][] optionOrder = new int[n][];
+        if (quiz.shuffleOptions) {
+            for (int q : shown) {
+                if (quiz.kinds[q] != SINGLE_CHOICE && quiz.kinds[q] != MULTIPLE_CHOICE) continue;
+                int[] permutation = new int[quiz.options[q].size()];
+                for (int i = 0; i < permutation.length; i++) permutation[i] = i;
+                shuffle(permutation, new SplittableRandom(seed(quiz.quizId, userId) ^ quiz.questionIds[q] * 0x165667B19E3779F9L));
+                optionOrder[q] = permutation;
+            }
+        }
+        return new Variant(shown, optionOrder);
+    }
+
+    /**
+     * The quiz as one student sees it, without answer keys.
+     */
+    public Map<String, Object> delivery(CompiledQuiz quiz, long userId) {
+        Variant variant = variant(quiz, userId);
+        List<Map<String, Object>> questions = new ArrayList<>(variant.questions().length);
+        int totalPoints = 0;
+        for (int q : variant.questions()) {
+            List<String> shownOptions = quiz.options[q];
+            int[] permutation = variant.optionOrder()[q];
+            if (permutation != null) {
+                List<String> shuffled = new ArrayList<>(permutation.length);
+                for (int original : permutation) shuffled.add(shownOptions.get(original));
+                shownOptions = shuffled;
+            }
+            Map<String, Object> question = new HashMap<>();
+            question.put("id", quiz.questionIds[q]);
+            question.put("type", quiz.types[q]);
+            question.put("prompt", quiz.prompts[q]);
+            question.put("options", shownOptions);
+            question.put("points", quiz.points[q]);
+            questions.add(question);
+            totalPoints += quiz.points[q];
+        }
+
+        Map<String, Object> delivery = new HashMap<>();
+        delivery.put("quizId", quiz.quizId);
+        delivery.put("version", quiz.version);
+        delivery.put("title", quiz.title);
+        delivery.put("totalPoints", totalPoints);
+        delivery.put("timeLimitSeconds", quiz.timeLimitSeconds > 0 ? quiz.timeLimitSeconds : null);
+        delivery.put("questions", questions);
+        return delivery;
+    }
+
+    /**
+     * Check that questions can be compiled before they are saved.
+     * @throws IllegalArgumentException describing the first invalid question
+     */
+    public void validate(List<QuizQuestion> questions) {
+        for (int i = 0; i < questions.size(); i++) {
+            QuizQuestion q = questions.get(i);
+            String label = "Question " + (i + 1) + ": ";
+            if (q.getPrompt() == null || q.getPrompt().isBlank()) {
+                throw new IllegalArgumentException(label + "prompt is required");
+            }
+            byte kind = kindOf(q.getType());
+            if (q.getCorrectAnswers() == null || q.getCorrectAnswers().isEmpty()) {
+                throw new IllegalArgumentException(label + "correctAnswers is required");
+            }
+            switch (kind) {
+                case SINGLE_CHOICE, MULTIPLE_CHOICE -> {
+                    if (q.getOptions() == null || q.getOptions().size() < 2 || q.getOptions().size() > MAX_OPTIONS) {
+                        throw new IllegalArgumentException(label + "between 2 and " + MAX_OPTIONS + " options are required");
+                    }
+                    if (kind == SINGLE_CHOICE && q.getCorrectAnswers().size() != 1) {
+                        throw new IllegalArgumentException(label + "exactly one correct option is required");
+                    }
+                    correctMask(q);
+                }
+                case NUMERIC -> {
+                    try {
+                        Double.parseDouble(q.getCorrectAnswers().get(0).trim());
+                    } catch (NumberFormatException e) {
+                        throw new IllegalArgumentException(label + "correct answer must be a number");
+                    }
+                }
+                default -> { }
+            }
+        }
+    }
+
+    /**
+     * Grade one student's submission against the variant they were shown. Answers are keyed by
+     * question id: a displayed option index or a list of them for choice questions, a number for
+     * NUMERIC and a string for SHORT_TEXT. Missing answers score zero.
+     */
+    public GradeResult grade(CompiledQuiz quiz, long userId, Map<String, Object> answers) {
+        Variant variant = variant(quiz, userId);
+        int score = 0;
+        int maxScore = 0;
+        Map<Long, Boolean> correct = new LinkedHashMap<>();
+        List<ItemResponse> items = new ArrayList<>(variant.questions().length);
+        for (int i : variant.questions()) {
+            Object answer = answers != null ? answers.get(quiz.answerKeys[i]) : null;
+            ItemResponse item = gradeItem(quiz, i, answer, variant.optionOrder()[i]);
+            maxScore += quiz.points[i];
+            if (item.correct()) {
+                score += quiz.points[i];
+            }
+            correct.put(quiz.questionIds[i], item.correct());
+            items.add(item);
+        }
+        int percentage = maxScore == 0 ? 0 : Math.round(score * 100f / maxScore);
+        return new GradeResult(score, maxScore, percentage, correct, items);
+    }
+
+    /**
+     * Grade one answer to the question at compiled index i, shown with its options in authoring order
+     * (live sessions, where every participant sees the same question).
+     */
+    public ItemResponse gradeItem(CompiledQuiz quiz, int i, Object answer) {
+        return gradeItem(quiz, i, answer, null);
+    }
+
+    private static ItemResponse gradeItem(CompiledQuiz quiz, int i, Object answer, int[] optionOrder) {
+        boolean choice = quiz.kinds[i] == SINGLE_CHOICE || quiz.kinds[i] == MULTIPLE_CHOICE;
+        long selected = choice && answer != null ? choiceMask(answer, optionOrder, quiz.options[i].size()) : 0;
+        boolean right = answer != null && switch (quiz.kinds[i]) {
+            case SINGLE_CHOICE, MULTIPLE_CHOICE -> selected == quiz.choiceMasks[i];
+            case NUMERIC -> {
+                Double value = toDouble(answer);
+                yield value != null && Math.abs(value - quiz.numbers[i]) <= quiz.tolerances[i];
+            }
+            default -> answer instanceof String text && quiz.texts[i].contains(normalize(text));
+        };
+        return new ItemResponse(i, right, selected);
+    }
+
+    private static byte kindOf(String type) {
+        if (type == null) throw new IllegalArgumentException("Question type is required");
+        return switch (type) {
+            case QuizQuestion.SINGLE_CHOICE -> SINGLE_CHOICE;
+            case QuizQuestion.MULTIPLE_CHOICE -> MULTIPLE_CHOICE;
+            case QuizQuestion.NUMERIC -> NUMERIC;
+            case QuizQuestion.SHORT_TEXT -> SHORT_TEXT;
+            default -> throw new IllegalArgumentException("Unknown question type: " + type);
+        };
+    }
+
+    private static long correctMask(QuizQuestion q) {
+        long mask = 0;
+        for (String answer : q.getCorrectAnswers()) {
+            int index;
+            try {
+                index = Integer.parseInt(answer.trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Correct answers of choice questions must be option indexes");
+            }
+            if (index < 0 || index >= q.getOptions().size()) {
+                throw new IllegalArgumentException("Correct option index out of range: " + index);
+            }
+            mask |= 1L << index;
+        }
+        return mask;
+    }
+
+    // Bitmask of the original option indexes selected; 0 (never a valid key) for malformed answers
+    private static long choiceMask(Object answer, int[] optionOrder, int optionCount) {
+        if (answer instanceof Number number) {
+            int shown = number.intValue();
+            if (shown < 0 || shown >= optionCount) return 0;
+            return 1L << (optionOrder != null ? optionOrder[shown] : shown);
+        }
+        if (answer instanceof Collection<?> values) {
+            long mask = 0;
+            for (Object value : values) {
+                if (!(value instanceof Number)) return 0;
+                long bit = choiceMask(value, optionOrder, optionCount);
+                if (bit == 0) return 0;
+                mask |= bit;
+            }
+            return mask;
+        }
+        return 0;
+    }
+
+    private static Double toDouble(Object answer) {
+        if (answer instanceof Number number) return number.doubleValue();
+        if (answer instanceof String text) {
+            try {
+                return Double.parseDouble(text.trim());
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    private static String normalize(String text) {
+        return WHITESPACE.matcher(text.trim()).replaceAll(" ").toLowerCase(Locale.ROOT);
+    }
+
+    private static long seed(long quizId, long userId) {
+        return quizId * 0x9E3779B97F4A7C15L ^ userId * 0xC2B2AE3D27D4EB4FL;
+    }
+
+    // Fisher-Yates
+    private static void shuffle(int[] values, SplittableRandom random) {
+        for (int i = values.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int tmp = values[i];
+            values[i] = values[j];
+            values[j] = tmp;
+        }
+    }
+}
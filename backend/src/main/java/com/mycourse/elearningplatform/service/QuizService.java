@@ -0,0 +1,72 @@
+package com.mycourse.elearningplatform.service;
+
+import com.mycourse.elearningplatform.model.Quiz;
+import com.mycourse.elearningplatform.model.QuizQuestion;
+import com.mycourse.elearningplatform.repository.QuizRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+/**
+ * Editing quizzes. Every change bumps the quiz version and drops the compiled quiz in the same
+ * transaction; replacing the questions also clears their item statistics. Ownership checks and
+ * validation are left to the caller.
+ */
+@Service
+public class QuizService {
+    @Autowired
+    private QuizRepository quizRepository;
+    @Autowired
+    private QuizGradingService quizGradingService;
+    @Autowired
+    private ItemStatisticsService itemStatisticsService;
+
+    @Transactional
+    public Quiz updateQuiz(Long quizId, Quiz updated) {
+        Quiz quiz = quizRepository.findById(quizId).orElseThrow(() -> new RuntimeException("Quiz not found"));
+        quiz.setTitle(updated.getTitle());
+        quiz.setDescription(updated.getDescription());
+        quiz.setTotalPoints(updated.getTotalPoints());
+        quiz.setShuffleQuestions(updated.getShuffleQuestions());
+        quiz.setShuffleOptions(updated.getShuffleOptions());
+        quiz.setDrawCount(updated.getDrawCount());
+        quiz.setTimeLimitSeconds(updated.getTimeLimitSeconds());
+        quiz.setVersion(nextVersion(quiz));
+        Quiz saved = quizRepository.save(quiz);
+        quizGradingService.evict(quizId);
+        return saved;
+    }
+
+    /**
+     * Replace the question set; totalPoints is recomputed from the questions.
+     * @return the new questions, in order
+     */
+    @Transactional
+    public List<QuizQuestion> replaceQuestions(Long quizId, List<QuizQuestion> questions) {
+        Quiz quiz = quizRepository.findById(quizId).orElseThrow(() -> new RuntimeException("Quiz not found"));
+        quiz.getQuestions().clear();
+        int totalPoints = 0;
+        for (int i = 0; i < questions.size(); i++) {
+            QuizQuestion question = questions.get(i);
+            question.setId(null);
+            question.setQuiz(quiz);
+            question.setPosition(i);
+            if (question.getPoints() == null) question.setPoints(1);
+            totalPoints += question.getPoints();
+            quiz.getQuestions().add(question);
+        }
+        quiz.setTotalPoints(totalPoints);
+        quiz.setVersion(nextVersion(quiz));
+        quizRepository.save(quiz);
+        quizGradingService.evict(quizId);
+        // New question ids; statistics of the old set no longer apply
+        itemStatisticsService.reset(quizId);
+        return List.copyOf(quiz.getQuestions());
+    }
+
+    private int nextVersion(Quiz quiz) {
+        return (quiz.getVersion() != null ? quiz.getVersion() : 0) + 1;
+    }
+}
@@ -0,0 +1,132 @@
+package com.mycourse.elearningplatform.service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Order-statistic treap of leaderboard entries: higher score first, then whoever reached the score
+ * earlier, then user id. Insert, remove and rank are O(log n) expected; top-N is O(log n + N).
+ * Not thread-safe; LeaderboardService guards each tree with its own lock.
+ */
+class RankTree {
+
+    record Entry(long userId, int score, LocalDateTime achievedAt) {}
+
+    private static final class Node {
+        final Entry entry;
+        final int priority;
+        Node left;
+        Node right;
+        int size = 1;
+
+        Node(Entry entry, int priority) {
+            this.entry = entry;
+            this.priority = priority;
+        }
+    }
+
+    private final SplittableRandom random = new SplittableRandom();
+    private Node root;
+
+    int size() {
+        return size(root);
+    }
+
+    void insert(Entry entry) {
+        Node[] parts = split(root, entry, false);
+        root = merge(merge(parts[0], new Node(entry, random.nextInt())), parts[1]);
+    }
+
+    void remove(Entry entry) {
+        Node[] parts = split(root, entry, false);
+        Node[] rest = split(parts[1], entry, true);
+        root = merge(parts[0], rest[1]);
+    }
+
+    // 1-based position of an entry that is in the tree
+    int rank(Entry entry) {
+        int before = 0;
+        Node node = root;
+        while (node != null) {
+            int c = compare(node.entry, entry);
+            if (c < 0) {
+                before += size(node.left) + 1;
+                node = node.right;
+            } else if (c > 0) {
+                node = node.left;
+            } else {
+                before += size(node.left);
+                break;
+            }
+        }
+        return before + 1;
+    }
+
+    List<Entry> top(int n) {
+        List<Entry> result = new ArrayList<>(Math.min(n, size()));
+        Deque<Node> stack = new ArrayDeque<>();
+        Node node = root;
+        while ((node != null || !stack.isEmpty()) && result.size() < n) {
+            while (node != null) {
+                stack.push(node);
+                node = node.left;
+            }
+            node = stack.pop();
+            result.add(node.entry);
+            node = node.right;
+        }
+        return result;
+    }
+
+    static int compare(Entry a, Entry b) {
+        int c = Integer.compare(b.score(), a.score());
+        if (c != 0) return c;
+        c = a.achievedAt().compareTo(b.achievedAt());
+        if (c != 0) return c;
+        return Long.compare(a.userId(), b.userId());
+    }
+
+    // Left part holds the nodes ordered before the key (and equal to it when inclusive), right part the rest
+    private Node[] split(Node node, Entry key, boolean inclusive) {
+        if (node == null) return new Node[2];
+        int c = compare(node.entry, key);
+        if (c < 0 || (inclusive && c == 0)) {
+            Node[] parts = split(node.right, key, inclusive);
+            node.right = parts[0];
+            update(node);
+            parts[0] = node;
+            return parts;
+        }
+        Node[] parts = split(node.left, key, inclusive);
+        node.left = parts[1];
+        update(node);
+        parts[1] = node;
+        return parts;
+    }
+
+    // Every node of a is ordered before every node of b
+    private Node merge(Node a, Node b) {
+        if (a == null) return b;
+        if (b == null) return a;
+        if (a.priority > b.priority) {
+            a.right = merge(a.right, b);
+            update(a);
+            return a;
+        }
+        b.left = merge(a, b.left);
+        update(b);
+        return b;
+    }
+
+    private static int size(Node node) {
+        return node != null ? node.size : 0;
+    }
+
+    private static void update(Node node) {
+        node.size = 1 + size(node.left) + size(node.right);
+    }
+}
@@ -0,0 +1,259 @@
+package com.mycourse.elearningplatform.service;
+
+import com.mycourse.elearningplatform.model.Course;
+import com.mycourse.elearningplatform.model.Resource;
+import com.mycourse.elearningplatform.repository.ResourceRepository;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Streams all resources of a course as one ZIP. Files are fetched from storage a few at a time ahead
+ * of the one being written, each through a small bounded chunk queue, so a fetch can only run ahead
+ * of the client by that queue and memory stays fixed whatever the size of the files. The number of
+ * bundles streamed at once is capped as well, and all bundles share one bounded pool of fetch threads,
+ * which bounds the total memory and storage connections. A file that stops arriving is given up after
+ * the stall timeout and listed as missing, so a stalled storage read never holds a bundle forever.
+ */
+@Service
+public class ResourceBundleService {
+    private static final int CHUNK_BYTES = 64 * 1024;
+    // Per file being fetched: 16 x 64 KB read ahead of the client
+    private static final int READ_AHEAD_CHUNKS = 16;
+    private static final byte[] END = new byte[0];
+    private static final String NHOST_FILE_PATH = "/v1/files/";
+    // Already compressed; deflating them again costs CPU for nothing
+    private static final Set<String> COMPRESSED_TYPES = Set.of(
+            "mp4", "mov", "webm", "mkv", "avi", "mp3", "m4a", "aac", "ogg", "wav", "jpg", "jpeg", "png", "gif", "webp",
+            "zip", "gz", "rar", "7z", "pptx", "docx", "xlsx", "epub");
+
+    @Autowired
+    private ResourceRepository resourceRepository;
+    @Autowired
+    private NhostStorageService nhostStorageService;
+
+    @Value("${app.media.bundle-stall-timeout-ms:60000}")
+    private long stallTimeoutMs;
+
+    private final Semaphore bundles;
+    private final int window;
+    private final ThreadPoolExecutor fetchers;
+
+    public ResourceBundleService(@Value("${app.media.max-concurrent-bundles:4}") int maxConcurrentBundles,
+                                 @Value("${app.media.bundle-fetch-concurrency:3}") int fetchConcurrency) {
+        this.bundles = new Semaphore(maxConcurrentBundles);
+        this.window = Math.max(1, fetchConcurrency);
+        // Enough for every bundle's window; the queue absorbs threads still held by abandoned fetches
+        int threads = Math.max(1, maxConcurrentBundles) * window;
+        AtomicInteger count = new AtomicInteger();
+        this.fetchers = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS, new ArrayBlockingQueue<>(threads), r -> {
+            Thread thread = new Thread(r, "bundle-fetch-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.fetchers.allowCoreThreadTimeOut(true);
+    }
+
+    // One file of the bundle and the chunks fetched for it so far
+    private static final class Slot {
+        final String fileId;
+        final String entryName;
+        final Resource resource;
+        final BlockingQueue<byte[]> chunks = new ArrayBlockingQueue<>(READ_AHEAD_CHUNKS);
+        volatile Exception error;
+        Future<?> fetch;
+
+        Slot(String fileId, String entryName, Resource resource) {
+            this.fileId = fileId;
+            this.entryName = entryName;
+            this.resource = resource;
+        }
+    }
+
+    /**
+     * Reserve one of the bundle streams; false when all are in use.
+     */
+    public boolean tryAcquire() {
+        return bundles.tryAcquire();
+    }
+
+    public void release() {
+        bundles.release();
+    }
+
+    /**
+     * Write the ZIP of the course's resources. Files that could not be fetched are listed in a
+     * MISSING.txt entry at the end instead of failing the whole download.
+     * @throws IOException when writing to the client fails (for example, the download was cancelled)
+     */
+    public void writeBundle(Course course, OutputStream out) throws IOException {
+        List<Slot> slots = new ArrayList<>();
+        List<String> missing = new ArrayList<>();
+        Set<String> names = new HashSet<>();
+        for (Resource resource : resourceRepository.findByCourse(course)) {
+            String fileId = fileIdOf(resource.getFileUrl());
+            String name = uniqueName(names, resource.getFileName() != null ? resource.getFileName() : "resource-" + resource.getId());
+            if (fileId == null) {
+                missing.add(name + " (not in storage)");
+                continue;
+            }
+            slots.add(new Slot(fileId, name, resource));
+        }
+
+        try {
+            ZipOutputStream zip = new ZipOutputStream(out, StandardCharsets.UTF_8);
+            int next = 0;
+            for (; next < slots.size() && next < window; next++) {
+                start(slots.get(next));
+            }
+            for (Slot slot : slots) {
+                writeEntry(zip, slot, missing);
+                // Start the next fetch only as one finishes, so at most window files are read ahead
+                if (next < slots.size()) {
+                    start(slots.get(next++));
+                }
+            }
+            if (!missing.isEmpty()) {
+                zip.setLevel(Deflater.DEFAULT_COMPRESSION);
+                zip.putNextEntry(new ZipEntry(uniqueName(names, "MISSING.txt")));
+                zip.write(("These files could not be included:\n" + String.join("\n", missing) + "\n").getBytes(StandardCharsets.UTF_8));
+                zip.closeEntry();
+            }
+            zip.finish();
+            out.flush();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Bundle interrupted", e);
+        } finally {
+            // Interrupts fetches still waiting for queue space once the client has gone
+            for (Slot slot : slots) {
+                if (slot.fetch != null) slot.fetch.cancel(true);
+            }
+        }
+    }
+
+    private void start(Slot slot) {
+        try {
+            slot.fetch = fetchers.submit(() -> fetch(slot));
+        } catch (RejectedExecutionException e) {
+            // Every fetch thread is taken, some by stalled reads still waiting for their read timeout
+            slot.error = e;
+            slot.chunks.offer(END);
+        }
+    }
+
+    // The next chunk of the slot, or END with the slot's error set once the fetch has stalled
+    private byte[] next(Slot slot) throws InterruptedException {
+        byte[] chunk = slot.chunks.poll(stallTimeoutMs, TimeUnit.MILLISECONDS);
+        if (chunk != null) return chunk;
+        slot.error = new IOException("No data from storage for " + stallTimeoutMs + " ms");
+        if (slot.fetch != null) slot.fetch.cancel(true);
+        return END;
+    }
+
+    private void writeEntry(ZipOutputStream zip, Slot slot, List<String> missing) throws IOException, InterruptedException {
+        byte[] chunk = next(slot);
+        if (chunk == END && slot.error != null) {
+            System.err.println("[ERROR] Bundle: fetching file " + slot.fileId + " failed: " + slot.error.getMessage());
+            missing.add(slot.entryName);
+            return;
+        }
+        ZipEntry entry = new ZipEntry(slot.entryName);
+        if (slot.resource.getCreatedAt() != null) {
+            entry.setTime(slot.resource.getCreatedAt().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+        }
+        // Media are written with compression level 0 (deflate's stored blocks)
+        zip.setLevel(isCompressed(slot.entryName) ? Deflater.NO_COMPRESSION : Deflater.DEFAULT_COMPRESSION);
+        zip.putNextEntry(entry);
+        while (chunk != END) {
+            zip.write(chunk);
+            chunk = next(slot);
+        }
+        zip.closeEntry();
+        if (slot.error != null) {
+            System.err.println("[ERROR] Bundle: file " + slot.fileId + " broke off: " + slot.error.getMessage());
+            missing.add(slot.entryName + " (incomplete)");
+        }
+    }
+
+    // Runs on a fetcher thread; blocks whenever the slot's queue is full
+    private void fetch(Slot slot) {
+        try {
+            nhostStorageService.readFile(slot.fileId, response -> {
+                try (InputStream in = response.getBody()) {
+                    while (true) {
+                        byte[] buffer = new byte[CHUNK_BYTES];
+                        int read = in.readNBytes(buffer, 0, CHUNK_BYTES);
+                        if (read == 0) break;
+                        slot.chunks.put(read == CHUNK_BYTES ? buffer : Arrays.copyOf(buffer, read));
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Fetch cancelled", e);
+                }
+                return null;
+            });
+        } catch (Exception e) {
+            slot.error = e;
+        }
+        if (Thread.currentThread().isInterrupted()) return;
+        try {
+            slot.chunks.put(END);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        fetchers.shutdownNow();
+    }
+
+    private static String uniqueName(Set<String> names, String fileName) {
+        String name = fileName.replaceAll("[\\\\/:*?\"<>|]", "_");
+        if (names.add(name)) return name;
+        int dot = name.lastIndexOf('.');
+        String base = dot > 0 ? name.substring(0, dot) : name;
+        String extension = dot > 0 ? name.substring(dot) : "";
+        for (int i = 2; ; i++) {
+            String candidate = base + " (" + i + ")" + extension;
+            if (names.add(candidate)) return candidate;
+        }
+    }
+
+    private static boolean isCompressed(String name) {
+        int dot = name.lastIndexOf('.');
+        return dot >= 0 && COMPRESSED_TYPES.contains(name.substring(dot + 1).toLowerCase(Locale.ROOT));
+    }
+
+    private static String fileIdOf(String url) {
+        if (url == null || url.isEmpty()) return null;
+        int idx = url.indexOf(NHOST_FILE_PATH);
+        if (idx == -1) return null;
+        return url.substring(idx + NHOST_FILE_PATH.length()).split("[/?]")[0];
+    }
+}
@@ -0,0 +1,412 @@
+package com.mycourse.elearningplatform.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Resumable uploads (tus-style): an upload is created with its total length, its bytes arrive in any
+ * number of PATCH requests at explicit offsets, and its status can be asked for at any time to resume
+ * after a dropped connection. Chunks are written straight into a spool file with positional
+ * FileChannel writes, so they may arrive out of order and in parallel. Once every byte is there the
+ * file is handed to storage (hashed and deduplicated like any upload) in the background. Uploads not
+ * touched for the expiry period are dropped with their spool file.
+ *
+ * The full length of every open upload is reserved when it is created, against a global and a
+ * per-user cap and against free disk space, so parallel uploads cannot fill the spool disk halfway
+ * through. A spool file is only closed once no chunk request is writing to it.
+ */
+@Service
+public class ResumableUploadService {
+    private static final int COPY_BUFFER_BYTES = 64 * 1024;
+    private static final String SPOOL_SUFFIX = ".part";
+
+    public enum Status { RECEIVING, STORING, COMPLETE, FAILED }
+
+    public enum ChunkResult { ACCEPTED, NOT_FOUND, NOT_RECEIVING, OUT_OF_RANGE, TOO_LONG }
+
+    private static final class Upload {
+        final String id;
+        final long ownerId;
+        final long length;
+        final String fileName;
+        final String contentType;
+        final Path path;
+        final FileChannel channel;
+        // Received byte ranges, start -> end (exclusive), merged; guarded by this
+        final TreeMap<Long, Long> ranges = new TreeMap<>();
+        // Chunk requests writing right now, and what to run once they are done after retire(); guarded by this
+        private int writers;
+        private Runnable onIdle;
+        // Set once the upload is complete or dropped: no new writes, running ones stop early
+        volatile boolean retired;
+        final AtomicBoolean released = new AtomicBoolean();
+        volatile Status status = Status.RECEIVING;
+        volatile long lastActivity = System.currentTimeMillis();
+        volatile String fileId;
+        volatile String error;
+
+        Upload(String id, long ownerId, long length, String fileName, String contentType, Path path, FileChannel channel) {
+            this.id = id;
+            this.ownerId = ownerId;
+            this.length = length;
+            this.fileName = fileName;
+            this.contentType = contentType;
+            this.path = path;
+            this.channel = channel;
+        }
+
+        // Returns how many of the bytes were not received before
+        synchronized long addRange(long start, long end) {
+            if (end <= start) return 0;
+            long added = end - start;
+            Map.Entry<Long, Long> before = ranges.floorEntry(start);
+            if (before != null && before.getValue() >= start) {
+                added -= Math.min(end, before.getValue()) - start;
+                start = before.getKey();
+                end = Math.max(end, before.getValue());
+                ranges.remove(start);
+            }
+            Map.Entry<Long, Long> after = ranges.ceilingEntry(start);
+            while (after != null && after.getKey() <= end) {
+                added -= Math.min(end, after.getValue()) - after.getKey();
+                end = Math.max(end, after.getValue());
+                ranges.remove(after.getKey());
+                after = ranges.ceilingEntry(start);
+            }
+            ranges.put(start, end);
+            return Math.max(0, added);
+        }
+
+        synchronized boolean enter() {
+            if (retired) return false;
+            writers++;
+            return true;
+        }
+
+        void exit() {
+            Runnable action = null;
+            synchronized (this) {
+                if (--writers == 0 && onIdle != null) {
+                    action = onIdle;
+                    onIdle = null;
+                }
+            }
+            if (action != null) action.run();
+        }
+
+        // Stop taking writes and run the action once the running ones are done; false if already retired
+        boolean retire(Runnable action) {
+            synchronized (this) {
+                if (retired) return false;
+                retired = true;
+                if (writers > 0) {
+                    onIdle = action;
+                    return true;
+                }
+            }
+            action.run();
+            return true;
+        }
+
+        // Bytes received without a gap from the start: the tus Upload-Offset
+        synchronized long offset() {
+            Long end = ranges.get(0L);
+            return end != null ? end : 0;
+        }
+
+        synchronized long received() {
+            long total = 0;
+            for (Map.Entry<Long, Long> range : ranges.entrySet()) {
+                total += range.getValue() - range.getKey();
+            }
+            return total;
+        }
+
+        synchronized List<long[]> rangeList() {
+            List<long[]> list = new ArrayList<>(ranges.size());
+            ranges.forEach((start, end) -> list.add(new long[]{start, end}));
+            return list;
+        }
+    }
+
+    public record UploadView(String id, long ownerId, long length, long offset, List<long[]> ranges,
+                             Status status, String fileName, String fileId, String error) {}
+
+    @Autowired
+    private StoredFileService storedFileService;
+    @Autowired
+    private NhostStorageService nhostStorageService;
+
+    @Value("${app.upload.spool-dir:}")
+    private String spoolDirSetting;
+    @Value("${app.upload.resumable-max-bytes:10737418240}")
+    private long maxBytes;
+    @Value("${app.upload.resumable-expiry-hours:24}")
+    private long expiryHours;
+    @Value("${app.upload.resumable-spool-max-bytes:53687091200}")
+    private long spoolMaxBytes;
+    @Value("${app.upload.resumable-owner-max-bytes:21474836480}")
+    private long ownerMaxBytes;
+
+    private Path spoolDir;
+    private final ConcurrentHashMap<String, Upload> uploads = new ConcurrentHashMap<>();
+    private ExecutorService storers;
+    // Reservations of open uploads: total length, the part not written yet, and total length per owner
+    private final Object reservationLock = new Object();
+    private long reservedBytes;
+    private long unwrittenBytes;
+    private final Map<Long, Long> reservedByOwner = new HashMap<>();
+
+    @PostConstruct
+    public void start() throws IOException {
+        spoolDir = spoolDirSetting.isBlank()
+                ? Paths.get(System.getProperty("java.io.tmpdir"), "learnease-uploads")
+                : Paths.get(spoolDirSetting);
+        Files.createDirectories(spoolDir);
+        // Upload state lives in memory, so spool files left by a previous run cannot be resumed
+        try (DirectoryStream<Path> leftovers = Files.newDirectoryStream(spoolDir, "*" + SPOOL_SUFFIX)) {
+            for (Path leftover : leftovers) {
+                Files.deleteIfExists(leftover);
+            }
+        }
+        AtomicInteger count = new AtomicInteger();
+        storers = Executors.newFixedThreadPool(2, r -> {
+            Thread thread = new Thread(r, "resumable-upload-store-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Open an upload of the given total length.
+     * @throws IllegalArgumentException if the length is not accepted
+     * @throws IllegalStateException if the spool or the owner's share of it has no room for it
+     */
+    public UploadView create(long ownerId, long length, String fileName, String contentType) throws IOException {
+        if (length <= 0 || length > maxBytes) {
+            throw new IllegalArgumentException("Upload-Length must be between 1 and " + maxBytes);
+        }
+        long usable = Files.getFileStore(spoolDir).getUsableSpace();
+        synchronized (reservationLock) {
+            if (reservedByOwner.getOrDefault(ownerId, 0L) + length > ownerMaxBytes) {
+                throw new IllegalStateException("Too much of your upload data is still in progress; finish or cancel an upload first");
+            }
+            // Bytes already written are no longer in the usable space, so only the unwritten part counts
+            if (reservedBytes + length > spoolMaxBytes || usable < unwrittenBytes + length) {
+                throw new IllegalStateException("Not enough spool space for this upload");
+            }
+            reservedBytes += length;
+            unwrittenBytes += length;
+            reservedByOwner.merge(ownerId, length, Long::sum);
+        }
+        String id = UUID.randomUUID().toString().replace("-", "");
+        Path path = spoolDir.resolve(id + SPOOL_SUFFIX);
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            unreserve(ownerId, length, length);
+            throw e;
+        }
+        Upload upload = new Upload(id, ownerId, length, fileName, contentType, path, channel);
+        uploads.put(id, upload);
+        return view(upload);
+    }
+
+    public Optional<UploadView> find(String id) {
+        return Optional.ofNullable(uploads.get(id)).map(this::view);
+    }
+
+    /**
+     * Write one chunk at the given offset. Whatever part of the chunk arrived is kept even if the
+     * request breaks off, so the client can resume from the reported offset.
+     */
+    public ChunkResult writeChunk(String id, long offset, InputStream body) throws IOException {
+        Upload upload = uploads.get(id);
+        if (upload == null) return ChunkResult.NOT_FOUND;
+        if (upload.status != Status.RECEIVING) return ChunkResult.NOT_RECEIVING;
+        if (offset < 0 || offset >= upload.length) return ChunkResult.OUT_OF_RANGE;
+        // Keeps the spool file open until this request is done, whatever cancels or completes meanwhile
+        if (!upload.enter()) {
+            return uploads.containsKey(id) ? ChunkResult.NOT_RECEIVING : ChunkResult.NOT_FOUND;
+        }
+        try {
+            long position = offset;
+            boolean tooLong = false;
+            ByteBuffer buffer = ByteBuffer.allocate(COPY_BUFFER_BYTES);
+            try {
+                byte[] array = buffer.array();
+                int read;
+                while (!upload.retired && (read = body.read(array, 0, (int) Math.min(array.length, upload.length - position))) > 0) {
+                    buffer.clear().limit(read);
+                    while (buffer.hasRemaining()) {
+                        position += upload.channel.write(buffer, position);
+                    }
+                    upload.lastActivity = System.currentTimeMillis();
+                    if (position == upload.length) {
+                        tooLong = body.read() != -1;
+                        break;
+                    }
+                }
+            } finally {
+                long added = upload.addRange(offset, position);
+                synchronized (reservationLock) {
+                    unwrittenBytes -= added;
+                }
+                upload.lastActivity = System.currentTimeMillis();
+                if (upload.offset() == upload.length) {
+                    complete(upload);
+                }
+            }
+            return tooLong ? ChunkResult.TOO_LONG : ChunkResult.ACCEPTED;
+        } finally {
+            upload.exit();
+        }
+    }
+
+    /**
+     * Abort an upload and remove its spool file.
+     */
+    public boolean cancel(String id) {
+        Upload upload = uploads.get(id);
+        if (upload == null || upload.status == Status.STORING) return false;
+        return discard(upload);
+    }
+
+    // Exactly one chunk request sees the upload become complete and hands it to storage, once every
+    // chunk request still writing (overlapping retries) is done with the file
+    private void complete(Upload upload) {
+        synchronized (upload) {
+            // Not when it was cancelled while this chunk was being written
+            if (upload.status != Status.RECEIVING || upload.retired) return;
+            upload.status = Status.STORING;
+        }
+        upload.retire(() -> storers.execute(() -> {
+            try {
+                upload.channel.force(false);
+                upload.channel.close();
+                StoredFileService.StoredFile stored = storedFileService.store(upload.path, storageName(upload.fileName), upload.contentType);
+                upload.fileId = stored.fileId();
+                upload.status = Status.COMPLETE;
+            } catch (Exception e) {
+                System.err.println("[ERROR] Storing resumable upload " + upload.id + " failed: " + e.getMessage());
+                upload.error = "Storing the upload failed";
+                upload.status = Status.FAILED;
+            } finally {
+                upload.lastActivity = System.currentTimeMillis();
+                deleteSpool(upload);
+            }
+        }));
+    }
+
+    @Scheduled(fixedDelayString = "${app.upload.resumable-expiry-check-ms:600000}")
+    public void expireAbandoned() {
+        long cutoff = System.currentTimeMillis() - expiryHours * 3600_000L;
+        for (Upload upload : uploads.values()) {
+            if (upload.lastActivity < cutoff && upload.status != Status.STORING) {
+                discard(upload);
+            }
+        }
+    }
+
+    // False while the upload is being stored
+    private boolean discard(Upload upload) {
+        if (!upload.retire(() -> deleteSpool(upload))
+                && upload.status != Status.COMPLETE && upload.status != Status.FAILED) {
+            return false;
+        }
+        // A stored or failed upload has no spool file left, only its entry
+        uploads.remove(upload.id, upload);
+        return true;
+    }
+
+    private void deleteSpool(Upload upload) {
+        try {
+            upload.channel.close();
+            Files.deleteIfExists(upload.path);
+        } catch (IOException e) {
+            System.err.println("[ERROR] Could not delete spool file " + upload.path + ": " + e.getMessage());
+        }
+        if (upload.released.compareAndSet(false, true)) {
+            unreserve(upload.ownerId, upload.length, upload.length - upload.received());
+        }
+    }
+
+    private void unreserve(long ownerId, long length, long unwritten) {
+        synchronized (reservationLock) {
+            reservedBytes -= length;
+            unwrittenBytes -= unwritten;
+            reservedByOwner.computeIfPresent(ownerId, (owner, bytes) -> bytes - length > 0 ? bytes - length : null);
+        }
+    }
+
+    // Random name with the original extension, as for direct uploads
+    private static String storageName(String fileName) {
+        int dot = fileName.lastIndexOf('.');
+        return UUID.randomUUID() + (dot >= 0 ? fileName.substring(dot) : "");
+    }
+
+    private UploadView view(Upload upload) {
+        return new UploadView(upload.id, upload.ownerId, upload.length, upload.offset(), upload.rangeList(),
+                upload.status, upload.fileName, upload.fileId, upload.error);
+    }
+
+    public String getFileUrl(String fileId) {
+        return nhostStorageService.getFileUrl(fileId);
+    }
+
+    public Map<String, Object> describe(UploadView upload) {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("id", upload.id());
+        body.put("length", upload.length());
+        body.put("offset", upload.offset());
+        body.put("ranges", upload.ranges());
+        body.put("status", upload.status());
+        body.put("fileName", upload.fileName());
+        if (upload.fileId() != null) {
+            body.put("fileId", upload.fileId());
+            body.put("url", getFileUrl(upload.fileId()));
+        }
+        if (upload.error() != null) {
+            body.put("error", upload.error());
+        }
+        return body;
+    }
+
+    @PreDestroy
+    public void stop() {
+        storers.shutdownNow();
+        uploads.values().forEach(this::deleteSpool);
+    }
+}
@@ -0,0 +1,210 @@
+package com.mycourse.elearningplatform.service;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Presigned storage URLs keyed by (file id, expiry bucket). Requested lifetimes are rounded up to a
+ * few buckets so callers share entries; each URL is signed for twice its bucket and only served during
+ * the first half of that, so every URL handed out stays valid for at least the requested lifetime.
+ * Lifetimes above the largest bucket are signed per request and not cached. Past a jittered
+ * point in that window a hit triggers one background re-sign (hot files do not all refresh in the same
+ * second), and concurrent misses for one key wait on a single upstream call.
+ */
+class SignedUrlCache {
+    private static final int[] BUCKETS_SECONDS = {60, 300, 900, 3600, 6 * 3600, 24 * 3600};
+    // Refresh after 75% +/- 15% of the serve window
+    private static final double REFRESH_AT = 0.75;
+    private static final double REFRESH_JITTER = 0.15;
+
+    interface Signer {
+        String sign(String fileId, int expiresInSeconds) throws Exception;
+    }
+
+    private record Key(String fileId, int bucketSeconds) {}
+
+    private static final class Entry {
+        final String url;
+        final long staleAt;
+        final long refreshAt;
+        final AtomicBoolean refreshing = new AtomicBoolean();
+
+        Entry(String url, long staleAt, long refreshAt) {
+            this.url = url;
+            this.staleAt = staleAt;
+            this.refreshAt = refreshAt;
+        }
+    }
+
+    private final Signer signer;
+    private final int maxEntries;
+    private final ConcurrentHashMap<Key, Entry> entries = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Key, CompletableFuture<Entry>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicBoolean evicting = new AtomicBoolean();
+    private final ExecutorService refresher;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder refreshes = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder upstreamCalls = new LongAdder();
+    private final LongAdder upstreamFailures = new LongAdder();
+    private final LongAdder upstreamNanos = new LongAdder();
+    private final AtomicLong maxUpstreamNanos = new AtomicLong();
+
+    SignedUrlCache(Signer signer, int maxEntries, int refreshThreads) {
+        this.signer = signer;
+        this.maxEntries = maxEntries;
+        AtomicInteger count = new AtomicInteger();
+        this.refresher = Executors.newFixedThreadPool(refreshThreads, r -> {
+            Thread thread = new Thread(r, "signed-url-refresh-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * A signed URL for the file, valid for at least the requested lifetime.
+     * @throws Exception when signing fails and no usable URL is cached
+     */
+    String get(String fileId, int expiresInSeconds) throws Exception {
+        int bucket = bucketOf(expiresInSeconds);
+        if (bucket == 0) {
+            misses.increment();
+            return sign(fileId, expiresInSeconds);
+        }
+        Key key = new Key(fileId, bucket);
+        long now = System.currentTimeMillis();
+        Entry entry = entries.get(key);
+        if (entry != null && now < entry.staleAt) {
+            hits.increment();
+            if (now >= entry.refreshAt && entry.refreshing.compareAndSet(false, true)) {
+                refreshes.increment();
+                // A failed refresh leaves the entry in place; a later hit tries again
+                load(key, true).whenComplete((fresh, error) -> {
+                    if (error != null) entry.refreshing.set(false);
+                });
+            }
+            return entry.url;
+        }
+
+        misses.increment();
+        try {
+            return load(key, false).get().url;
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception cause ? cause : e;
+        }
+    }
+
+    // Every caller of a key gets the same future while its upstream call is running
+    private CompletableFuture<Entry> load(Key key, boolean background) {
+        CompletableFuture<Entry> created = new CompletableFuture<>();
+        CompletableFuture<Entry> running = inFlight.putIfAbsent(key, created);
+        if (running != null) {
+            return running;
+        }
+        Runnable call = () -> {
+            try {
+                Entry fresh = fetch(key);
+                // Stored before the in-flight marker goes, so no caller falls into a gap between the two
+                entries.put(key, fresh);
+                created.complete(fresh);
+                if (entries.size() > maxEntries) evict();
+            } catch (Throwable t) {
+                created.completeExceptionally(t);
+            } finally {
+                inFlight.remove(key, created);
+            }
+        };
+        if (background) {
+            refresher.execute(call);
+        } else {
+            call.run();
+        }
+        return created;
+    }
+
+    private Entry fetch(Key key) throws Exception {
+        // Taken before the call, so upstream latency never eats into the guaranteed lifetime
+        long signedAt = System.currentTimeMillis();
+        String url = sign(key.fileId(), key.bucketSeconds() * 2);
+        // Served for the first bucket of its two, so at least a whole bucket is left on every hit
+        long window = key.bucketSeconds() * 1000L;
+        double refreshFraction = REFRESH_AT + ThreadLocalRandom.current().nextDouble(-REFRESH_JITTER, REFRESH_JITTER);
+        return new Entry(url, signedAt + window, signedAt + (long) (window * refreshFraction));
+    }
+
+    private String sign(String fileId, int expiresInSeconds) throws Exception {
+        long start = System.nanoTime();
+        upstreamCalls.increment();
+        try {
+            return signer.sign(fileId, expiresInSeconds);
+        } catch (Exception e) {
+            upstreamFailures.increment();
+            throw e;
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            upstreamNanos.add(elapsed);
+            maxUpstreamNanos.accumulateAndGet(elapsed, Math::max);
+        }
+    }
+
+    // Drop stale entries, then arbitrary ones until 10% below the limit
+    private void evict() {
+        if (!evicting.compareAndSet(false, true)) return;
+        try {
+            long now = System.currentTimeMillis();
+            int before = entries.size();
+            entries.values().removeIf(e -> e.staleAt <= now);
+            Iterator<Key> it = entries.keySet().iterator();
+            while (entries.size() > maxEntries * 9 / 10 && it.hasNext()) {
+                it.next();
+                it.remove();
+            }
+            evictions.add(Math.max(0, before - entries.size()));
+        } finally {
+            evicting.set(false);
+        }
+    }
+
+    // Smallest bucket that covers the requested lifetime, or 0 when none does
+    private static int bucketOf(int expiresInSeconds) {
+        for (int candidate : BUCKETS_SECONDS) {
+            if (candidate >= expiresInSeconds) return candidate;
+        }
+        return 0;
+    }
+
+    Map<String, Object> getStats() {
+        long hitCount = hits.sum();
+        long missCount = misses.sum();
+        long calls = upstreamCalls.sum();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("entries", entries.size());
+        stats.put("hits", hitCount);
+        stats.put("misses", missCount);
+        stats.put("hitRate", hitCount + missCount == 0 ? 0.0 : (double) hitCount / (hitCount + missCount));
+        stats.put("backgroundRefreshes", refreshes.sum());
+        stats.put("evictions", evictions.sum());
+        stats.put("upstreamCalls", calls);
+        stats.put("upstreamFailures", upstreamFailures.sum());
+        stats.put("upstreamAvgMs", calls == 0 ? 0.0 : upstreamNanos.sum() / 1_000_000.0 / calls);
+        stats.put("upstreamMaxMs", maxUpstreamNanos.get() / 1_000_000.0);
+        return stats;
+    }
+
+    void shutdown() {
+        refresher.shutdownNow();
+    }
+}
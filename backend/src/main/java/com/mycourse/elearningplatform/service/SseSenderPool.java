@@ -0,0 +1,112 @@
+package com.mycourse.elearningplatform.service;
+
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sender threads for Server-Sent Events. An SseEmitter send blocks until the client's socket takes
+ * the bytes, so with a plain fixed pool a few stalled clients would hold every sender until the
+ * container's write timeout and stall all other streams. Here every send is timed: one still running
+ * after the send timeout is reported to its owner (who drops that stream) and a spare thread is
+ * started in its place, so the healthy streams keep their full set of senders. The spare goes away
+ * once the stalled write returns or fails.
+ */
+final class SseSenderPool {
+    private static final int RUNNING = 0;
+    private static final int DONE = 1;
+    private static final int STALLED = 2;
+
+    private static final class Send {
+        final long startedAt = System.nanoTime();
+        final Runnable onStall;
+        final AtomicInteger state = new AtomicInteger(RUNNING);
+        boolean replaced;
+
+        Send(Runnable onStall) {
+            this.onStall = onStall;
+        }
+    }
+
+    private final int threads;
+    private final int maxSpares;
+    private final long sendTimeoutNanos;
+    private final ThreadPoolExecutor executor;
+    private final Set<Send> running = ConcurrentHashMap.newKeySet();
+    private int spares;
+
+    SseSenderPool(String name, int threads, long sendTimeoutMs) {
+        this.threads = threads;
+        this.maxSpares = threads * 4;
+        this.sendTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(sendTimeoutMs);
+        AtomicInteger count = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads + maxSpares, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+            Thread thread = new Thread(r, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    void execute(Runnable task) {
+        executor.execute(task);
+    }
+
+    /**
+     * Send on the calling sender thread. If the send is still running after the send timeout,
+     * onStall runs on the thread calling {@link #checkStalled()}; the send itself is left to
+     * finish or fail on its own.
+     */
+    void send(SseEmitter emitter, SseEmitter.SseEventBuilder event, Runnable onStall) throws IOException {
+        Send send = new Send(onStall);
+        running.add(send);
+        try {
+            emitter.send(event);
+        } finally {
+            running.remove(send);
+            if (!send.state.compareAndSet(RUNNING, DONE)) {
+                returnSpare(send);
+            }
+        }
+    }
+
+    // Called periodically by the owner
+    void checkStalled() {
+        long now = System.nanoTime();
+        for (Send send : running) {
+            if (now - send.startedAt > sendTimeoutNanos && stall(send)) {
+                try {
+                    send.onStall.run();
+                } catch (RuntimeException e) {
+                    System.err.println("[ERROR] Dropping a stalled event stream failed: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    // Under the lock, so a send finishing right now sees replaced set before it returns the spare
+    private synchronized boolean stall(Send send) {
+        if (!send.state.compareAndSet(RUNNING, STALLED)) return false;
+        if (spares < maxSpares) {
+            spares++;
+            send.replaced = true;
+            executor.setCorePoolSize(threads + spares);
+        }
+        return true;
+    }
+
+    private synchronized void returnSpare(Send send) {
+        if (!send.replaced) return;
+        spares--;
+        executor.setCorePoolSize(threads + spares);
+    }
+
+    void shutdownNow() {
+        executor.shutdownNow();
+    }
+}
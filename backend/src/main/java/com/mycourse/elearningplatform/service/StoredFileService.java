@@ -0,0 +1,235 @@
+package com.mycourse.elearningplatform.service;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.io.InputStreamSource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+/**
+ * Content-addressed index of the files in storage (stored_files: file id, SHA-256, size). An upload
+ * whose content is already stored gets the existing file back without being sent to storage again,
+ * so one stored object can be used by several courses. Because of that, files are never deleted
+ * directly: they are released, and a background job deletes a released file once the grace period is
+ * over and no course, lesson or resource still points at it.
+ */
+@Service
+public class StoredFileService {
+    private static final int HASH_BUFFER_BYTES = 64 * 1024;
+    private static final int GC_BATCH = 100;
+    // Storage file id in a stored URL (https://<sub>.storage.<region>.nhost.run/v1/files/<id>[?...]);
+    // every column holding such URLs has an expression index on it, so a reference check is an index lookup
+    private static final String FILE_ID_OF = "substring(%s from '/v1/files/([^/?]+)')";
+
+    public record StoredFile(String fileId, String contentHash, long fileSize, boolean deduplicated) {}
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private NhostStorageService nhostStorageService;
+
+    @Value("${app.storage.release-grace-minutes:60}")
+    private long releaseGraceMinutes;
+
+    @PostConstruct
+    public void createTable() {
+        jdbcTemplate.execute(
+                "CREATE TABLE IF NOT EXISTS stored_files (" +
+                "file_id varchar(64) PRIMARY KEY, " +
+                "content_hash char(64) UNIQUE, " +
+                "file_size bigint, " +
+                "content_type varchar(255), " +
+                "created_at timestamp NOT NULL, " +
+                "release_after timestamp)");
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS idx_stored_files_release ON stored_files (release_after) WHERE release_after IS NOT NULL");
+    }
+
+    // Once the schema is in place: the indexed tables are created by ddl-auto
+    @EventListener(ApplicationReadyEvent.class)
+    public void createReferenceIndexes() {
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS idx_resource_file_id ON resource ((" + fileIdOf("file_url") + "))");
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS idx_lesson_content_file_id ON lesson ((" + fileIdOf("content_url") + "))");
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS idx_courses_image_file_id ON courses ((" + fileIdOf("image_url") + "))");
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS idx_courses_video_file_id ON courses ((" + fileIdOf("video_url") + "))");
+    }
+
+    /**
+     * Store an uploaded file, or return the stored file with the same content.
+     * The content is hashed in one streaming pass before anything is sent to storage.
+     */
+    public StoredFile store(MultipartFile file, String fileName) throws IOException {
+        return store(file, file.getContentType(), () -> nhostStorageService.uploadFile(file, "default", fileName));
+    }
+
+    /**
+     * Same as {@link #store(MultipartFile, String)} for a file on local disk.
+     */
+    public StoredFile store(Path path, String fileName, String contentType) throws IOException {
+        return store(() -> Files.newInputStream(path), contentType, () -> nhostStorageService.uploadFile(path, "default", fileName));
+    }
+
+    private StoredFile store(InputStreamSource content, String contentType, Supplier<Map<String, Object>> upload) throws IOException {
+        long size = 0;
+        MessageDigest digest = sha256();
+        try (InputStream in = content.getInputStream()) {
+            byte[] buffer = new byte[HASH_BUFFER_BYTES];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+                size += read;
+            }
+        }
+        String hash = HexFormat.of().formatHex(digest.digest());
+
+        Optional<String> existing = claim(hash);
+        if (existing.isPresent()) {
+            return new StoredFile(existing.get(), hash, size, true);
+        }
+
+        Map<String, Object> uploadResult = upload.get();
+        String fileId = uploadResult != null ? (String) uploadResult.get("id") : null;
+        if (fileId == null) {
+            throw new RuntimeException("Upload failed - no file ID returned");
+        }
+        int inserted = jdbcTemplate.update(
+                "INSERT INTO stored_files (file_id, content_hash, file_size, content_type, created_at) VALUES (?, ?, ?, ?, ?) " +
+                "ON CONFLICT DO NOTHING",
+                fileId, hash, size, contentType, Timestamp.valueOf(LocalDateTime.now()));
+        if (inserted == 0) {
+            // The same content was stored concurrently; keep that copy and drop this one
+            Optional<String> winner = claim(hash);
+            if (winner.isPresent()) {
+                release(fileId);
+                return new StoredFile(winner.get(), hash, size, true);
+            }
+        }
+        return new StoredFile(fileId, hash, size, false);
+    }
+
+    /**
+     * Size and content hash of a stored file, when it was uploaded through {@link #store}.
+     */
+    public Optional<StoredFile> find(String fileId) {
+        if (fileId == null) return Optional.empty();
+        return jdbcTemplate.query(
+                "SELECT file_id, content_hash, file_size FROM stored_files WHERE file_id = ? AND content_hash IS NOT NULL",
+                (rs, rowNum) -> new StoredFile(rs.getString(1), rs.getString(2), rs.getLong(3), false),
+                fileId).stream().findFirst();
+    }
+
+    /**
+     * Mark files as no longer needed by the caller. They are deleted from storage after the grace
+     * period, unless something references them again by then.
+     */
+    public void release(String fileId) {
+        if (fileId == null || fileId.isEmpty()) return;
+        jdbcTemplate.update(
+                "INSERT INTO stored_files (file_id, created_at, release_after) VALUES (?, ?, ?) " +
+                "ON CONFLICT (file_id) DO UPDATE SET release_after = EXCLUDED.release_after",
+                fileId, Timestamp.valueOf(LocalDateTime.now()),
+                Timestamp.valueOf(LocalDateTime.now().plusMinutes(releaseGraceMinutes)));
+    }
+
+    public void release(List<String> fileIds) {
+        fileIds.forEach(this::release);
+    }
+
+    // File id of the stored content, cancelling any pending release of it
+    private Optional<String> claim(String hash) {
+        return jdbcTemplate.query(
+                "UPDATE stored_files SET release_after = NULL WHERE content_hash = ? RETURNING file_id",
+                (rs, rowNum) -> rs.getString(1), hash).stream().findFirst();
+    }
+
+    @Scheduled(fixedDelayString = "${app.storage.gc-interval-ms:600000}")
+    public void collectReleased() {
+        List<String> due = jdbcTemplate.queryForList(
+                "SELECT file_id FROM stored_files WHERE release_after <= ? ORDER BY release_after LIMIT " + GC_BATCH,
+                String.class, Timestamp.valueOf(LocalDateTime.now()));
+        for (String fileId : due) {
+            try {
+                collect(fileId);
+            } catch (Exception e) {
+                System.err.println("[ERROR] Releasing stored file " + fileId + " failed: " + e.getMessage());
+            }
+        }
+    }
+
+    private void collect(String fileId) {
+        if (isReferenced(fileId)) {
+            jdbcTemplate.update("UPDATE stored_files SET release_after = NULL WHERE file_id = ?", fileId);
+            return;
+        }
+        // Taking the row first means a deduplicated upload can no longer hand this file out;
+        // one that reclaimed it since the check above has cleared release_after and keeps it
+        Map<String, Object> row = jdbcTemplate.query(
+                "DELETE FROM stored_files WHERE file_id = ? AND release_after <= ? RETURNING content_hash, file_size, content_type, created_at",
+                rs -> {
+                    if (!rs.next()) return null;
+                    Map<String, Object> taken = new HashMap<>();
+                    taken.put("content_hash", rs.getString(1));
+                    taken.put("file_size", rs.getObject(2));
+                    taken.put("content_type", rs.getString(3));
+                    taken.put("created_at", rs.getTimestamp(4));
+                    return taken;
+                },
+                fileId, Timestamp.valueOf(LocalDateTime.now()));
+        if (row == null) return;
+        boolean deleted;
+        try {
+            deleted = nhostStorageService.deleteFile(fileId);
+        } catch (Exception e) {
+            deleted = false;
+        }
+        if (!deleted) {
+            // Put it back to try again later
+            jdbcTemplate.update(
+                    "INSERT INTO stored_files (file_id, content_hash, file_size, content_type, created_at, release_after) " +
+                    "VALUES (?, ?, ?, ?, ?, ?) ON CONFLICT DO NOTHING",
+                    fileId, row.get("content_hash"), row.get("file_size"), row.get("content_type"), row.get("created_at"),
+                    Timestamp.valueOf(LocalDateTime.now().plusMinutes(releaseGraceMinutes)));
+        }
+    }
+
+    private boolean isReferenced(String fileId) {
+        Boolean referenced = jdbcTemplate.queryForObject(
+                "SELECT EXISTS (SELECT 1 FROM resource WHERE " + fileIdOf("file_url") + " = ?) " +
+                "OR EXISTS (SELECT 1 FROM lesson WHERE " + fileIdOf("content_url") + " = ?) " +
+                "OR EXISTS (SELECT 1 FROM courses WHERE " + fileIdOf("image_url") + " = ?) " +
+                "OR EXISTS (SELECT 1 FROM courses WHERE " + fileIdOf("video_url") + " = ?)",
+                Boolean.class, fileId, fileId, fileId, fileId);
+        return Boolean.TRUE.equals(referenced);
+    }
+
+    private static String fileIdOf(String column) {
+        return String.format(FILE_ID_OF, column);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
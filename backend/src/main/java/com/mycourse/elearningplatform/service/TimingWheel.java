@@ -0,0 +1,128 @@
+package com.mycourse.elearningplatform.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+
+/**
+ * Hashed timing wheel: keys are hashed into buckets by deadline tick, with a round counter for
+ * deadlines further away than one turn of the wheel. Callers only append to lock-free queues, so
+ * schedule and cancel are O(1) and never contend; the single ticker thread owns the buckets and
+ * hands all keys that expired in a tick to the callback as one batch.
+ * Deadlines fire up to one tick late, never early.
+ */
+class TimingWheel<K> {
+
+    private static final class Timeout<K> {
+        static final long CANCELLED = -1;
+
+        final K key;
+        final long deadlineMillis;
+        long rounds;
+        int bucket;
+
+        Timeout(K key, long deadlineMillis) {
+            this.key = key;
+            this.deadlineMillis = deadlineMillis;
+        }
+    }
+
+    private final long tickMillis;
+    private final int mask;
+    private final List<Map<K, Timeout<K>>> buckets;
+    private final Map<K, Timeout<K>> scheduled = new HashMap<>();
+    // Schedules and cancellations in the order callers made them
+    private final ConcurrentLinkedQueue<Timeout<K>> requests = new ConcurrentLinkedQueue<>();
+    private final Consumer<List<K>> onExpired;
+    private final Thread ticker;
+    private volatile boolean running;
+    private long startMillis;
+    private long tick;
+
+    TimingWheel(String name, long tickMillis, int wheelSize, Consumer<List<K>> onExpired) {
+        if (Integer.bitCount(wheelSize) != 1) throw new IllegalArgumentException("wheelSize must be a power of two");
+        this.tickMillis = tickMillis;
+        this.mask = wheelSize - 1;
+        this.buckets = new ArrayList<>(wheelSize);
+        for (int i = 0; i < wheelSize; i++) buckets.add(new HashMap<>());
+        this.onExpired = onExpired;
+        this.ticker = new Thread(this::run, name);
+        this.ticker.setDaemon(true);
+    }
+
+    void start() {
+        startMillis = System.currentTimeMillis();
+        running = true;
+        ticker.start();
+    }
+
+    void stop() throws InterruptedException {
+        running = false;
+        ticker.interrupt();
+        ticker.join(5000);
+    }
+
+    // Scheduling a key again replaces its previous deadline
+    void schedule(K key, long deadlineMillis) {
+        requests.add(new Timeout<>(key, deadlineMillis));
+    }
+
+    void cancel(K key) {
+        requests.add(new Timeout<>(key, Timeout.CANCELLED));
+    }
+
+    private void run() {
+        while (running) {
+            try {
+                long sleep = startMillis + (tick + 1) * tickMillis - System.currentTimeMillis();
+                if (sleep > 0) Thread.sleep(sleep);
+            } catch (InterruptedException e) {
+                return;
+            }
+            try {
+                applyRequests();
+                List<K> expired = expire(buckets.get((int) (tick & mask)));
+                if (!expired.isEmpty()) onExpired.accept(expired);
+            } catch (Exception e) {
+                System.err.println("[ERROR] Timing wheel tick failed: " + e.getMessage());
+            }
+            tick++;
+        }
+    }
+
+    private void applyRequests() {
+        Timeout<K> timeout;
+        while ((timeout = requests.poll()) != null) {
+            Timeout<K> previous = scheduled.remove(timeout.key);
+            if (previous != null) buckets.get(previous.bucket).remove(previous.key);
+            if (timeout.deadlineMillis == Timeout.CANCELLED) continue;
+
+            // Round up so a deadline never fires before it is due; past deadlines fire this tick
+            long deadlineTick = Math.max(tick, (timeout.deadlineMillis - startMillis + tickMillis - 1) / tickMillis);
+            timeout.rounds = (deadlineTick - tick) / buckets.size();
+            timeout.bucket = (int) (deadlineTick & mask);
+            buckets.get(timeout.bucket).put(timeout.key, timeout);
+            scheduled.put(timeout.key, timeout);
+        }
+    }
+
+    private List<K> expire(Map<K, Timeout<K>> bucket) {
+        List<K> expired = new ArrayList<>();
+        Iterator<Timeout<K>> it = bucket.values().iterator();
+        while (it.hasNext()) {
+            Timeout<K> timeout = it.next();
+            if (timeout.rounds <= 0) {
+                it.remove();
+                scheduled.remove(timeout.key);
+                expired.add(timeout.key);
+            } else {
+                timeout.rounds--;
+            }
+        }
+        return expired;
+    }
+}
@@ -0,0 +1,294 @@
+package com.mycourse.elearningplatform.service;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Full-text search over lesson transcripts (WebVTT captions). Transcripts are stored per lesson in
+ * lesson_transcripts; each course's transcripts are indexed in memory on first search as one compact
+ * inverted index per lesson (sorted term array, cue-number postings, cue start/end times), and an upload
+ * replaces only that lesson's index. A search touches one course's index only, so its cost depends on
+ * the size of that course, not of the platform. Hits carry cue times so the player can seek to them.
+ */
+@Service
+public class TranscriptSearchService {
+    public static final int MAX_TRANSCRIPT_CHARS = 5 * 1024 * 1024;
+    private static final int MAX_CACHED_COURSES = 1000;
+    private static final Pattern TIMING = Pattern.compile(
+            "^\\s*((?:\\d+:)?\\d{1,2}:\\d{2}[.,]\\d{1,3})\\s+-->\\s+((?:\\d+:)?\\d{1,2}:\\d{2}[.,]\\d{1,3})");
+    private static final Pattern TAG = Pattern.compile("<[^>]*>");
+    private static final Pattern TOKEN = Pattern.compile("[\\p{L}\\p{N}]+");
+    private static final Set<String> STOPWORDS = Set.of(
+            "a", "an", "and", "are", "as", "at", "be", "but", "by", "did", "do", "does", "for", "from", "how",
+            "i", "in", "is", "it", "of", "on", "or", "so", "that", "the", "this", "to", "was", "we", "what",
+            "when", "where", "which", "who", "why", "with", "you");
+
+    public record Cue(int startMs, int endMs, String text) {}
+
+    public record Hit(long lessonId, int startMs, int endMs, String text, double score) {}
+
+    // Immutable index of one lesson's transcript; cue i spans starts[i]..ends[i]
+    private static final class LessonIndex {
+        final int[] starts;
+        final int[] ends;
+        final String[] texts;
+        final String[] terms;
+        final int[][] postings;
+
+        LessonIndex(List<Cue> cues) {
+            int n = cues.size();
+            starts = new int[n];
+            ends = new int[n];
+            texts = new String[n];
+            Map<String, int[]> growing = new HashMap<>();
+            Map<String, Integer> sizes = new HashMap<>();
+            for (int i = 0; i < n; i++) {
+                Cue cue = cues.get(i);
+                starts[i] = cue.startMs();
+                ends[i] = cue.endMs();
+                texts[i] = cue.text();
+                for (String term : terms(cue.text())) {
+                    int size = sizes.getOrDefault(term, 0);
+                    int[] list = growing.get(term);
+                    if (list == null) {
+                        list = new int[4];
+                    } else if (list[size - 1] == i) {
+                        continue;
+                    } else if (size == list.length) {
+                        list = Arrays.copyOf(list, size * 2);
+                    }
+                    list[size] = i;
+                    growing.put(term, list);
+                    sizes.put(term, size + 1);
+                }
+            }
+            terms = growing.keySet().toArray(new String[0]);
+            Arrays.sort(terms);
+            postings = new int[terms.length][];
+            for (int t = 0; t < terms.length; t++) {
+                postings[t] = Arrays.copyOf(growing.get(terms[t]), sizes.get(terms[t]));
+            }
+        }
+
+        int[] postings(String term) {
+            int t = Arrays.binarySearch(terms, term);
+            return t >= 0 ? postings[t] : null;
+        }
+    }
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final ConcurrentHashMap<Long, ConcurrentHashMap<Long, LessonIndex>> courses = new ConcurrentHashMap<>();
+    // Bumped by every change, so a course load that raced one is not cached
+    private final AtomicLong changes = new AtomicLong();
+
+    @PostConstruct
+    public void createTable() {
+        jdbcTemplate.execute(
+                "CREATE TABLE IF NOT EXISTS lesson_transcripts (" +
+                "lesson_id bigint PRIMARY KEY, " +
+                "course_id bigint NOT NULL, " +
+                "vtt text NOT NULL, " +
+                "cue_count integer NOT NULL, " +
+                "updated_at timestamp NOT NULL)");
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS idx_lesson_transcripts_course ON lesson_transcripts (course_id)");
+    }
+
+    /**
+     * Store a lesson's WebVTT transcript and re-index that lesson.
+     * @return the number of cues indexed
+     * @throws IllegalArgumentException if the text has no WebVTT cues
+     */
+    public int saveTranscript(Long courseId, Long lessonId, String vtt) {
+        List<Cue> cues = parse(vtt);
+        if (cues.isEmpty()) {
+            throw new IllegalArgumentException("No WebVTT cues found");
+        }
+        jdbcTemplate.update(
+                "INSERT INTO lesson_transcripts (lesson_id, course_id, vtt, cue_count, updated_at) VALUES (?, ?, ?, ?, ?) " +
+                "ON CONFLICT (lesson_id) DO UPDATE SET course_id = EXCLUDED.course_id, vtt = EXCLUDED.vtt, " +
+                "cue_count = EXCLUDED.cue_count, updated_at = EXCLUDED.updated_at",
+                lessonId, courseId, vtt, cues.size(), Timestamp.valueOf(LocalDateTime.now()));
+        changes.incrementAndGet();
+        LessonIndex index = new LessonIndex(cues);
+        courses.computeIfPresent(courseId, (id, lessons) -> {
+            lessons.put(lessonId, index);
+            return lessons;
+        });
+        return cues.size();
+    }
+
+    public Optional<String> getTranscript(Long lessonId) {
+        return jdbcTemplate.query("SELECT vtt FROM lesson_transcripts WHERE lesson_id = ?",
+                (rs, rowNum) -> rs.getString(1), lessonId).stream().findFirst();
+    }
+
+    public void removeTranscript(Long courseId, Long lessonId) {
+        jdbcTemplate.update("DELETE FROM lesson_transcripts WHERE lesson_id = ?", lessonId);
+        changes.incrementAndGet();
+        courses.computeIfPresent(courseId, (id, lessons) -> {
+            lessons.remove(lessonId);
+            return lessons;
+        });
+    }
+
+    // Transcripts of a deleted course; its lessons are gone with it
+    public void removeCourse(Long courseId) {
+        jdbcTemplate.update("DELETE FROM lesson_transcripts WHERE course_id = ?", courseId);
+        changes.incrementAndGet();
+        courses.remove(courseId);
+    }
+
+    /**
+     * Best matching cues in the course, ranked by the summed rarity (idf) of the query terms they contain.
+     */
+    public List<Hit> search(Long courseId, String query, int limit) {
+        Set<String> queryTerms = terms(query);
+        if (queryTerms.isEmpty()) return List.of();
+        Map<Long, LessonIndex> lessons = courseIndex(courseId);
+
+        int totalCues = 0;
+        Map<String, Integer> documentFrequency = new HashMap<>();
+        for (LessonIndex index : lessons.values()) {
+            totalCues += index.texts.length;
+            for (String term : queryTerms) {
+                int[] postings = index.postings(term);
+                if (postings != null) documentFrequency.merge(term, postings.length, Integer::sum);
+            }
+        }
+        if (documentFrequency.isEmpty()) return List.of();
+
+        PriorityQueue<Hit> best = new PriorityQueue<>((a, b) -> Double.compare(a.score(), b.score()));
+        for (Map.Entry<Long, LessonIndex> entry : lessons.entrySet()) {
+            LessonIndex index = entry.getValue();
+            float[] scores = null;
+            for (Map.Entry<String, Integer> term : documentFrequency.entrySet()) {
+                int[] postings = index.postings(term.getKey());
+                if (postings == null) continue;
+                if (scores == null) scores = new float[index.texts.length];
+                float idf = (float) Math.log(1 + (double) totalCues / term.getValue());
+                for (int cue : postings) scores[cue] += idf;
+            }
+            if (scores == null) continue;
+            for (int cue = 0; cue < scores.length; cue++) {
+                if (scores[cue] == 0) continue;
+                if (best.size() < limit) {
+                    best.add(new Hit(entry.getKey(), index.starts[cue], index.ends[cue], index.texts[cue], scores[cue]));
+                } else if (scores[cue] > best.peek().score()) {
+                    best.poll();
+                    best.add(new Hit(entry.getKey(), index.starts[cue], index.ends[cue], index.texts[cue], scores[cue]));
+                }
+            }
+        }
+        List<Hit> hits = new ArrayList<>(best);
+        hits.sort((a, b) -> Double.compare(b.score(), a.score()));
+        return hits;
+    }
+
+    private Map<Long, LessonIndex> courseIndex(Long courseId) {
+        ConcurrentHashMap<Long, LessonIndex> cached = courses.get(courseId);
+        if (cached != null) return cached;
+
+        long version = changes.get();
+        ConcurrentHashMap<Long, LessonIndex> loaded = new ConcurrentHashMap<>();
+        jdbcTemplate.query("SELECT lesson_id, vtt FROM lesson_transcripts WHERE course_id = ?",
+                rs -> {
+                    loaded.put(rs.getLong(1), new LessonIndex(parse(rs.getString(2))));
+                },
+                courseId);
+        if (changes.get() != version) {
+            // A transcript changed while loading; answer from this copy but do not keep it
+            return loaded;
+        }
+        if (courses.size() >= MAX_CACHED_COURSES) {
+            courses.keySet().stream().findAny().ifPresent(courses::remove);
+        }
+        ConcurrentHashMap<Long, LessonIndex> raced = courses.putIfAbsent(courseId, loaded);
+        if (raced != null) return raced;
+        if (changes.get() != version) {
+            // A change landed between the check and the put and found nothing cached to update
+            courses.remove(courseId, loaded);
+        }
+        return loaded;
+    }
+
+    /**
+     * Cues of a WebVTT (or SRT) file with markup removed. Header, NOTE, STYLE and REGION blocks are skipped.
+     */
+    static List<Cue> parse(String vtt) {
+        List<Cue> cues = new ArrayList<>();
+        if (vtt == null) return cues;
+        String[] lines = vtt.replace("\r\n", "\n").replace('\r', '\n').split("\n");
+        int i = 0;
+        while (i < lines.length) {
+            Matcher timing = TIMING.matcher(lines[i]);
+            if (!timing.find()) {
+                i++;
+                continue;
+            }
+            int start = millis(timing.group(1));
+            int end = millis(timing.group(2));
+            StringBuilder text = new StringBuilder();
+            for (i++; i < lines.length && !lines[i].isBlank(); i++) {
+                if (text.length() > 0) text.append(' ');
+                text.append(TAG.matcher(lines[i]).replaceAll("").trim());
+            }
+            if (text.length() > 0) {
+                cues.add(new Cue(start, end, text.toString()));
+            }
+        }
+        return cues;
+    }
+
+    // [hh:]mm:ss.ttt
+    private static int millis(String timestamp) {
+        String[] parts = timestamp.replace(',', '.').split(":");
+        int seconds = 0;
+        for (int p = 0; p < parts.length - 1; p++) {
+            seconds = seconds * 60 + Integer.parseInt(parts[p]);
+        }
+        double last = Double.parseDouble(parts[parts.length - 1]);
+        return (int) Math.round((seconds * 60 + last) * 1000);
+    }
+
+    // Lower-cased words without stopwords, with plural and -ing/-ed endings folded ("joins" finds "join")
+    private static Set<String> terms(String text) {
+        Set<String> terms = new LinkedHashSet<>();
+        if (text == null) return terms;
+        Matcher matcher = TOKEN.matcher(text.toLowerCase(Locale.ROOT));
+        while (matcher.find()) {
+            String word = matcher.group();
+            if (STOPWORDS.contains(word)) continue;
+            terms.add(stem(word));
+        }
+        return terms;
+    }
+
+    private static String stem(String word) {
+        if (word.length() > 5 && word.endsWith("ing")) return word.substring(0, word.length() - 3);
+        if (word.length() > 4 && word.endsWith("ed")) return word.substring(0, word.length() - 2);
+        if (word.length() > 4 && word.endsWith("ies")) return word.substring(0, word.length() - 3) + "y";
+        if (word.length() > 3 && word.endsWith("s") && !word.endsWith("ss")) return word.substring(0, word.length() - 1);
+        return word;
+    }
+}
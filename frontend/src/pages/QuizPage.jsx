@@ -13,8 +13,9 @@ const QuizPage = ({ courseId }) => {
     const [success, setSuccess] = useState('');
 
     useEffect(() => {
-        apiFetch(`/quizzes/course/${courseId}`)
-            .then(setQuizzes)
+        // Paged response; the course's quizzes fit in one page of 100
+        apiFetch(`/quizzes/course/${courseId}?size=100`)
+            .then(data => setQuizzes(data.content))
             .catch(e => setError(e.message))
             .finally(() => setLoading(false));
     }, [courseId]);